@@ -0,0 +1,87 @@
+package com.hospital.benchmark;
+
+import com.hospital.service.RequestBodyHasher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body hashing: the original OperationService.hashBody against RequestBodyHasher.
+ *
+ * Sizes cover an empty discharge body, a typical sign request, and multi-MB clinical notes.
+ *
+ *     java -jar benchmarks/target/benchmarks.jar BodyHashBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BodyHashBenchmark {
+
+    @Param({"2", "64", "4096", "4194304"})
+    int bodySize;
+
+    String body;
+    byte[] rawBody;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder(bodySize);
+        String filler = "{\"clinicianId\":\"dr.house\",\"note\":\"Pt stable, ä/ö ok\"}";
+        while (sb.length() < bodySize) {
+            sb.append(filler, 0, Math.min(filler.length(), bodySize - sb.length()));
+        }
+        body = sb.toString();
+        rawBody = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy of the implementation RequestBodyHasher replaced.
+     */
+    @Benchmark
+    public String legacyHexHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(body.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Benchmark
+    public byte[] hasherString() {
+        return RequestBodyHasher.hash(body);
+    }
+
+    @Benchmark
+    public byte[] hasherRawBytes() {
+        return RequestBodyHasher.hash(rawBody);
+    }
+
+    @Benchmark
+    public byte[] hasherStreaming(Blackhole bh) throws IOException {
+        RequestBodyHasher.DigestingInputStream in =
+                RequestBodyHasher.digesting(new ByteArrayInputStream(rawBody));
+        drain(in, bh);
+        return in.hash();
+    }
+
+    private static void drain(InputStream in, Blackhole bh) throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            bh.consume(n);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.hospital.benchmark;
+
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.service.OperationEvent;
+import com.hospital.service.OperationFeed;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Change feed fan-out (OperationFeed): what a completed operation costs the thread that publishes
+ * it, with a growing number of subscribers, and what a subscriber pays to catch up.
+ *
+ *     publish    one event; every subscriber is woken, but all of them are busy already, so a wake
+ *                is a failed compare-and-set (the steady state under load)
+ *     readBatch  a subscriber copying the next 64 events out of the ring
+ *
+ *     java -jar benchmarks/target/benchmarks.jar OperationFeedBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationFeedBenchmark {
+
+    @Param({"0", "100", "1000"})
+    int subscribers;
+
+    private OperationFeed feed;
+    private final UUID operationId = UUID.randomUUID();
+    private final byte[] response = ("{\"orderId\":\"ord-123\",\"patientId\":\"42\",\"signedAt\":\"2025-12-13T23:07:02.641976Z\","
+            + "\"signedBy\":\"dr.house\",\"status\":\"SIGNED\"}").getBytes(StandardCharsets.UTF_8);
+    private final List<OperationEvent> batch = new ArrayList<>(64);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        feed = new OperationFeed(); // default capacity, 8192
+        for (int i = 0; i < subscribers; i++) {
+            AtomicBoolean scheduled = new AtomicBoolean(true);
+            feed.addListener(() -> scheduled.compareAndSet(false, true));
+        }
+        for (int i = 0; i < 8192; i++) {
+            publish();
+        }
+    }
+
+    @Benchmark
+    public long publish() {
+        feed.publish(operationId, OperationType.SIGN_MEDICATION_ORDER, "/v1/patients/42/orders/ord-123/sign", 200,
+                response);
+        return feed.latest();
+    }
+
+    @Benchmark
+    public int readBatch() {
+        batch.clear();
+        feed.read(feed.latest() - 64, 64, batch);
+        return batch.size();
+    }
+}
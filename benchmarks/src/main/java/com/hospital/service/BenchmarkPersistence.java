@@ -0,0 +1,206 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.MedicationOrderEntity;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.PatientEntity;
+import com.hospital.persistence.entity.PatientSnapshotEntity;
+import com.hospital.persistence.migration.SchemaMigrations;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.ShardTenantResolver;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.SharedCacheMode;
+import jakarta.persistence.ValidationMode;
+import jakarta.persistence.spi.ClassTransformer;
+import jakarta.persistence.spi.PersistenceUnitInfo;
+import jakarta.persistence.spi.PersistenceUnitTransactionType;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+import org.hibernate.jpa.HibernatePersistenceProvider;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Stand-in for the container in benchmarks: the real JPA mapping on an in-memory H2,
+ * a thread-bound EntityManager (what the container's transaction-scoped proxy gives each
+ * request) and a TransactionRunner that uses resource-local transactions instead of JTA.
+ *
+ * sharded() instead routes by ShardContext over several H2 file databases, through the same
+ * Hibernate multi-tenancy hooks persistence.xml configures; each thread then has one
+ * EntityManager per shard.
+ */
+final class BenchmarkPersistence implements AutoCloseable {
+
+    private final EntityManagerFactory emf;
+    private final List<JdbcConnectionPool> pools;
+    private final ThreadLocal<EntityManager[]> current;
+    private final EntityManager threadBound;
+
+    BenchmarkPersistence(String databaseName) {
+        this(inMemory(databaseName), List.of());
+    }
+
+    /**
+     * One H2 file database per shard in the directory, migrated with the server's changelog.
+     */
+    static BenchmarkPersistence sharded(Path directory, int shards) throws SQLException {
+        List<JdbcConnectionPool> pools = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            JdbcConnectionPool pool = JdbcConnectionPool.create(
+                    "jdbc:h2:file:" + directory.resolve("shard" + shard) + ";MODE=MySQL", "sa", "sa");
+            pool.setMaxConnections(64);
+            try (Connection connection = pool.getConnection()) {
+                SchemaMigrations.migrate(connection);
+            }
+            pools.add(pool);
+        }
+        Map<String, Object> settings = settings();
+        settings.put("hibernate.multi_tenant_connection_provider", new PoolPerShard(pools));
+        settings.put("hibernate.tenant_identifier_resolver", new ShardTenantResolver());
+        return new BenchmarkPersistence(settings, pools);
+    }
+
+    private static Map<String, Object> inMemory(String databaseName) {
+        Map<String, Object> settings = settings();
+        settings.put("jakarta.persistence.jdbc.url", "jdbc:h2:mem:" + databaseName + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        settings.put("jakarta.persistence.jdbc.user", "sa");
+        settings.put("jakarta.persistence.jdbc.password", "sa");
+        settings.put("jakarta.persistence.schema-generation.database.action", "drop-and-create");
+        settings.put("hibernate.connection.pool_size", "64");
+        return settings;
+    }
+
+    private static Map<String, Object> settings() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.jdbc.batch_size", "50");
+        settings.put("hibernate.order_inserts", "true");
+        settings.put("hibernate.order_updates", "true");
+        return settings;
+    }
+
+    private BenchmarkPersistence(Map<String, Object> settings, List<JdbcConnectionPool> pools) {
+        this.pools = pools;
+        int shards = Math.max(1, pools.size());
+        current = ThreadLocal.withInitial(() -> new EntityManager[shards]);
+        emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(new UnitInfo(), settings);
+
+        threadBound = (EntityManager) Proxy.newProxyInstance(
+                EntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(entityManager(), args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * EntityManager to hand to OperationService and business logic; each thread gets its own.
+     */
+    EntityManager entityManager() {
+        EntityManager[] ems = current.get();
+        int shard = ems.length == 1 ? 0 : ShardContext.current();
+        EntityManager em = ems[shard];
+        if (em == null) {
+            em = emf.createEntityManager(); // bound to the shard ShardContext names right now
+            ems[shard] = em;
+        }
+        return em;
+    }
+
+    EntityManager threadBoundProxy() {
+        return threadBound;
+    }
+
+    TransactionRunner transactionRunner() {
+        return new TransactionRunner() {
+            @Override
+            public <T> T required(Supplier<T> work) {
+                EntityManager em = entityManager();
+                if (em.getTransaction().isActive()) {
+                    return work.get();
+                }
+                em.getTransaction().begin();
+                try {
+                    T result = work.get();
+                    em.getTransaction().commit();
+                    return result;
+                } catch (RuntimeException e) {
+                    if (em.getTransaction().isActive()) {
+                        em.getTransaction().rollback();
+                    }
+                    throw e;
+                } finally {
+                    em.clear(); // transaction-scoped persistence context
+                }
+            }
+
+            @Override
+            public <T> T requiresNew(Supplier<T> work) {
+                return required(work);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        emf.close();
+        pools.forEach(JdbcConnectionPool::dispose);
+    }
+
+    private static final class PoolPerShard extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl<String> {
+
+        private final List<JdbcConnectionPool> pools;
+
+        PoolPerShard(List<JdbcConnectionPool> pools) {
+            this.pools = pools;
+        }
+
+        @Override
+        protected DataSource selectAnyDataSource() {
+            return pools.get(0);
+        }
+
+        @Override
+        protected DataSource selectDataSource(String tenantIdentifier) {
+            return pools.get(Integer.parseInt(tenantIdentifier));
+        }
+    }
+
+    private static final class UnitInfo implements PersistenceUnitInfo {
+        public String getPersistenceUnitName() { return "hospitalPU"; }
+        public String getPersistenceProviderClassName() { return HibernatePersistenceProvider.class.getName(); }
+        public PersistenceUnitTransactionType getTransactionType() { return PersistenceUnitTransactionType.RESOURCE_LOCAL; }
+        public DataSource getJtaDataSource() { return null; }
+        public DataSource getNonJtaDataSource() { return null; }
+        public List<String> getMappingFileNames() { return List.of(); }
+        public List<URL> getJarFileUrls() { return List.of(); }
+        public URL getPersistenceUnitRootUrl() { return null; }
+        public List<String> getManagedClassNames() {
+            return List.of(OperationEntity.class.getName(), PatientEntity.class.getName(),
+                    MedicationOrderEntity.class.getName(), PatientSnapshotEntity.class.getName());
+        }
+        public boolean excludeUnlistedClasses() { return true; }
+        public SharedCacheMode getSharedCacheMode() { return SharedCacheMode.NONE; }
+        public ValidationMode getValidationMode() { return ValidationMode.NONE; }
+        public Properties getProperties() { return new Properties(); }
+        public String getPersistenceXMLSchemaVersion() { return "3.0"; }
+        public ClassLoader getClassLoader() { return BenchmarkPersistence.class.getClassLoader(); }
+        public void addTransformer(ClassTransformer transformer) { }
+        public ClassLoader getNewTempClassLoader() { return null; }
+    }
+}
@@ -0,0 +1,223 @@
+package com.hospital.service;
+
+import com.hospital.api.dto.DischargePatientResponse;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.entity.PatientEntity;
+import com.hospital.persistence.journal.AuditJournal;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.core.Response;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The idempotent execution hot path, OperationService.execute, against the real JPA mapping
+ * on an in-memory H2 (see BenchmarkPersistence), without WildFly.
+ *
+ *     firstExecution            new key: insert, business logic (discharges a new patient), commit
+ *     firstExecutionWithLookup  same, with the key filter not loaded: the key is looked up first
+ *     replayFromCache           retry answered by the replay cache, no database access
+ *     replayFromDatabase        retry with the replay cache disabled: one indexed lookup per call
+ *     firstExecutionInsertFirst   firstExecution in insert-first mode: one MERGE claims the key
+ *     replayFromDatabaseInsertFirst  replayFromDatabase in insert-first mode: the MERGE returns the stored row
+ *     conflict                  same key, different body: 409 from the cached entry
+ *     hashBody                  SHA-256 of the request body, paid on every call
+ *     serializeResult           JSON-B serialization of the business result, paid once per key
+ *
+ * The journal and group commit are off, so firstExecution is one H2 transaction per call.
+ * Thread counts are a JMH option; main() runs the whole set at 1, 4 and 16 threads:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar com.hospital.service.OperationServiceBenchmark
+ *     java -jar benchmarks/target/benchmarks.jar OperationServiceBenchmark -t 4 -p bodySize=4096
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationServiceBenchmark {
+
+    private static final String METHOD = "POST";
+    private static final String URI = "/v1/patients/bench/discharge";
+    private static final String REPLAYED_KEY = "bench-replayed";
+
+    @Param({"64", "4096", "65536"})
+    int bodySize;
+
+    private BenchmarkPersistence persistence;
+    private OperationService cached;
+    private OperationService uncached;
+    private OperationService unfiltered;
+    private OperationService insertFirst;
+    private OperationService insertFirstUncached;
+    private final AtomicLong keys = new AtomicLong();
+    private final Jsonb jsonb = JsonbBuilder.create();
+
+    private String body;
+    private String otherBody;
+    private DischargePatientResponse result;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persistence = new BenchmarkPersistence("bench-" + bodySize);
+        KnownKeyFilter knownKeys = new KnownKeyFilter();
+        knownKeys.loadKeys(List.of()); // the database starts empty
+        cached = newService(new ReplayCache(), knownKeys);
+        uncached = newService(new ReplayCache(0, 0, System::nanoTime), knownKeys); // put is a no-op
+        unfiltered = newService(new ReplayCache(), new KnownKeyFilter()); // never loaded, looks up every key
+        insertFirst = newService(new ReplayCache(), knownKeys);
+        insertFirst.setInsertFirst(true);
+        insertFirstUncached = newService(new ReplayCache(0, 0, System::nanoTime), knownKeys);
+        insertFirstUncached.setInsertFirst(true);
+
+        body = body(bodySize, "dr.house");
+        otherBody = body(bodySize, "dr.wilson");
+        result = new DischargePatientResponse("bench", true, Instant.now());
+
+        // the operation every replay and conflict call is answered from
+        expect(200, cached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge));
+        expect(200, cached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge));
+        expect(409, cached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, otherBody, this::discharge));
+        expect(200, uncached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge));
+        expect(200, insertFirstUncached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge));
+        expect(409, insertFirstUncached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, otherBody, this::discharge));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        persistence.close();
+        jsonb.close();
+    }
+
+    @Benchmark
+    public Response firstExecution() {
+        String key = "bench-" + keys.incrementAndGet();
+        return cached.execute(OperationType.DISCHARGE_PATIENT, key, METHOD, URI, body, () -> discharge(key));
+    }
+
+    @Benchmark
+    public Response firstExecutionWithLookup() {
+        String key = "bench-lookup-" + keys.incrementAndGet();
+        return unfiltered.execute(OperationType.DISCHARGE_PATIENT, key, METHOD, URI, body, () -> discharge(key));
+    }
+
+    @Benchmark
+    public Response replayFromCache() {
+        return cached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge);
+    }
+
+    @Benchmark
+    public Response replayFromDatabase() {
+        return uncached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge);
+    }
+
+    @Benchmark
+    public Response firstExecutionInsertFirst() {
+        String key = "bench-insert-first-" + keys.incrementAndGet();
+        return insertFirst.execute(OperationType.DISCHARGE_PATIENT, key, METHOD, URI, body, () -> discharge(key));
+    }
+
+    @Benchmark
+    public Response replayFromDatabaseInsertFirst() {
+        return insertFirstUncached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, body, this::discharge);
+    }
+
+    @Benchmark
+    public Response conflict() {
+        return cached.execute(OperationType.DISCHARGE_PATIENT, REPLAYED_KEY, METHOD, URI, otherBody, this::discharge);
+    }
+
+    @Benchmark
+    public byte[] hashBody() {
+        return RequestBodyHasher.hash(body);
+    }
+
+    @Benchmark
+    public byte[] serializeResult() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        jsonb.toJson(result, out);
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions commandLine = parse(args);
+        for (int threads : new int[]{1, 4, 16}) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(OperationServiceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    private OperationService newService(ReplayCache replayCache, KnownKeyFilter knownKeys) {
+        OperationService service = new OperationService();
+        service.setEntityManager(persistence.threadBoundProxy());
+        service.setReplayCache(replayCache);
+        service.setAuditJournal(new AuditJournal()); // disabled by default
+        service.setTransactionRunner(persistence.transactionRunner());
+        service.setGroupCommitter(new GroupCommitter()); // disabled by default
+        service.setMetrics(new OperationMetrics());
+        service.setLeases(new OperationLeases());
+        service.setKnownKeys(knownKeys);
+        service.setOperationFeed(new OperationFeed());
+        return service;
+    }
+
+    private DischargePatientResponse discharge() {
+        return discharge(REPLAYED_KEY);
+    }
+
+    /**
+     * Same work as the discharge endpoint: load (here: create) the patient and update it.
+     */
+    private DischargePatientResponse discharge(String patientId) {
+        EntityManager em = persistence.entityManager();
+        PatientEntity patient = em.find(PatientEntity.class, patientId);
+        if (patient == null) {
+            patient = new PatientEntity();
+            patient.setPatientId(patientId);
+            em.persist(patient);
+        }
+        Instant now = Instant.now();
+        patient.setDischarged(true);
+        patient.setDischargedAt(now);
+        return new DischargePatientResponse(patientId, true, now);
+    }
+
+    private static String body(int size, String clinicianId) {
+        StringBuilder sb = new StringBuilder(size);
+        sb.append("{\"clinicianId\":\"").append(clinicianId).append("\",\"note\":\"");
+        while (sb.length() < size - 2) {
+            sb.append('x');
+        }
+        return sb.append("\"}").toString();
+    }
+
+    private static void expect(int status, Response response) {
+        if (response.getStatus() != status) {
+            throw new IllegalStateException("Expected HTTP " + status + " but got " + response.getStatus());
+        }
+    }
+
+    private static CommandLineOptions parse(String[] args) {
+        try {
+            return new CommandLineOptions(args);
+        } catch (org.openjdk.jmh.runner.options.CommandLineOptionException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.journal.AuditJournal;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-in-time patient state (PatientHistory.stateAt) for a patient with a long operation history,
+ * on the real JPA mapping and an in-memory H2.
+ *
+ *     stateFromFirstOperation  no snapshot: every operation of the patient is read and replayed
+ *     stateFromSnapshot        same history, snapshotted before the last 20 operations: one snapshot
+ *                              read plus a 20 operation tail
+ *
+ *     java -jar benchmarks/target/benchmarks.jar PatientHistoryBenchmark -p operations=100000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientHistoryBenchmark {
+
+    private static final int TAIL = 20;
+    private static final int ORDERS = 50;
+
+    @Param({"1000", "10000"})
+    int operations;
+
+    private BenchmarkPersistence persistence;
+    private TransactionRunner transactions;
+    private PatientHistory history;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        persistence = new BenchmarkPersistence("history-" + operations);
+        transactions = persistence.transactionRunner();
+        history = new PatientHistory();
+        history.em = persistence.threadBoundProxy();
+        history.journal = new AuditJournal(); // disabled by default
+
+        for (String patientId : List.of("replayed", "snapshotted")) {
+            record(patientId, 0, operations - TAIL);
+        }
+        Thread.sleep(1); // the tail completes strictly after the snapshot
+        Instant coveredUntil = Instant.now();
+        Thread.sleep(1);
+        if (transactions.required(() -> history.snapshot(List.of("snapshotted"), coveredUntil)) != 1) {
+            throw new IllegalStateException("Snapshot was not written");
+        }
+        for (String patientId : List.of("replayed", "snapshotted")) {
+            record(patientId, operations - TAIL, TAIL);
+        }
+
+        PatientState replayed = stateOf("replayed");
+        PatientState snapshotted = stateOf("snapshotted");
+        if (replayed.getReplayedOperations() != operations || snapshotted.getReplayedOperations() != TAIL
+                || !replayed.getOrders().stream().map(PatientState.Order::getStatus).toList()
+                .equals(snapshotted.getOrders().stream().map(PatientState.Order::getStatus).toList())) {
+            throw new IllegalStateException("Snapshot and full replay disagree");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        persistence.close();
+    }
+
+    @Benchmark
+    public PatientState stateFromFirstOperation() {
+        return stateOf("replayed");
+    }
+
+    @Benchmark
+    public PatientState stateFromSnapshot() {
+        return stateOf("snapshotted");
+    }
+
+    private PatientState stateOf(String patientId) {
+        Instant now = Instant.now();
+        return transactions.required(() -> history.stateAt(patientId, now));
+    }
+
+    /**
+     * Completed operations alternating between discharge / undo and signing / undoing one of the orders.
+     */
+    private void record(String patientId, int first, int count) {
+        for (int start = first; start < first + count; start += 500) {
+            int from = start;
+            int to = Math.min(first + count, start + 500);
+            transactions.required(() -> {
+                EntityManager em = persistence.entityManager();
+                for (int n = from; n < to; n++) {
+                    em.persist(operation(patientId, n));
+                }
+                return null;
+            });
+        }
+    }
+
+    private static OperationEntity operation(String patientId, int n) {
+        OperationEntity op = new OperationEntity();
+        op.setIdempotencyKey(patientId + "-" + n);
+        op.setMethod("POST");
+        op.setBodyHash("-");
+        op.setStatus(OperationStatus.COMPLETED);
+        op.setHttpStatus(200);
+        String orderId = "o-" + (n % ORDERS);
+        switch (n % 4) {
+            case 0 -> {
+                op.setType(OperationType.DISCHARGE_PATIENT);
+                op.setUri("/v1/patients/" + patientId + "/discharge");
+                op.setResponseJson("{\"discharged\":true,\"dischargedAt\":\"" + Instant.now()
+                        + "\",\"patientId\":\"" + patientId + "\"}");
+            }
+            case 1 -> {
+                op.setType(OperationType.UNDO_DISCHARGE_PATIENT);
+                op.setUri("/v1/patients/" + patientId + "/discharge/undo");
+                op.setResponseJson("{\"discharged\":false,\"patientId\":\"" + patientId + "\"}");
+            }
+            case 2 -> {
+                op.setType(OperationType.SIGN_MEDICATION_ORDER);
+                op.setUri("/v1/patients/" + patientId + "/orders/" + orderId + "/sign");
+                op.setResponseJson("{\"orderId\":\"" + orderId + "\",\"patientId\":\"" + patientId
+                        + "\",\"signedAt\":\"" + Instant.now() + "\",\"signedBy\":\"dr.house\",\"status\":\"SIGNED\"}");
+            }
+            default -> {
+                op.setType(OperationType.UNDO_SIGN_MEDICATION_ORDER);
+                op.setUri("/v1/patients/" + patientId + "/orders/" + orderId + "/sign/undo");
+                op.setResponseJson("{\"orderId\":\"" + orderId + "\",\"patientId\":\"" + patientId
+                        + "\",\"status\":\"DRAFT\"}");
+            }
+        }
+        return op;
+    }
+}
@@ -0,0 +1,115 @@
+package com.hospital.service;
+
+import com.hospital.api.dto.DischargePatientResponse;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.entity.PatientEntity;
+import com.hospital.persistence.journal.AuditJournal;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.core.Response;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Write throughput of OperationService.execute as the number of shards grows.
+ *
+ * Every call is a new discharge of a new patient, routed to the patient's shard the way the
+ * resources do it, on 1, 2 or 4 H2 file databases (see BenchmarkPersistence.sharded). All threads
+ * share one database with one shard; with more shards the inserts and commits spread over
+ * independent databases, each with its own store and commit path.
+ *
+ *     java -cp benchmarks/target/benchmarks.jar com.hospital.service.ShardScalingBenchmark
+ *     java -jar benchmarks/target/benchmarks.jar ShardScalingBenchmark -t 32 -p shards=1,4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ShardScalingBenchmark {
+
+    private static final String BODY = "{}";
+
+    @Param({"1", "2", "4"})
+    int shards;
+
+    private Path directory;
+    private BenchmarkPersistence persistence;
+    private OperationService service;
+    private final AtomicLong patients = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("shard-bench-");
+        persistence = BenchmarkPersistence.sharded(directory, shards);
+        service = new OperationService();
+        service.setEntityManager(persistence.threadBoundProxy());
+        service.setReplayCache(new ReplayCache());
+        service.setAuditJournal(new AuditJournal()); // disabled by default
+        service.setTransactionRunner(persistence.transactionRunner());
+        service.setGroupCommitter(new GroupCommitter()); // disabled by default
+        service.setMetrics(new OperationMetrics());
+        service.setLeases(new OperationLeases());
+        KnownKeyFilter knownKeys = new KnownKeyFilter();
+        knownKeys.loadKeys(List.of()); // the shards start empty
+        service.setKnownKeys(knownKeys);
+        service.setOperationFeed(new OperationFeed());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        persistence.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Response firstExecution() {
+        String patientId = "P-" + patients.incrementAndGet();
+        String uri = "/v1/patients/" + patientId + "/discharge";
+        return ShardContext.call(Shards.shardOf(patientId, shards), () -> service.execute(
+                OperationType.DISCHARGE_PATIENT, "key-" + patientId, "POST", uri, BODY, () -> discharge(patientId)));
+    }
+
+    /**
+     * Same work as the discharge endpoint: load (here: create) the patient and update it.
+     */
+    private DischargePatientResponse discharge(String patientId) {
+        EntityManager em = persistence.entityManager();
+        PatientEntity patient = em.find(PatientEntity.class, patientId);
+        if (patient == null) {
+            patient = new PatientEntity();
+            patient.setPatientId(patientId);
+            em.persist(patient);
+        }
+        Instant now = Instant.now();
+        patient.setDischarged(true);
+        patient.setDischargedAt(now);
+        return new DischargePatientResponse(patientId, true, now);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ShardScalingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,82 @@
+package com.hospital.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Command line options, all in -name=value form.
+ */
+final class LoadOptions {
+
+    static final String USAGE = String.join("\n",
+            "Usage: java -jar loadtest.jar -requests=<file.jsonl> [options]",
+            "  -base-url=<url>          server root (default http://localhost:8080/hospital)",
+            "  -requests=<file>         JSONL request file, replayed in a loop",
+            "  -concurrency=<n>         parallel connections/workers (default 16)",
+            "  -rate=<n>                target requests per second, 0 = as fast as possible (default 0)",
+            "  -duration=<seconds>      measured run time (default 60)",
+            "  -warmup=<seconds>        unmeasured run time before that (default 10)",
+            "  -retry-ratio=<0..1>      share of requests that resend an earlier request with the same",
+            "                           Idempotency-Key and body (default 0.1)",
+            "  -contention-ratio=<0..1> share of requests redirected to the hot patient set (default 0)",
+            "  -hot-patients=<n>        size of the hot patient set (default 1)",
+            "  -timeout=<seconds>       per-request timeout (default 30)",
+            "  -hgrm=<file>             also write the overall latency distribution (HdrHistogram .hgrm)");
+
+    String baseUrl = "http://localhost:8080/hospital";
+    Path requests;
+    int concurrency = 16;
+    double rate;
+    Duration duration = Duration.ofSeconds(60);
+    Duration warmup = Duration.ofSeconds(10);
+    double retryRatio = 0.1;
+    double contentionRatio;
+    int hotPatients = 1;
+    Duration timeout = Duration.ofSeconds(30);
+    Path hgrm;
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("-") || eq < 0) {
+                throw new IllegalArgumentException("Expected -name=value but got '" + arg + "'");
+            }
+            String name = arg.substring(1, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "base-url" -> options.baseUrl = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                case "requests" -> options.requests = Path.of(value);
+                case "concurrency" -> options.concurrency = positive(name, Integer.parseInt(value));
+                case "rate" -> options.rate = Double.parseDouble(value);
+                case "duration" -> options.duration = Duration.ofSeconds(positive(name, Integer.parseInt(value)));
+                case "warmup" -> options.warmup = Duration.ofSeconds(Integer.parseInt(value));
+                case "retry-ratio" -> options.retryRatio = ratio(name, value);
+                case "contention-ratio" -> options.contentionRatio = ratio(name, value);
+                case "hot-patients" -> options.hotPatients = positive(name, Integer.parseInt(value));
+                case "timeout" -> options.timeout = Duration.ofSeconds(positive(name, Integer.parseInt(value)));
+                case "hgrm" -> options.hgrm = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option -" + name);
+            }
+        }
+        if (options.requests == null) {
+            throw new IllegalArgumentException("-requests is required");
+        }
+        return options;
+    }
+
+    private static int positive(String name, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("-" + name + " must be positive");
+        }
+        return value;
+    }
+
+    private static double ratio(String name, String value) {
+        double ratio = Double.parseDouble(value);
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("-" + name + " must be between 0 and 1");
+        }
+        return ratio;
+    }
+}
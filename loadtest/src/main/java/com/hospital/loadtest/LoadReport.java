@@ -0,0 +1,126 @@
+package com.hospital.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms (microseconds) and response counts of one worker; merged at the end of a run.
+ *
+ * Response time is measured from the time the request was scheduled to be sent, so with a target
+ * rate a stalled server also shows up as the queueing delay of the requests behind it (no
+ * coordinated omission). Service time is measured from the actual send.
+ */
+final class LoadReport {
+
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Map<RequestTemplate.Op, Histogram> responseTimes = new EnumMap<>(RequestTemplate.Op.class);
+    private final Histogram allResponseTimes = newHistogram();
+    private final Histogram serviceTimes = newHistogram();
+    private final Map<Integer, Long> statusCounts = new TreeMap<>();
+    private long errors;
+    private long retries;
+
+    LoadReport() {
+        for (RequestTemplate.Op op : RequestTemplate.Op.values()) {
+            responseTimes.put(op, newHistogram());
+        }
+    }
+
+    /**
+     * @param status HTTP status, or -1 when no response arrived (connect failure, timeout)
+     */
+    void record(RequestTemplate.Op op, boolean retry, int status, long responseNanos, long serviceNanos) {
+        if (retry) {
+            retries++;
+        }
+        if (status < 0) {
+            errors++;
+            return;
+        }
+        statusCounts.merge(status, 1L, Long::sum);
+        long responseMicros = Math.min(MAX_MICROS, TimeUnit.NANOSECONDS.toMicros(responseNanos));
+        responseTimes.get(op).recordValue(responseMicros);
+        allResponseTimes.recordValue(responseMicros);
+        serviceTimes.recordValue(Math.min(MAX_MICROS, TimeUnit.NANOSECONDS.toMicros(serviceNanos)));
+    }
+
+    void add(LoadReport other) {
+        other.responseTimes.forEach((op, histogram) -> responseTimes.get(op).add(histogram));
+        allResponseTimes.add(other.allResponseTimes);
+        serviceTimes.add(other.serviceTimes);
+        other.statusCounts.forEach((status, count) -> statusCounts.merge(status, count, Long::sum));
+        errors += other.errors;
+        retries += other.retries;
+    }
+
+    void print(PrintStream out, LoadOptions options, double measuredSeconds) {
+        long responses = allResponseTimes.getTotalCount();
+        long requests = responses + errors;
+        out.printf("Requests:  %d in %.1f s = %.1f/s (target %s, concurrency %d)%n",
+                requests, measuredSeconds, requests / measuredSeconds,
+                options.rate > 0 ? String.format("%.0f/s", options.rate) : "unbounded", options.concurrency);
+        out.printf("Retries:   %d (same Idempotency-Key), contention ratio %.2f over %d hot patient(s)%n",
+                retries, options.contentionRatio, options.hotPatients);
+
+        long other = statusCounts.entrySet().stream()
+                .filter(e -> e.getKey() != 200 && e.getKey() != 409 && e.getKey() != 500)
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+        out.printf("Responses: 200=%d  409=%d  500=%d  other=%d  no response=%d%n",
+                statusCounts.getOrDefault(200, 0L), statusCounts.getOrDefault(409, 0L),
+                statusCounts.getOrDefault(500, 0L), other, errors);
+        if (other > 0) {
+            out.println("           other statuses: " + statusCounts);
+        }
+
+        out.println();
+        out.println("Response time in ms (from scheduled send)");
+        printHeader(out);
+        for (Map.Entry<RequestTemplate.Op, Histogram> entry : responseTimes.entrySet()) {
+            if (entry.getValue().getTotalCount() > 0) {
+                printRow(out, entry.getKey().label, entry.getValue());
+            }
+        }
+        printRow(out, "all", allResponseTimes);
+        out.println();
+        out.println("Service time in ms (from actual send)");
+        printHeader(out);
+        printRow(out, "all", serviceTimes);
+    }
+
+    void writeHgrm(Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            allResponseTimes.outputPercentileDistribution(out, 1000.0); // in ms
+        }
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.printf("%-16s %10s", "op", "count");
+        for (double p : PERCENTILES) {
+            out.printf(" %9s", "p" + (p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p)));
+        }
+        out.printf(" %9s%n", "max");
+    }
+
+    private static void printRow(PrintStream out, String label, Histogram histogram) {
+        out.printf("%-16s %10d", label, histogram.getTotalCount());
+        for (double p : PERCENTILES) {
+            out.printf(" %9.2f", histogram.getValueAtPercentile(p) / 1000.0);
+        }
+        out.printf(" %9.2f%n", histogram.getMaxValue() / 1000.0);
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(MAX_MICROS, 3);
+    }
+}
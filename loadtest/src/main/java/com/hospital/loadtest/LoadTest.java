@@ -0,0 +1,174 @@
+package com.hospital.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the discharge, undo, sign and undo-sign endpoints of a running server from a JSONL
+ * request file (see RequestTemplate), to find the rate a node sustains at a given latency.
+ *
+ * Each worker owns one connection and sends synchronously, so concurrency bounds the requests in
+ * flight. With -rate the requests follow a fixed schedule shared by all workers (open model);
+ * without it every worker sends as soon as its previous response arrived (closed model).
+ *
+ * The file is replayed in a loop. Every request gets a fresh Idempotency-Key, and patient and
+ * order ids get a per-pass suffix so passes do not pile onto the same rows. On top of that:
+ *     retry-ratio       resends a recent request unchanged (same key and body), as a client
+ *                       retrying after a timeout would; expected answer is the stored 200
+ *     contention-ratio  moves the request to one of hot-patients shared patients, which
+ *                       serializes it behind the other work on that patient
+ */
+public final class LoadTest {
+
+    private static final int RECENT_REQUESTS = 4096;
+
+    private final LoadOptions options;
+    private final List<RequestTemplate> templates;
+    private final HttpClient client;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<Sent> recent = new AtomicReferenceArray<>(RECENT_REQUESTS);
+
+    private long startNanos;
+    private long measureFromNanos;
+    private long endNanos;
+
+    LoadTest(LoadOptions options, List<RequestTemplate> templates) {
+        this.options = options;
+        this.templates = templates;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(options.timeout)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        List<RequestTemplate> templates = RequestTemplate.load(options.requests);
+
+        System.out.printf("Replaying %d request(s) from %s against %s%n", templates.size(), options.requests, options.baseUrl);
+        LoadTest loadTest = new LoadTest(options, templates);
+        LoadReport report = loadTest.run();
+
+        System.out.println();
+        report.print(System.out, options, options.duration.toNanos() / 1e9);
+        if (options.hgrm != null) {
+            report.writeHgrm(options.hgrm);
+        }
+    }
+
+    LoadReport run() throws InterruptedException {
+        startNanos = System.nanoTime();
+        measureFromNanos = startNanos + options.warmup.toNanos();
+        endNanos = measureFromNanos + options.duration.toNanos();
+
+        List<Thread> workers = new ArrayList<>();
+        List<LoadReport> reports = new ArrayList<>();
+        for (int i = 0; i < options.concurrency; i++) {
+            LoadReport report = new LoadReport();
+            Thread worker = new Thread(() -> work(report), "loadtest-" + i);
+            reports.add(report);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        LoadReport total = new LoadReport();
+        reports.forEach(total::add);
+        return total;
+    }
+
+    private void work(LoadReport report) {
+        double intervalNanos = options.rate > 0 ? 1e9 / options.rate : 0;
+        while (true) {
+            long n = sequence.getAndIncrement();
+            long scheduled = intervalNanos > 0 ? startNanos + (long) (n * intervalNanos) : System.nanoTime();
+            if (scheduled >= endNanos) {
+                return;
+            }
+            sleepUntil(scheduled);
+
+            Sent request = next(n);
+            long sentAt = System.nanoTime();
+            int status;
+            try {
+                status = client.send(request.http, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long done = System.nanoTime();
+            if (scheduled >= measureFromNanos) {
+                report.record(request.op, request.retry, status, done - scheduled, done - sentAt);
+            }
+        }
+    }
+
+    private Sent next(long n) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (n > 0 && random.nextDouble() < options.retryRatio) {
+            Sent earlier = recent.get(random.nextInt((int) Math.min(n, RECENT_REQUESTS)));
+            if (earlier != null) {
+                return new Sent(earlier.op, earlier.http, true);
+            }
+        }
+
+        RequestTemplate template = templates.get((int) (n % templates.size()));
+        String suffix = "-" + runId + "-" + n / templates.size();
+        String patientId = random.nextDouble() < options.contentionRatio
+                ? "hot-" + runId + "-" + random.nextInt(options.hotPatients)
+                : template.getPatientId() + suffix;
+        String orderId = template.getOrderId() == null ? null : template.getOrderId() + suffix;
+
+        HttpRequest http = HttpRequest.newBuilder(URI.create(options.baseUrl + "/v1" + template.path(patientId, orderId)))
+                .timeout(options.timeout)
+                .header("Idempotency-Key", "lt-" + runId + "-" + n)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(template.body()))
+                .build();
+        Sent sent = new Sent(template.getOp(), http, false);
+        recent.set((int) (n % RECENT_REQUESTS), sent);
+        return sent;
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static final class Sent {
+        final RequestTemplate.Op op;
+        final HttpRequest http;
+        final boolean retry;
+
+        Sent(RequestTemplate.Op op, HttpRequest http, boolean retry) {
+            this.op = op;
+            this.http = http;
+            this.retry = retry;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.hospital.loadtest;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One line of the request file, e.g.
+ *
+ *     {"op":"discharge","patientId":"p1"}
+ *     {"op":"sign","patientId":"p1","orderId":"o1","clinicianId":"dr.house"}
+ *
+ * op is one of discharge, undo-discharge, sign, undo-sign. Idempotency-Keys are not part of the
+ * file: the generator assigns a fresh key per request (and reuses one for retries).
+ */
+final class RequestTemplate {
+
+    enum Op {
+        DISCHARGE("discharge"),
+        UNDO_DISCHARGE("undo-discharge"),
+        SIGN("sign"),
+        UNDO_SIGN("undo-sign");
+
+        final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+
+        static Op of(String label) {
+            for (Op op : values()) {
+                if (op.label.equals(label)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown op '" + label + "'");
+        }
+    }
+
+    private final Op op;
+    private final String patientId;
+    private final String orderId;
+    private final String clinicianId;
+
+    private RequestTemplate(Op op, String patientId, String orderId, String clinicianId) {
+        this.op = op;
+        this.patientId = patientId;
+        this.orderId = orderId;
+        this.clinicianId = clinicianId;
+    }
+
+    static List<RequestTemplate> load(Path file) throws IOException {
+        List<RequestTemplate> templates = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try (JsonReader reader = Json.createReader(new StringReader(line))) {
+                templates.add(parse(reader.readObject()));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException(file + " contains no requests");
+        }
+        return templates;
+    }
+
+    private static RequestTemplate parse(JsonObject json) {
+        Op op = Op.of(json.getString("op"));
+        String patientId = json.getString("patientId");
+        String orderId = null;
+        String clinicianId = null;
+        if (op == Op.SIGN || op == Op.UNDO_SIGN) {
+            orderId = json.getString("orderId");
+        }
+        if (op == Op.SIGN) {
+            clinicianId = json.getString("clinicianId", "loadtest");
+        }
+        return new RequestTemplate(op, patientId, orderId, clinicianId);
+    }
+
+    Op getOp() {
+        return op;
+    }
+
+    String getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Path below the API root (/v1) for the given patient and order ids.
+     */
+    String path(String patientId, String orderId) {
+        return switch (op) {
+            case DISCHARGE -> "/patients/" + patientId + "/discharge";
+            case UNDO_DISCHARGE -> "/patients/" + patientId + "/discharge/undo";
+            case SIGN -> "/patients/" + patientId + "/orders/" + orderId + "/sign";
+            case UNDO_SIGN -> "/patients/" + patientId + "/orders/" + orderId + "/sign/undo";
+        };
+    }
+
+    String getOrderId() {
+        return orderId;
+    }
+
+    String body() {
+        return op == Op.SIGN ? "{\"clinicianId\":\"" + clinicianId + "\"}" : "{}";
+    }
+}
@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+#
+# Moves patient, medication order and operation rows to their shard after the shard count changes.
+#
+#   scripts/shards/rebalance.sh --from N --to M [--data ./data] [--batch-size 500] [--dry-run]
+#
+# Run it with the server stopped, against the data directory the server uses (./data relative to
+# its working directory), then start the server with -Dhospital.shards.count=M. Safe to run again
+# after an interruption. Uses the classes of the exploded war, so run `mvn package` first.
+
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+WEBAPP="$(ls -d "$ROOT"/target/hospital-audit-server-*/WEB-INF 2>/dev/null | head -1 || true)"
+if [[ -z "$WEBAPP" ]]; then
+    echo "No exploded war under $ROOT/target, run mvn package first" >&2
+    exit 1
+fi
+
+exec java -cp "$WEBAPP/classes:$WEBAPP/lib/*" com.hospital.persistence.shard.ShardRebalancer "$@"
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# Measures the time from launching the bootable jar until /health first returns UP.
+#
+#   scripts/startup/measure-startup.sh [-n runs] [-a archive.jsa] [jar]
+#
+# Every run is a restart against the same (already migrated) database, like a rolling restart.
+# One unmeasured run comes first to create the database and warm the file system cache.
+# Results are printed and appended to target/startup-times.csv (one row per run) so startup time
+# can be tracked per release. Compare with and without -a to see what the CDS archive buys.
+
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+RUNS=5
+ARCHIVE=""
+while getopts "n:a:" opt; do
+    case "$opt" in
+        n) RUNS="$OPTARG" ;;
+        a) ARCHIVE="$(realpath "$OPTARG")" ;;
+        *) echo "usage: $0 [-n runs] [-a archive.jsa] [jar]" >&2; exit 2 ;;
+    esac
+done
+shift $((OPTIND - 1))
+JAR="$(realpath "${1:-$ROOT/target/hospital-audit-server-fast-bootable.jar}")"
+WORK_DIR="$ROOT/target/startup"
+CSV="$ROOT/target/startup-times.csv"
+
+source "$(dirname "$0")/server.sh"
+
+JAVA_ARGS=()
+if [[ -n "$ARCHIVE" ]]; then
+    JAVA_ARGS+=(-XX:SharedArchiveFile="$ARCHIVE")
+fi
+JAVA_ARGS+=(-jar "$JAR" --install-dir="$WORK_DIR/install")
+
+mkdir -p "$WORK_DIR/measure"
+[[ -f "$CSV" ]] || echo "timestamp,jar,java,cds_archive,run,millis" >"$CSV"
+JAVA_VERSION="$(java -version 2>&1 | head -1 | sed 's/.*"\(.*\)".*/\1/')"
+
+echo "Startup of $(basename "$JAR")${ARCHIVE:+ with $(basename "$ARCHIVE")}, $RUNS run(s)"
+start_server "$WORK_DIR/measure" "${JAVA_ARGS[@]}"
+wait_until_healthy 300 >/dev/null
+stop_server
+
+times=()
+for run in $(seq 1 "$RUNS"); do
+    START_NS="$(date +%s%N)"
+    start_server "$WORK_DIR/measure" "${JAVA_ARGS[@]}"
+    millis="$(wait_until_healthy 300)"
+    stop_server
+    times+=("$millis")
+    echo "  run $run: $millis ms"
+    echo "$(date -u +%FT%TZ),$(basename "$JAR"),$JAVA_VERSION,$(basename "${ARCHIVE:-none}"),$run,$millis" >>"$CSV"
+done
+
+sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+echo "min ${sorted[0]} ms, median ${sorted[$((RUNS / 2))]} ms, max ${sorted[$((RUNS - 1))]} ms"
@@ -0,0 +1,42 @@
+# Helpers shared by the startup scripts (sourced, not run).
+
+SERVER_PID=""
+HEALTH_URL="${BASE_URL:-http://localhost:8080/hospital/v1}/health"
+
+# start_server <work dir> <java args...>: starts java in the background, output to <work dir>/server.log
+start_server() {
+    local dir="$1"
+    shift
+    (cd "$dir" && exec java "$@" >"$dir/server.log" 2>&1) &
+    SERVER_PID=$!
+}
+
+# wait_until_healthy <timeout seconds>: prints the milliseconds until /health first answered UP
+wait_until_healthy() {
+    local started_ns="${START_NS:-$(date +%s%N)}"
+    local deadline=$((SECONDS + $1))
+    until curl -sf "$HEALTH_URL" 2>/dev/null | grep -q '"UP"'; do
+        if ! kill -0 "$SERVER_PID" 2>/dev/null; then
+            echo "Server exited before becoming healthy, see server.log" >&2
+            return 1
+        fi
+        if ((SECONDS > deadline)); then
+            echo "Server not healthy after $1 s" >&2
+            stop_server
+            return 1
+        fi
+        sleep 0.02
+    done
+    echo $((($(date +%s%N) - started_ns) / 1000000))
+}
+
+# stop_server: graceful shutdown (SIGTERM), so the JVM runs its exit hooks (CDS archive dump)
+stop_server() {
+    if [[ -n "$SERVER_PID" ]]; then
+        kill -TERM "$SERVER_PID" 2>/dev/null || true
+        wait "$SERVER_PID" 2>/dev/null || true
+        SERVER_PID=""
+    fi
+}
+
+trap stop_server EXIT
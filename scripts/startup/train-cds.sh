@@ -0,0 +1,55 @@
+#!/usr/bin/env bash
+#
+# Creates an AppCDS archive for the bootable jar from a training run.
+#
+#   scripts/startup/train-cds.sh [jar] [archive]
+#
+# Starts the server with -XX:ArchiveClassesAtExit, drives the JAX-RS and JPA paths (discharge, sign,
+# undo, bulk, replay, conflict, operation search/status/export, admin and metrics endpoints) so their
+# classes are loaded, then stops it with SIGTERM; the JVM writes the archive on exit.
+# Use the archive with: java -XX:SharedArchiveFile=<archive> -jar <jar> --install-dir=<same dir>
+#
+# The archive is only valid for the same JDK build and jar; retrain after either changes.
+
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+JAR="$(realpath "${1:-$ROOT/target/hospital-audit-server-fast-bootable.jar}")"
+ARCHIVE="$(realpath -m "${2:-$ROOT/target/hospital-audit-server.jsa}")"
+WORK_DIR="$ROOT/target/startup"
+BASE="${BASE_URL:-http://localhost:8080/hospital/v1}"
+
+source "$(dirname "$0")/server.sh"
+
+rm -rf "$WORK_DIR/train" && mkdir -p "$WORK_DIR/train"
+rm -f "$ARCHIVE"
+
+echo "Training run of $JAR"
+start_server "$WORK_DIR/train" -XX:ArchiveClassesAtExit="$ARCHIVE" -jar "$JAR" --install-dir="$WORK_DIR/install"
+wait_until_healthy 300 >/dev/null
+
+post() { # path key [body]
+    curl -s -o /dev/null -X POST "$BASE$1" -H "Idempotency-Key: $2" -H 'Content-Type: application/json' -d "${3:-{\}}"
+}
+
+for i in $(seq 1 50); do
+    post "/patients/train-$i/discharge" "train-d-$i"
+    post "/patients/train-$i/discharge" "train-d-$i"                      # replay
+    post "/patients/train-$i/orders/train-o-$i/sign" "train-s-$i" '{"clinicianId":"dr.train"}'
+    post "/patients/train-$i/orders/train-o-$i/sign" "train-s-$i" '{"clinicianId":"dr.other"}'  # conflict
+    post "/patients/train-$i/orders/train-o-$i/sign/undo" "train-us-$i"
+    post "/patients/train-$i/discharge/undo" "train-ud-$i"
+done
+post "/patients/discharge/batch" "unused" \
+    '[{"patientId":"train-b1","idempotencyKey":"train-b1"},{"patientId":"train-b2","idempotencyKey":"train-b2"}]'
+curl -s -o /dev/null -X POST "$BASE/patients/train-1/discharge" -H 'Idempotency-Key: train-async' -H 'Prefer: respond-async'
+curl -s -o /dev/null "$BASE/operations?limit=20"
+curl -s -o /dev/null "$BASE/operations?type=DISCHARGE_PATIENT&include=payloads"
+curl -s -o /dev/null "$BASE/operations/export"
+for endpoint in replay-cache retention journal group-commit async patient-locks entity-cache; do
+    curl -s -o /dev/null "$BASE/admin/$endpoint"
+done
+curl -s -o /dev/null "$BASE/metrics"
+
+stop_server
+echo "Archive written to $ARCHIVE ($(du -h "$ARCHIVE" | cut -f1))"
@@ -0,0 +1,21 @@
+package com.hospital.api.dto;
+
+public class DischargeBatchItem {
+
+    private String patientId;
+    private String idempotencyKey;
+
+    public DischargeBatchItem() {
+    }
+
+    public DischargeBatchItem(String patientId, String idempotencyKey) {
+        this.patientId = patientId;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getPatientId() { return patientId; }
+    public void setPatientId(String patientId) { this.patientId = patientId; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+}
@@ -0,0 +1,23 @@
+package com.hospital.api.dto;
+
+import java.util.List;
+
+public class OperationPage {
+
+    private List<OperationSummary> items;
+    private String nextCursor;   // null on the last page
+
+    public OperationPage() {
+    }
+
+    public OperationPage(List<OperationSummary> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<OperationSummary> getItems() { return items; }
+    public void setItems(List<OperationSummary> items) { this.items = items; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
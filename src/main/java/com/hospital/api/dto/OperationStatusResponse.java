@@ -0,0 +1,55 @@
+package com.hospital.api.dto;
+
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import jakarta.json.JsonValue;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public class OperationStatusResponse {
+
+    private UUID operationId;
+    private String idempotencyKey;
+    private OperationType type;
+    private OperationStatus status;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private Integer httpStatus;   // null until the operation has finished
+    private JsonValue response;   // stored response once COMPLETED or FAILED
+    private int attempts;
+    private String lastError;     // why the last attempt failed, if one did
+
+    public OperationStatusResponse() {
+    }
+
+    public UUID getOperationId() { return operationId; }
+    public void setOperationId(UUID operationId) { this.operationId = operationId; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    public OperationType getType() { return type; }
+    public void setType(OperationType type) { this.type = type; }
+
+    public OperationStatus getStatus() { return status; }
+    public void setStatus(OperationStatus status) { this.status = status; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public Integer getHttpStatus() { return httpStatus; }
+    public void setHttpStatus(Integer httpStatus) { this.httpStatus = httpStatus; }
+
+    public JsonValue getResponse() { return response; }
+    public void setResponse(JsonValue response) { this.response = response; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,83 @@
+package com.hospital.api.dto;
+
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import jakarta.json.JsonValue;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One row of GET /operations. Built by a JPQL constructor expression, so the
+ * request/response LOBs are only read when the caller asks for them.
+ */
+public class OperationSummary {
+
+    private UUID operationId;
+    private String idempotencyKey;
+    private OperationType type;
+    private OperationStatus status;
+    private String method;
+    private String uri;
+    private Integer httpStatus;   // null until the operation has finished
+    private Instant createdAt;
+    private Instant updatedAt;
+    private JsonValue request;    // only with include=payloads
+    private JsonValue response;   // only with include=payloads
+
+    public OperationSummary() {
+    }
+
+    public OperationSummary(UUID operationId,
+                            String idempotencyKey,
+                            OperationType type,
+                            OperationStatus status,
+                            String method,
+                            String uri,
+                            int httpStatus,
+                            Instant createdAt,
+                            Instant updatedAt) {
+        this.operationId = operationId;
+        this.idempotencyKey = idempotencyKey;
+        this.type = type;
+        this.status = status;
+        this.method = method;
+        this.uri = uri;
+        this.httpStatus = httpStatus == 0 ? null : httpStatus;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
+    public UUID getOperationId() { return operationId; }
+    public void setOperationId(UUID operationId) { this.operationId = operationId; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    public OperationType getType() { return type; }
+    public void setType(OperationType type) { this.type = type; }
+
+    public OperationStatus getStatus() { return status; }
+    public void setStatus(OperationStatus status) { this.status = status; }
+
+    public String getMethod() { return method; }
+    public void setMethod(String method) { this.method = method; }
+
+    public String getUri() { return uri; }
+    public void setUri(String uri) { this.uri = uri; }
+
+    public Integer getHttpStatus() { return httpStatus; }
+    public void setHttpStatus(Integer httpStatus) { this.httpStatus = httpStatus; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public JsonValue getRequest() { return request; }
+    public void setRequest(JsonValue request) { this.request = request; }
+
+    public JsonValue getResponse() { return response; }
+    public void setResponse(JsonValue response) { this.response = response; }
+}
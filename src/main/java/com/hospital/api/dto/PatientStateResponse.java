@@ -0,0 +1,46 @@
+package com.hospital.api.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * State of a patient at a point in time, reconstructed from the operation log.
+ */
+public class PatientStateResponse {
+
+    private String patientId;
+    private Instant at;
+    private boolean discharged;
+    private Instant dischargedAt;
+    private List<MedicationOrderResponse> orders;
+    private Instant lastChangeAt;
+    private Instant snapshotAt;          // null when replayed from the first operation
+    private int replayedOperations;      // operations applied on top of the snapshot
+
+    public PatientStateResponse() {
+    }
+
+    public String getPatientId() { return patientId; }
+    public void setPatientId(String patientId) { this.patientId = patientId; }
+
+    public Instant getAt() { return at; }
+    public void setAt(Instant at) { this.at = at; }
+
+    public boolean isDischarged() { return discharged; }
+    public void setDischarged(boolean discharged) { this.discharged = discharged; }
+
+    public Instant getDischargedAt() { return dischargedAt; }
+    public void setDischargedAt(Instant dischargedAt) { this.dischargedAt = dischargedAt; }
+
+    public List<MedicationOrderResponse> getOrders() { return orders; }
+    public void setOrders(List<MedicationOrderResponse> orders) { this.orders = orders; }
+
+    public Instant getLastChangeAt() { return lastChangeAt; }
+    public void setLastChangeAt(Instant lastChangeAt) { this.lastChangeAt = lastChangeAt; }
+
+    public Instant getSnapshotAt() { return snapshotAt; }
+    public void setSnapshotAt(Instant snapshotAt) { this.snapshotAt = snapshotAt; }
+
+    public int getReplayedOperations() { return replayedOperations; }
+    public void setReplayedOperations(int replayedOperations) { this.replayedOperations = replayedOperations; }
+}
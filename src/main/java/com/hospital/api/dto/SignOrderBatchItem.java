@@ -0,0 +1,26 @@
+package com.hospital.api.dto;
+
+public class SignOrderBatchItem {
+
+    private String orderId;
+    private String idempotencyKey;
+    private String clinicianId;
+
+    public SignOrderBatchItem() {
+    }
+
+    public SignOrderBatchItem(String orderId, String idempotencyKey, String clinicianId) {
+        this.orderId = orderId;
+        this.idempotencyKey = idempotencyKey;
+        this.clinicianId = clinicianId;
+    }
+
+    public String getOrderId() { return orderId; }
+    public void setOrderId(String orderId) { this.orderId = orderId; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    public String getClinicianId() { return clinicianId; }
+    public void setClinicianId(String clinicianId) { this.clinicianId = clinicianId; }
+}
@@ -0,0 +1,107 @@
+package com.hospital.api.idempotency;
+
+import com.hospital.api.HospitalApplication;
+import com.hospital.service.OperationService;
+import com.hospital.service.RequestBodyHasher;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.ApplicationPath;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Front half of every @Idempotent resource method, run after matching and before the entity is read.
+ *
+ * The body is read once through RequestBodyHasher.digesting, so it is hashed while it streams in,
+ * into one array of the Content-Length when the client sent one. The same array is handed back as
+ * the entity stream for deserialization and kept as the request body; it is only decoded to the
+ * stored request JSON once the operation actually runs (see IdempotentRequest). A retry found in the replay cache is answered here, before the entity is parsed
+ * or the method is called. Everything else goes on to the method, which runs its business logic
+ * through IdempotentRequest.execute: that call stores the response in the same transaction as the
+ * business change, so nothing is left for the way out.
+ *
+ * The operation URI is the request path under the application path (e.g. /v1/patients/42/discharge)
+ * and the body is compared byte for byte. An empty body counts as "{}", the request JSON the
+ * endpoints without a body have always stored.
+ */
+@Provider
+@Priority(Priorities.USER)
+@ApplicationScoped
+public class IdempotencyFilter implements ContainerRequestFilter {
+
+    static final String KEY_HEADER = "Idempotency-Key";
+    static final String PREFER_HEADER = "Prefer";
+
+    private static final byte[] EMPTY_BODY = "{}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_BODY_HASH = RequestBodyHasher.hash(EMPTY_BODY);
+    private static final String API_ROOT = "/" + HospitalApplication.class.getAnnotation(ApplicationPath.class).value()
+            .replaceAll("^/+|/+$", "");
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Inject
+    OperationService operationService;
+
+    @Inject
+    IdempotentRequest request;
+
+    @Override
+    public void filter(ContainerRequestContext context) throws IOException {
+        Method resourceMethod = resourceInfo.getResourceMethod();
+        Idempotent idempotent = resourceMethod == null ? null : resourceMethod.getAnnotation(Idempotent.class);
+        if (idempotent == null) {
+            return;
+        }
+
+        String idempotencyKey = context.getHeaderString(KEY_HEADER);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            context.abortWith(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "Idempotency-Key header is required"))
+                    .type(MediaType.APPLICATION_JSON)
+                    .build());
+            return;
+        }
+
+        byte[] requestBody = EMPTY_BODY;
+        byte[] bodyHash = EMPTY_BODY_HASH;
+        if (context.hasEntity()) {
+            RequestBodyHasher.DigestingInputStream in = RequestBodyHasher.digesting(context.getEntityStream());
+            int length = context.getLength();
+            // with a known length the body lands in one exact array instead of readAllBytes' chunks and copy
+            byte[] body = length > 0 ? in.readNBytes(length) : in.readAllBytes();
+            context.setEntityStream(new ByteArrayInputStream(body));
+            if (body.length > 0) {
+                requestBody = body;
+                bodyHash = in.hash();
+            }
+        }
+
+        String method = context.getMethod();
+        String uri = operationUri(context.getUriInfo().getPath());
+        Response replay = operationService.replayFromCache(idempotent.type(), idempotencyKey, method, uri, bodyHash);
+        if (replay != null) {
+            context.abortWith(replay);
+            return;
+        }
+        request.capture(idempotent.type(), idempotencyKey, method, uri, requestBody, bodyHash,
+                OperationService.prefersAsync(context.getHeaderString(PREFER_HEADER)));
+    }
+
+    static String operationUri(String path) {
+        return API_ROOT + (path.startsWith("/") ? path : "/" + path);
+    }
+}
@@ -0,0 +1,22 @@
+package com.hospital.api.idempotency;
+
+import com.hospital.persistence.entity.OperationType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method as an idempotent operation of the given type.
+ *
+ * IdempotencyFilter requires the Idempotency-Key header, captures and hashes the raw body and
+ * answers cached replays before the method runs. The method then only validates its input and
+ * passes its business logic to IdempotentRequest.execute.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Idempotent {
+
+    OperationType type();
+}
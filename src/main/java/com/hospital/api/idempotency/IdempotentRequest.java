@@ -0,0 +1,90 @@
+package com.hospital.api.idempotency;
+
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.service.OperationService;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * The idempotent operation of the current request, as captured by IdempotencyFilter: operation
+ * type, key, method, URI, raw body and its hash. Resource methods marked @Idempotent run their
+ * business logic through execute instead of rebuilding any of that by hand.
+ *
+ * The raw body stays a byte array until the operation runs: replays answered by the filter and
+ * requests rejected by validation never decode it, and the stored request JSON (a text column) is
+ * the only String copy.
+ */
+@RequestScoped
+public class IdempotentRequest {
+
+    @Inject
+    OperationService operationService;
+
+    private OperationType type;
+    private String idempotencyKey;
+    private String method;
+    private String uri;
+    private byte[] requestBody;
+    private String requestJson;
+    private byte[] bodyHash;
+    private boolean async;
+
+    void capture(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            byte[] requestBody,
+            byte[] bodyHash,
+            boolean async
+    ) {
+        this.type = type;
+        this.idempotencyKey = idempotencyKey;
+        this.method = method;
+        this.uri = uri;
+        this.requestBody = requestBody;
+        this.requestJson = null;
+        this.bodyHash = bodyHash;
+        this.async = async;
+    }
+
+    /**
+     * Runs the business logic at most once for this request's key, synchronously or in async mode
+     * (202 + Location) when the client sent Prefer: respond-async. The caller picks the shard.
+     */
+    public <T> Response execute(Supplier<T> businessLogic) {
+        if (type == null) {
+            throw new IllegalStateException("Not an @Idempotent request");
+        }
+        String requestJson = getRequestJson();
+        if (async) {
+            return operationService.executeAsync(type, idempotencyKey, method, uri, requestJson, bodyHash,
+                    businessLogic);
+        }
+        return operationService.execute(type, idempotencyKey, method, uri, requestJson, bodyHash, businessLogic);
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getRequestJson() {
+        if (requestJson == null && requestBody != null) {
+            requestJson = new String(requestBody, StandardCharsets.UTF_8);
+            requestBody = null;
+        }
+        return requestJson;
+    }
+}
@@ -0,0 +1,139 @@
+package com.hospital.api.resource;
+
+import com.hospital.api.stream.OperationStream;
+import com.hospital.persistence.journal.AuditJournal;
+import com.hospital.service.AsyncOperationExecutor;
+import com.hospital.service.EntityCacheStats;
+import com.hospital.service.GroupCommitter;
+import com.hospital.service.KnownKeyFilter;
+import com.hospital.service.OperationLeaseReaper;
+import com.hospital.service.OperationRetentionSweeper;
+import com.hospital.service.PatientLocks;
+import com.hospital.service.PatientSnapshotter;
+import com.hospital.service.ReplayCache;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only operational endpoints used to size and tune the server.
+ */
+@Path("/admin")
+@Produces(MediaType.APPLICATION_JSON)
+@RequestScoped
+public class AdminResource {
+
+    @Inject
+    ReplayCache replayCache;
+
+    @Inject
+    OperationRetentionSweeper retentionSweeper;
+
+    @Inject
+    OperationLeaseReaper leaseReaper;
+
+    @Inject
+    KnownKeyFilter knownKeys;
+
+    @Inject
+    PatientSnapshotter snapshotter;
+
+    @Inject
+    OperationStream operationStream;
+
+    @Inject
+    AuditJournal journal;
+
+    @Inject
+    GroupCommitter groupCommitter;
+
+    @Inject
+    AsyncOperationExecutor asyncExecutor;
+
+    @Inject
+    PatientLocks patientLocks;
+
+    @Inject
+    EntityCacheStats entityCacheStats;
+
+    @GET
+    @Path("/replay-cache")
+    public Map<String, Object> replayCache() {
+        ReplayCache.Stats stats = replayCache.stats();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("size", stats.getSize());
+        body.put("maxEntries", stats.getMaxEntries());
+        body.put("hits", stats.getHits());
+        body.put("misses", stats.getMisses());
+        body.put("evictions", stats.getEvictions());
+        body.put("hitRatio", stats.getHitRatio());
+        return body;
+    }
+
+    @GET
+    @Path("/retention")
+    public Map<String, Object> retention() {
+        return retentionSweeper.stats().toMap();
+    }
+
+    @GET
+    @Path("/leases")
+    public Map<String, Object> leases() {
+        return leaseReaper.stats();
+    }
+
+    @GET
+    @Path("/snapshots")
+    public Map<String, Object> snapshots() {
+        return snapshotter.stats();
+    }
+
+    @GET
+    @Path("/stream")
+    public Map<String, Object> stream() {
+        return operationStream.stats();
+    }
+
+    @GET
+    @Path("/key-filter")
+    public Map<String, Object> keyFilter() {
+        return knownKeys.stats();
+    }
+
+    @GET
+    @Path("/journal")
+    public Map<String, Object> journal() {
+        return journal.stats();
+    }
+
+    @GET
+    @Path("/group-commit")
+    public Map<String, Object> groupCommit() {
+        return groupCommitter.stats();
+    }
+
+    @GET
+    @Path("/async")
+    public Map<String, Object> async() {
+        return asyncExecutor.stats();
+    }
+
+    @GET
+    @Path("/patient-locks")
+    public Map<String, Object> patientLocks() {
+        return patientLocks.stats();
+    }
+
+    @GET
+    @Path("/entity-cache")
+    public Map<String, Object> entityCache() {
+        return entityCacheStats.stats();
+    }
+}
@@ -2,12 +2,21 @@ package com.hospital.api.resource;
 
 import com.hospital.api.dto.MedicationOrderResponse;
 import com.hospital.api.dto.SignMedicationOrderRequest;
+import com.hospital.api.dto.SignOrderBatchItem;
+import com.hospital.api.idempotency.Idempotent;
+import com.hospital.api.idempotency.IdempotentRequest;
 import com.hospital.persistence.entity.MedicationOrderEntity;
 import com.hospital.persistence.entity.MedicationOrderStatus;
 import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import com.hospital.service.BatchOperation;
 import com.hospital.service.OperationService;
+import com.hospital.service.PatientLocks;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
@@ -16,7 +25,10 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @Path("/patients/{patientId}/orders")
 @Consumes(MediaType.APPLICATION_JSON)
@@ -24,55 +36,46 @@ import java.util.Map;
 @RequestScoped
 public class MedicationOrderResource {
 
+    // the resource is request scoped, so share one instance instead of creating it per request
+    private static final Jsonb JSONB = JsonbBuilder.create();
+
     @Inject
     OperationService operationService;
 
+    @Inject
+    IdempotentRequest idempotentRequest;
+
+    @Inject
+    PatientLocks patientLocks;
+
     @PersistenceContext(unitName = "hospitalPU")
     EntityManager em;
 
 
     @POST
     @Path("/{orderId}/sign")
+    @Idempotent(type = OperationType.SIGN_MEDICATION_ORDER)
     public Response signOrder(
             @PathParam("patientId") String patientId,
             @PathParam("orderId") String orderId,
-            @HeaderParam("Idempotency-Key") String idempotencyKey,
             SignMedicationOrderRequest request
     ) {
-        if (idempotencyKey == null || idempotencyKey.isBlank()) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity(Map.of("error", "Idempotency-Key header is required"))
-                    .build();
-        }
-
         if (request == null || request.getClinicianId() == null || request.getClinicianId().isBlank()) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(Map.of("error", "clinicianId is required"))
                     .build();
         }
 
-        String uri = "/v1/patients/" + patientId + "/orders/" + orderId + "/sign";
-
-        // OperationService will JSON-serialize the request internally,
-        // so here I pass a minimal stable representation:
-        String requestJson = "{\"clinicianId\":\"" + request.getClinicianId() + "\"}";
-
-        return operationService.execute(
-                OperationType.SIGN_MEDICATION_ORDER,
-                idempotencyKey,
-                "POST",
-                uri,
-                requestJson,
-                () -> signOrder(patientId, orderId, request)
-        );
+        return execute(patientId, () -> sign(patientId, orderId, request));
     }
 
     @Transactional
-    protected MedicationOrderResponse signOrder(
+    protected MedicationOrderResponse sign(
             String patientId,
             String orderId,
             SignMedicationOrderRequest request
     ) {
+        patientLocks.lockForTransaction(patientId);
         MedicationOrderEntity order = em.find(MedicationOrderEntity.class, orderId);
 
         if (order == null) {
@@ -99,37 +102,95 @@ public class MedicationOrderResource {
         );
     }
 
+    /**
+     * Signs many orders of one patient in one request (pharmacy batch runs). Every item carries
+     * its own Idempotency-Key and is stored exactly like a single sign call. Its body hash is that
+     * of the compact JSON {"clinicianId":"..."}, so a key is only interchangeable with the single
+     * endpoint when that call sent exactly those bytes; any other formatting is a different body.
+     */
     @POST
-    @Path("/{orderId}/sign/undo")
-    public Response undoSignOrder(
+    @Path("/sign/batch")
+    public Response signOrders(
             @PathParam("patientId") String patientId,
-            @PathParam("orderId") String orderId,
-            @HeaderParam("Idempotency-Key") String idempotencyKey
+            List<SignOrderBatchItem> items
     ) {
-        if (idempotencyKey == null || idempotencyKey.isBlank()) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity(Map.of("error", "Idempotency-Key header is required"))
-                    .build();
+        if (items == null || items.isEmpty()) {
+            return badRequest("At least one item is required");
+        }
+        if (items.size() > operationService.getMaxBatchItems()) {
+            return badRequest("At most " + operationService.getMaxBatchItems() + " items are allowed per batch");
         }
 
-        String uri = "/v1/patients/" + patientId + "/orders/" + orderId + "/sign/undo";
-        String requestJson = "{}";
+        List<BatchOperation<MedicationOrderResponse>> operations = new ArrayList<>(items.size());
+        List<String> orderIds = new ArrayList<>(items.size());
+        for (SignOrderBatchItem item : items) {
+            if (item == null || item.getOrderId() == null || item.getOrderId().isBlank()) {
+                return badRequest("orderId is required for every item");
+            }
+            if (item.getIdempotencyKey() == null || item.getIdempotencyKey().isBlank()) {
+                return badRequest("idempotencyKey is required for every item");
+            }
+            if (item.getClinicianId() == null || item.getClinicianId().isBlank()) {
+                return badRequest("clinicianId is required for every item");
+            }
+            String orderId = item.getOrderId();
+            SignMedicationOrderRequest request = new SignMedicationOrderRequest(item.getClinicianId());
+            orderIds.add(orderId);
+            operations.add(new BatchOperation<>(
+                    OperationType.SIGN_MEDICATION_ORDER,
+                    item.getIdempotencyKey(),
+                    "POST",
+                    "/v1/patients/" + patientId + "/orders/" + orderId + "/sign",
+                    JSONB.toJson(request),
+                    () -> sign(patientId, orderId, request)
+            ));
+        }
 
-        return operationService.execute(
-                OperationType.UNDO_SIGN_MEDICATION_ORDER,
-                idempotencyKey,
-                "POST",
-                uri,
-                requestJson,
-                () -> undoSignOrder(patientId, orderId)
-        );
+        return ShardContext.call(Shards.shardOf(patientId), () -> operationService.executeBatch(operations, () -> {
+            patientLocks.lockForTransaction(patientId); // before loading, so the loaded versions are current
+            loadOrders(orderIds);
+        }));
+    }
+
+    /**
+     * Loads all orders of a batch in one query; the em.find calls that follow hit the persistence context.
+     */
+    private void loadOrders(List<String> orderIds) {
+        em.createQuery("SELECT o FROM MedicationOrderEntity o WHERE o.orderId IN :ids", MedicationOrderEntity.class)
+                .setParameter("ids", orderIds)
+                .getResultList();
+    }
+
+    /**
+     * Runs the @Idempotent operation of this request (synchronously, or async with Prefer: respond-async)
+     * on the shard of the patient.
+     */
+    private <T> Response execute(String patientId, Supplier<T> businessLogic) {
+        return ShardContext.call(Shards.shardOf(patientId), () -> idempotentRequest.execute(businessLogic));
+    }
+
+    private static Response badRequest(String message) {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(Map.of("error", message))
+                .build();
+    }
+
+    @POST
+    @Path("/{orderId}/sign/undo")
+    @Idempotent(type = OperationType.UNDO_SIGN_MEDICATION_ORDER)
+    public Response undoSignOrder(
+            @PathParam("patientId") String patientId,
+            @PathParam("orderId") String orderId
+    ) {
+        return execute(patientId, () -> undoSign(patientId, orderId));
     }
 
     @Transactional
-    protected MedicationOrderResponse undoSignOrder(
+    protected MedicationOrderResponse undoSign(
             String patientId,
             String orderId
     ) {
+        patientLocks.lockForTransaction(patientId);
         MedicationOrderEntity order = em.find(MedicationOrderEntity.class, orderId);
 
         if (order == null) {
@@ -0,0 +1,27 @@
+package com.hospital.api.resource;
+
+import com.hospital.service.OperationMetrics;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * Prometheus scrape endpoint (text exposition format).
+ */
+@Path("/metrics")
+@RequestScoped
+public class MetricsResource {
+
+    static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Inject
+    OperationMetrics metrics;
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public String metrics() {
+        return metrics.scrape();
+    }
+}
@@ -0,0 +1,340 @@
+package com.hospital.api.resource;
+
+import com.hospital.api.dto.OperationPage;
+import com.hospital.api.dto.OperationStatusResponse;
+import com.hospital.api.dto.OperationSummary;
+import com.hospital.api.stream.OperationStream;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.journal.AuditJournal;
+import com.hospital.persistence.journal.JournalRecord;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import com.hospital.service.OperationCursor;
+import com.hospital.service.OperationExporter;
+import com.hospital.service.OperationFilter;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Read API over the operation log: status of a single operation (polled by clients that used
+ * Prefer: respond-async), a keyset-paginated search for auditors and a live stream of completions.
+ *
+ * Operation ids do not say which shard they are on, so with several shards every read here asks
+ * each of them (search pages are merged in keyset order).
+ */
+@Path("/operations")
+@Produces(MediaType.APPLICATION_JSON)
+@RequestScoped
+public class OperationResource {
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    static final String NDJSON = "application/x-ndjson";
+
+    @PersistenceContext(unitName = "hospitalPU")
+    EntityManager em;
+
+    @Inject
+    AuditJournal journal;
+
+    @Inject
+    OperationExporter exporter;
+
+    @Inject
+    OperationStream operationStream;
+
+    /**
+     * Operations matching all given filters, oldest first, one page at a time.
+     *
+     * Paging is keyset based: cursor is the nextCursor of the previous page and the query
+     * continues strictly after that (created_at, operation_id), so page N costs the same as page 1.
+     * Each filter combination has a matching (filters..., created_at, operation_id) index.
+     * Request/response JSON is only loaded with include=payloads, and then only for the page.
+     * With several shards each one returns its first limit + 1 rows and the pages are merged.
+     */
+    @GET
+    public Response searchOperations(
+            @QueryParam("type") String type,
+            @QueryParam("status") String status,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("50") int limit,
+            @QueryParam("include") String include
+    ) {
+        OperationFilter filter;
+        OperationCursor after;
+        try {
+            filter = OperationFilter.parse(type, status, from, to);
+            after = cursor == null ? null : OperationCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return badRequest("Invalid filter: " + e.getMessage());
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return badRequest("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        boolean includePayloads = "payloads".equals(include);
+
+        StringBuilder jpql = new StringBuilder(
+                "SELECT new com.hospital.api.dto.OperationSummary(o.operationId, o.idempotencyKey, o.type,"
+                        + " o.status, o.method, o.uri, o.httpStatus, o.createdAt, o.updatedAt)"
+                        + " FROM OperationEntity o WHERE 1 = 1");
+        if (filter.getType() != null) {
+            jpql.append(" AND o.type = :type");
+        }
+        if (filter.getStatus() != null) {
+            jpql.append(" AND o.status = :status");
+        }
+        if (filter.getFrom() != null) {
+            jpql.append(" AND o.createdAt >= :from");
+        }
+        if (filter.getTo() != null) {
+            jpql.append(" AND o.createdAt < :to");
+        }
+        if (after != null) {
+            // the redundant >= lets the database start the index range at the cursor
+            jpql.append(" AND o.createdAt >= :afterCreated"
+                    + " AND (o.createdAt > :afterCreated OR o.operationId > :afterId)");
+        }
+        jpql.append(" ORDER BY o.createdAt, o.operationId");
+
+        int shards = Shards.count();
+        List<OperationSummary> items = new ArrayList<>();
+        Map<OperationSummary, Integer> shardOf = new IdentityHashMap<>();
+        for (int shard = 0; shard < shards; shard++) {
+            List<OperationSummary> page = ShardContext.call(shard, () -> search(jpql.toString(), filter, after, limit));
+            for (OperationSummary item : page) {
+                shardOf.put(item, shard);
+            }
+            items.addAll(page);
+        }
+        if (shards > 1) {
+            items.sort((a, b) -> OperationCursor.compare(
+                    a.getCreatedAt(), a.getOperationId(), b.getCreatedAt(), b.getOperationId()));
+        }
+
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            OperationSummary last = items.get(limit - 1);
+            nextCursor = new OperationCursor(last.getCreatedAt(), last.getOperationId()).encode();
+        }
+        if (includePayloads && !items.isEmpty()) {
+            for (int shard = 0; shard < shards; shard++) {
+                List<OperationSummary> onShard = new ArrayList<>();
+                for (OperationSummary item : items) {
+                    if (shardOf.get(item) == shard) {
+                        onShard.add(item);
+                    }
+                }
+                if (!onShard.isEmpty()) {
+                    ShardContext.run(shard, () -> loadPayloads(onShard));
+                }
+            }
+        }
+        return Response.ok(new OperationPage(items, nextCursor)).build();
+    }
+
+    private List<OperationSummary> search(String jpql, OperationFilter filter, OperationCursor after, int limit) {
+        TypedQuery<OperationSummary> query = em.createQuery(jpql, OperationSummary.class)
+                .setMaxResults(limit + 1); // one extra row tells whether there is a next page
+        if (filter.getType() != null) {
+            query.setParameter("type", filter.getType());
+        }
+        if (filter.getStatus() != null) {
+            query.setParameter("status", filter.getStatus());
+        }
+        if (filter.getFrom() != null) {
+            query.setParameter("from", filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            query.setParameter("to", filter.getTo());
+        }
+        if (after != null) {
+            query.setParameter("afterCreated", after.getCreatedAt())
+                    .setParameter("afterId", after.getOperationId());
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * Streams the whole (filtered) operation log as NDJSON for compliance exports.
+     *
+     * Memory stays flat regardless of size (see OperationExporter). With gzip=true the stream is
+     * compressed on the fly. Every line has a cursor; after an interrupted download, pass the cursor
+     * of the last complete line as resume to continue right after it.
+     */
+    @GET
+    @Path("/export")
+    @Produces(NDJSON)
+    public Response exportOperations(
+            @QueryParam("type") String type,
+            @QueryParam("status") String status,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @QueryParam("resume") String resume,
+            @QueryParam("gzip") @DefaultValue("false") boolean gzip
+    ) {
+        OperationFilter filter;
+        OperationCursor after;
+        try {
+            filter = OperationFilter.parse(type, status, from, to);
+            after = resume == null ? null : OperationCursor.decode(resume);
+        } catch (IllegalArgumentException e) {
+            return badRequest("Invalid filter: " + e.getMessage());
+        }
+
+        StreamingOutput body = output -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(output, 64 * 1024);
+                exporter.export(filter, after, compressed);
+                compressed.finish();
+            } else {
+                exporter.export(filter, after, output);
+            }
+        };
+        Response.ResponseBuilder response = Response.ok(body, NDJSON);
+        if (gzip) {
+            response.encoding("gzip");
+        }
+        return response.build();
+    }
+
+    private void loadPayloads(List<OperationSummary> items) {
+        Map<UUID, OperationSummary> byId = new HashMap<>();
+        for (OperationSummary item : items) {
+            byId.put(item.getOperationId(), item);
+        }
+        List<Object[]> rows = em.createQuery(
+                        "SELECT o.operationId, o.requestJson, o.responseJson, o.journalPosition"
+                                + " FROM OperationEntity o WHERE o.operationId IN :ids", Object[].class)
+                .setParameter("ids", byId.keySet())
+                .getResultList();
+        for (Object[] row : rows) {
+            OperationSummary item = byId.get((UUID) row[0]);
+            String requestJson = (String) row[1];
+            String responseJson = (String) row[2];
+            if (requestJson == null && responseJson == null && row[3] != null) {
+                // index-only row, the payloads live in the audit journal
+                JournalRecord record = journal.read((Long) row[3]);
+                requestJson = record.getRequestJson();
+                responseJson = record.getResponseJson();
+            }
+            item.setRequest(parseJson(requestJson));
+            item.setResponse(parseJson(responseJson));
+        }
+    }
+
+    /**
+     * Server-Sent Events of every operation completed on this node from now on, so downstream systems
+     * do not have to poll the search. A client that reconnects with Last-Event-ID continues right after
+     * that event, as long as the feed still holds it (see OperationStream).
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamOperations(
+            @Context SseEventSink sink,
+            @Context Sse sse,
+            @HeaderParam("Last-Event-ID") String lastEventId
+    ) {
+        if (!operationStream.isEnabled()) {
+            throw new WebApplicationException(error(Response.Status.NOT_FOUND, "The operation feed is disabled"));
+        }
+        if (!operationStream.subscribe(sink, sse, lastEventId)) {
+            throw new WebApplicationException(
+                    error(Response.Status.SERVICE_UNAVAILABLE, "Too many operation stream subscribers"));
+        }
+    }
+
+    @GET
+    @Path("/{operationId}")
+    public Response getOperation(@PathParam("operationId") String operationId) {
+        UUID id;
+        try {
+            id = UUID.fromString(operationId);
+        } catch (IllegalArgumentException e) {
+            return badRequest("operationId must be a UUID");
+        }
+
+        OperationEntity op = null;
+        int shards = Shards.count();
+        for (int shard = 0; shard < shards && op == null; shard++) {
+            op = ShardContext.call(shard, () -> em.find(OperationEntity.class, id));
+        }
+        if (op == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Map.of("error", "Operation not found"))
+                    .build();
+        }
+
+        OperationStatusResponse body = new OperationStatusResponse();
+        body.setOperationId(op.getOperationId());
+        body.setIdempotencyKey(op.getIdempotencyKey());
+        body.setType(op.getType());
+        body.setStatus(op.getStatus());
+        body.setCreatedAt(op.getCreatedAt());
+        body.setUpdatedAt(op.getUpdatedAt());
+        body.setAttempts(op.getAttempts());
+        body.setLastError(op.getLastError());
+        if (op.getStatus() == OperationStatus.COMPLETED || op.getStatus() == OperationStatus.FAILED) {
+            body.setHttpStatus(op.getHttpStatus());
+            String responseJson = op.getResponseJson();
+            if (responseJson == null && op.getJournalPosition() != null) {
+                responseJson = journal.read(op.getJournalPosition()).getResponseJson();
+            }
+            body.setResponse(parseJson(responseJson));
+        }
+        return Response.ok(body).build();
+    }
+
+    private static JsonValue parseJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readValue();
+        }
+    }
+
+    private static Response badRequest(String message) {
+        return error(Response.Status.BAD_REQUEST, message);
+    }
+
+    private static Response error(Response.Status status, String message) {
+        return Response.status(status)
+                .entity(Map.of("error", message))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
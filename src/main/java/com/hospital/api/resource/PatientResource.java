@@ -1,9 +1,20 @@
 package com.hospital.api.resource;
 
+import com.hospital.api.dto.DischargeBatchItem;
 import com.hospital.api.dto.DischargePatientResponse;
+import com.hospital.api.dto.MedicationOrderResponse;
+import com.hospital.api.dto.PatientStateResponse;
+import com.hospital.api.idempotency.Idempotent;
+import com.hospital.api.idempotency.IdempotentRequest;
 import com.hospital.persistence.entity.PatientEntity;
 import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import com.hospital.service.BatchOperation;
 import com.hospital.service.OperationService;
+import com.hospital.service.PatientHistory;
+import com.hospital.service.PatientLocks;
+import com.hospital.service.PatientState;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
@@ -14,7 +25,11 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @Path("/patients")
 @Consumes(MediaType.APPLICATION_JSON)
@@ -25,36 +40,66 @@ public class PatientResource {
     @Inject
     OperationService operationService;
 
+    @Inject
+    IdempotentRequest idempotentRequest;
+
+    @Inject
+    PatientLocks patientLocks;
+
+    @Inject
+    PatientHistory history;
+
     @PersistenceContext(unitName = "hospitalPU")
     EntityManager em;
 
     @POST
     @Path("/{patientId}/discharge")
-    public Response dischargePatient(
-            @PathParam("patientId") String patientId,
-            @HeaderParam("Idempotency-Key") String idempotencyKey
-    ) {
-        if (idempotencyKey == null || idempotencyKey.isBlank()) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity(Map.of("error", "Idempotency-Key header is required"))
-                    .build();
+    @Idempotent(type = OperationType.DISCHARGE_PATIENT)
+    public Response dischargePatient(@PathParam("patientId") String patientId) {
+        return execute(patientId, () -> discharge(patientId));
+    }
+
+    /**
+     * State of the patient and its medication orders at the given time (default now), reconstructed
+     * from the latest snapshot before it and the operations completed after that snapshot.
+     */
+    @GET
+    @Path("/{patientId}/state")
+    public Response patientState(@PathParam("patientId") String patientId, @QueryParam("at") String at) {
+        Instant pointInTime;
+        try {
+            pointInTime = at == null ? Instant.now() : Instant.parse(at);
+        } catch (DateTimeParseException e) {
+            return badRequest("at must be an ISO-8601 instant, e.g. 2025-12-14T02:00:00Z");
         }
 
-        String uri = "/v1/patients/" + patientId + "/discharge";
-        String requestJson = "{}"; // no body for now
+        PatientState state = ShardContext.call(Shards.shardOf(patientId), () -> history.stateAt(patientId, pointInTime));
+        if (!state.isKnown()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Map.of("error", "No operations for patient " + patientId + " up to " + pointInTime))
+                    .build();
+        }
 
-        return operationService.execute(
-                OperationType.DISCHARGE_PATIENT,
-                idempotencyKey,
-                "POST",
-                uri,
-                requestJson,
-                () -> dischargePatient(patientId)
-        );
+        PatientStateResponse response = new PatientStateResponse();
+        response.setPatientId(patientId);
+        response.setAt(pointInTime);
+        response.setDischarged(state.isDischarged());
+        response.setDischargedAt(state.getDischargedAt());
+        List<MedicationOrderResponse> orders = new ArrayList<>(state.getOrders().size());
+        for (PatientState.Order order : state.getOrders()) {
+            orders.add(new MedicationOrderResponse(order.getOrderId(), patientId, order.getStatus(),
+                    order.getSignedBy(), order.getSignedAt()));
+        }
+        response.setOrders(orders);
+        response.setLastChangeAt(state.getLastChangeAt());
+        response.setSnapshotAt(state.getSnapshotAt());
+        response.setReplayedOperations(state.getReplayedOperations());
+        return Response.ok(response).build();
     }
 
     @Transactional
-    protected DischargePatientResponse dischargePatient(String patientId) {
+    protected DischargePatientResponse discharge(String patientId) {
+        patientLocks.lockForTransaction(patientId);
         Instant now = Instant.now();
         PatientEntity patient = em.find(PatientEntity.class, patientId);
 
@@ -77,33 +122,83 @@ public class PatientResource {
         );
     }
 
+    /**
+     * Discharges many patients in one request (ward closures). Every item carries its own
+     * Idempotency-Key and is stored exactly like a single discharge with the body {}. A single
+     * discharge sent without a body or with exactly {} therefore shares its key with a batch item;
+     * any other body is a different request and conflicts.
+     */
     @POST
-    @Path("/{patientId}/discharge/undo")
-    public Response undoDischargePatient(
-            @PathParam("patientId") String patientId,
-            @HeaderParam("Idempotency-Key") String idempotencyKey
-    ) {
-        if (idempotencyKey == null || idempotencyKey.isBlank()) {
-            return Response.status(Response.Status.BAD_REQUEST)
-                    .entity(Map.of("error", "Idempotency-Key header is required"))
-                    .build();
+    @Path("/discharge/batch")
+    public Response dischargePatients(List<DischargeBatchItem> items) {
+        if (items == null || items.isEmpty()) {
+            return badRequest("At least one item is required");
+        }
+        if (items.size() > operationService.getMaxBatchItems()) {
+            return badRequest("At most " + operationService.getMaxBatchItems() + " items are allowed per batch");
         }
 
-        String uri = "/v1/patients/" + patientId + "/discharge/undo";
-        String requestJson = "{}";
+        List<BatchOperation<DischargePatientResponse>> operations = new ArrayList<>(items.size());
+        List<String> patientIds = new ArrayList<>(items.size());
+        for (DischargeBatchItem item : items) {
+            if (item == null || item.getPatientId() == null || item.getPatientId().isBlank()) {
+                return badRequest("patientId is required for every item");
+            }
+            if (item.getIdempotencyKey() == null || item.getIdempotencyKey().isBlank()) {
+                return badRequest("idempotencyKey is required for every item");
+            }
+            String patientId = item.getPatientId();
+            patientIds.add(patientId);
+            operations.add(new BatchOperation<>(
+                    OperationType.DISCHARGE_PATIENT,
+                    item.getIdempotencyKey(),
+                    "POST",
+                    "/v1/patients/" + patientId + "/discharge",
+                    "{}",
+                    () -> discharge(patientId),
+                    patientId
+            ));
+        }
 
-        return operationService.execute(
-                OperationType.UNDO_DISCHARGE_PATIENT,
-                idempotencyKey,
-                "POST",
-                uri,
-                requestJson,
-                () -> undoDischarge(patientId)
-        );
+        return operationService.executeBatch(operations, () -> loadPatients(patientIds));
+    }
+
+    /**
+     * Locks and then loads all patients of a batch (on the current shard) in one query; the em.find
+     * calls that follow hit the persistence context. Locking first means the loaded versions are current.
+     */
+    private void loadPatients(List<String> batchPatientIds) {
+        List<String> patientIds = Shards.onCurrentShard(batchPatientIds);
+        patientLocks.lockForTransaction(patientIds);
+        em.createQuery("SELECT p FROM PatientEntity p WHERE p.patientId IN :ids", PatientEntity.class)
+                .setParameter("ids", patientIds)
+                .getResultList();
+    }
+
+    /**
+     * Runs the @Idempotent operation of this request (synchronously, or async with Prefer: respond-async)
+     * on the shard of the patient.
+     */
+    private <T> Response execute(String patientId, Supplier<T> businessLogic) {
+        return ShardContext.call(Shards.shardOf(patientId), () -> idempotentRequest.execute(businessLogic));
+    }
+
+    private static Response badRequest(String message) {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(Map.of("error", message))
+                .build();
+    }
+
+    @POST
+    @Path("/{patientId}/discharge/undo")
+    @Idempotent(type = OperationType.UNDO_DISCHARGE_PATIENT)
+    public Response undoDischargePatient(@PathParam("patientId") String patientId) {
+        return execute(patientId, () -> undoDischarge(patientId));
     }
 
     @Transactional
     protected DischargePatientResponse undoDischarge(String patientId) {
+        patientLocks.lockForTransaction(patientId);
         PatientEntity patient = em.find(PatientEntity.class, patientId);
 
         if (patient == null) {
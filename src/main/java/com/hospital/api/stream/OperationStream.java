@@ -0,0 +1,250 @@
+package com.hospital.api.stream;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.service.OperationEvent;
+import com.hospital.service.OperationFeed;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Subscribers of GET /operations/stream, each fed from its own position in the OperationFeed ring.
+ *
+ * A subscriber only holds a thread while it has events to send: a publish wakes it, it sends
+ * everything up to the newest event, one send at a time, and goes idle again. A send that does not
+ * complete within the send timeout closes the connection, so a stuck client costs at most one
+ * pending event. A client that is slower than the publish rate falls behind in the ring; once its
+ * position has been overwritten it gets a "lagged" event with the number of events it missed and
+ * continues from the oldest one still held.
+ *
+ * Events:
+ *     operation  one completed operation (see OperationEvent.getData)
+ *     lagged     {"missed": n}, its id is that of the last missed event
+ *     reset      the Last-Event-ID is not from this run of the feed, events may be missing
+ *
+ * Settings (system properties):
+ *     hospital.feed.max-subscribers       (default 1000)
+ *     hospital.feed.send-timeout-seconds  (default 30)
+ */
+@ApplicationScoped
+public class OperationStream {
+
+    private static final Logger LOG = Logger.getLogger(OperationStream.class.getName());
+
+    static final String MAX_SUBSCRIBERS_PROPERTY = "hospital.feed.max-subscribers";
+    static final String SEND_TIMEOUT_SECONDS_PROPERTY = "hospital.feed.send-timeout-seconds";
+
+    private static final int READ_BATCH = 64;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Inject
+    OperationFeed feed;
+
+    private final int maxSubscribers = HospitalProperties.intValue(MAX_SUBSCRIBERS_PROPERTY, 1_000);
+    private final long sendTimeoutSeconds = HospitalProperties.longValue(SEND_TIMEOUT_SECONDS_PROPERTY, 30);
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ExecutorService executor;
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder lagNotices = new LongAdder();
+    private final LongAdder missedEvents = new LongAdder();
+    private final LongAdder sendTimeouts = new LongAdder();
+
+    @PostConstruct
+    void start() {
+        // threads only exist while subscribers are sending, idle ones hold none
+        executor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    @PreDestroy
+    void stop() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return feed.isEnabled();
+    }
+
+    /**
+     * Starts streaming to the sink: after the event with lastEventId if the feed still knows it,
+     * otherwise from the next event published.
+     *
+     * @return false when max-subscribers clients are already connected
+     */
+    public boolean subscribe(SseEventSink sink, Sse sse, String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            return false;
+        }
+        long position = feed.latest();
+        boolean reset = false;
+        if (lastEventId != null) {
+            long resumeAfter = feed.sequenceOf(lastEventId);
+            if (resumeAfter >= 0) {
+                position = resumeAfter;
+            } else {
+                reset = true;
+            }
+        }
+
+        Subscriber subscriber = new Subscriber(sink, sse, position, reset);
+        subscribers.add(subscriber);
+        connected.increment();
+        feed.addListener(subscriber.wakeup);
+        subscriber.wake(); // sends the reset notice, and what was published since lastEventId
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = feed.stats();
+        stats.put("subscribers", subscribers.size());
+        stats.put("maxSubscribers", maxSubscribers);
+        stats.put("connected", connected.sum());
+        stats.put("sent", sent.sum());
+        stats.put("lagNotices", lagNotices.sum());
+        stats.put("missedEvents", missedEvents.sum());
+        stats.put("sendTimeouts", sendTimeouts.sum());
+        long newest = feed.latest();
+        long maxLag = 0;
+        for (Subscriber subscriber : subscribers) {
+            maxLag = Math.max(maxLag, newest - subscriber.position);
+        }
+        stats.put("maxLag", maxLag);
+        return stats;
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final SseEventSink sink;
+        private final Sse sse;
+        private final Runnable wakeup = this::wake;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final List<OperationEvent> batch = new ArrayList<>(READ_BATCH);
+        private boolean resetPending;
+
+        // sequence of the last event sent (or skipped), only written by the draining thread
+        private volatile long position;
+
+        Subscriber(SseEventSink sink, Sse sse, long position, boolean resetPending) {
+            this.sink = sink;
+            this.sse = sse;
+            this.position = position;
+            this.resetPending = resetPending;
+        }
+
+        void wake() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false); // shutting down
+                }
+            }
+        }
+
+        /**
+         * Sends everything published after position, then goes idle until the next wake.
+         */
+        @Override
+        public void run() {
+            try {
+                if (resetPending) {
+                    send(sse.newEventBuilder()
+                            .name("reset")
+                            .data("{\"reason\":\"Last-Event-ID is not from this stream, resynchronize from GET /operations\"}")
+                            .build());
+                    resetPending = false;
+                }
+                while (!sink.isClosed()) {
+                    batch.clear();
+                    long missed = feed.read(position, READ_BATCH, batch);
+                    if (missed > 0) {
+                        position += missed;
+                        lagNotices.increment();
+                        missedEvents.add(missed);
+                        send(sse.newEventBuilder()
+                                .id(feed.eventId(position))
+                                .name("lagged")
+                                .data("{\"missed\":" + missed + "}")
+                                .build());
+                    }
+                    if (batch.isEmpty()) {
+                        if (missed > 0) {
+                            continue;
+                        }
+                        scheduled.set(false);
+                        // a publish between the read and clearing the flag found it still set
+                        if (feed.latest() <= position || !scheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    for (OperationEvent event : batch) {
+                        send(sse.newEventBuilder()
+                                .id(feed.eventId(event.getSequence()))
+                                .name("operation")
+                                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                                .data(String.class, event.getData())
+                                .build());
+                        position = event.getSequence();
+                        sent.increment();
+                    }
+                }
+            } catch (TimeoutException e) {
+                sendTimeouts.increment();
+                LOG.fine(() -> "Closing operation stream subscriber, no send completed in " + sendTimeoutSeconds + "s");
+            } catch (ExecutionException | RuntimeException e) {
+                LOG.log(Level.FINE, "Operation stream subscriber disconnected", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close();
+        }
+
+        private void send(OutboundSseEvent event) throws InterruptedException, ExecutionException, TimeoutException {
+            sink.send(event).toCompletableFuture().get(sendTimeoutSeconds, TimeUnit.SECONDS);
+        }
+
+        void close() {
+            feed.removeListener(wakeup);
+            subscribers.remove(this);
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                LOG.log(Level.FINE, "Closing operation stream sink failed", e);
+            }
+        }
+    }
+}
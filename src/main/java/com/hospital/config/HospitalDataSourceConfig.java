@@ -1,27 +1,52 @@
 package com.hospital.config;
 
 import jakarta.annotation.sql.DataSourceDefinition;
+import jakarta.annotation.sql.DataSourceDefinitions;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
 
 /**
- * Defines the H2 datasource for the application.
- * JPA will create the schema.
+ * Defines the H2 datasources for the application: HospitalDS (shard 0) and the datasources of
+ * shards 1-3, which are only used when hospital.shards.count asks for them (see Shards).
+ * The schema is created and migrated by SchemaMigrations.
  */
-@DataSourceDefinition(
-        name = "java:jboss/datasources/HospitalDS",
-        className = "org.h2.jdbcx.JdbcDataSource",
-        url = "jdbc:h2:file:./data/hospital;AUTO_SERVER=TRUE;MODE=MySQL;DB_CLOSE_DELAY=-1",
-        user = "sa",
-        password = "sa"
-)
+@DataSourceDefinitions({
+        @DataSourceDefinition(
+                name = "java:jboss/datasources/HospitalDS",
+                className = "org.h2.jdbcx.JdbcDataSource",
+                url = "jdbc:h2:file:./data/hospital;AUTO_SERVER=TRUE;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                user = "sa",
+                password = "sa"
+        ),
+        @DataSourceDefinition(
+                name = "java:jboss/datasources/HospitalDS-shard1",
+                className = "org.h2.jdbcx.JdbcDataSource",
+                url = "jdbc:h2:file:./data/hospital-shard1;AUTO_SERVER=TRUE;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                user = "sa",
+                password = "sa"
+        ),
+        @DataSourceDefinition(
+                name = "java:jboss/datasources/HospitalDS-shard2",
+                className = "org.h2.jdbcx.JdbcDataSource",
+                url = "jdbc:h2:file:./data/hospital-shard2;AUTO_SERVER=TRUE;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                user = "sa",
+                password = "sa"
+        ),
+        @DataSourceDefinition(
+                name = "java:jboss/datasources/HospitalDS-shard3",
+                className = "org.h2.jdbcx.JdbcDataSource",
+                url = "jdbc:h2:file:./data/hospital-shard3;AUTO_SERVER=TRUE;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                user = "sa",
+                password = "sa"
+        )
+})
 @WebListener
 public class HospitalDataSourceConfig implements ServletContextListener {
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
-        // schema will be created by JPA (see persistence.xml)
+        // schema is migrated by SchemaMigrations at CDI startup
     }
 
     @Override
@@ -0,0 +1,48 @@
+package com.hospital.config;
+
+/**
+ * Tunables read from system properties (e.g. -Dhospital.replay-cache.max-entries=20000).
+ * Every setting has a sensible default so the server starts without any configuration.
+ */
+public final class HospitalProperties {
+
+    private HospitalProperties() {
+    }
+
+    public static int intValue(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + name + ": " + value, e);
+        }
+    }
+
+    public static long longValue(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid long for " + name + ": " + value, e);
+        }
+    }
+
+    public static boolean booleanValue(String name, boolean defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    public static String stringValue(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+}
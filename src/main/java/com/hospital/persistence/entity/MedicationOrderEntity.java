@@ -5,7 +5,11 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "medication_order")
+@Table(
+        name = "medication_order",
+        indexes = @Index(name = "idx_medication_order_patient", columnList = "patient_id")
+)
+@Cacheable
 public class MedicationOrderEntity {
 
     @Id
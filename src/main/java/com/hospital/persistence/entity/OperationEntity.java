@@ -1,5 +1,6 @@
 package com.hospital.persistence.entity;
 
+import com.hospital.persistence.shard.Shards;
 import jakarta.persistence.*;
 
 import java.time.Instant;
@@ -11,7 +12,18 @@ import java.util.UUID;
         uniqueConstraints = @UniqueConstraint(
                 name = "uk_operations_idempotency_key",
                 columnNames = "idempotency_key"
-        )
+        ),
+        indexes = {
+                // retention sweeper and GET /operations?type=... walk this index in keyset order
+                @Index(name = "idx_operations_type_created", columnList = "type, created_at, operation_id"),
+                // keyset indexes for the other GET /operations filter combinations
+                @Index(name = "idx_operations_type_status_created", columnList = "type, status, created_at, operation_id"),
+                @Index(name = "idx_operations_status_created", columnList = "status, created_at, operation_id"),
+                @Index(name = "idx_operations_created", columnList = "created_at, operation_id"),
+                // tail replay of one patient and the patient snapshotter (completed since)
+                @Index(name = "idx_operations_patient_updated", columnList = "patient_id, updated_at"),
+                @Index(name = "idx_operations_status_updated", columnList = "status, updated_at")
+        }
 )
 public class OperationEntity {
 
@@ -28,6 +40,10 @@ public class OperationEntity {
     @Column(name = "uri", nullable = false, length = 512)
     private String uri;
 
+    // derived from uri, null for operations that are not on a patient
+    @Column(name = "patient_id", length = 64)
+    private String patientId;
+
     @Column(name = "body_hash", nullable = false, length = 128)
     private String bodyHash;
 
@@ -50,6 +66,24 @@ public class OperationEntity {
     @Column(name = "http_status", nullable = false)
     private int httpStatus;
 
+    // journal mode: request/response JSON live in the audit journal at this position
+    @Column(name = "journal_position")
+    private Long journalPosition;
+
+    // node working on a pending operation and until when (see OperationLeases); null once finished
+    @Column(name = "lease_owner", length = 128)
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+
+    // number of times the operation was claimed, also the fencing token of the current lease
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 512)
+    private String lastError;
+
     @Column(name = "created_at", nullable = false)
     private Instant createdAt;
 
@@ -62,8 +96,14 @@ public class OperationEntity {
         if (operationId == null) {
             operationId = UUID.randomUUID();
         }
-        createdAt = now;
-        updatedAt = now;
+        // both kept when an index row is rebuilt from the journal
+        if (createdAt == null) {
+            createdAt = now;
+        }
+        if (updatedAt == null) {
+            updatedAt = now;
+        }
+        patientId = Shards.patientIdOf(uri);
     }
 
     @PreUpdate
@@ -103,6 +143,14 @@ public class OperationEntity {
         this.uri = uri;
     }
 
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(String patientId) {
+        this.patientId = patientId;
+    }
+
     public String getBodyHash() {
         return bodyHash;
     }
@@ -151,6 +199,46 @@ public class OperationEntity {
         this.httpStatus = httpStatus;
     }
 
+    public Long getJournalPosition() {
+        return journalPosition;
+    }
+
+    public void setJournalPosition(Long journalPosition) {
+        this.journalPosition = journalPosition;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Instant getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(Instant leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
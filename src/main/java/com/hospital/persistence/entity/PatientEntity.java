@@ -7,6 +7,7 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "patient")
+@Cacheable
 public class PatientEntity {
 
     @Id
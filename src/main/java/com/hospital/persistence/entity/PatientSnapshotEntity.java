@@ -0,0 +1,96 @@
+package com.hospital.persistence.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * State of one patient and its medication orders after every operation completed up to coveredUntil
+ * (see PatientHistory). Point-in-time queries start from the latest snapshot before the requested
+ * time and replay only the operations after it.
+ */
+@Entity
+@Table(
+        name = "patient_snapshots",
+        indexes = @Index(name = "idx_patient_snapshots_patient_covered", columnList = "patient_id, covered_until")
+)
+public class PatientSnapshotEntity {
+
+    @Id
+    @Column(name = "snapshot_id", nullable = false, updatable = false)
+    private UUID snapshotId;
+
+    @Column(name = "patient_id", nullable = false, length = 64)
+    private String patientId;
+
+    @Column(name = "covered_until", nullable = false)
+    private Instant coveredUntil;
+
+    @Lob
+    @Column(name = "state_json", nullable = false)
+    private String stateJson;
+
+    // operations folded in since the previous snapshot
+    @Column(name = "operations", nullable = false)
+    private int operations;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    void prePersist() {
+        if (snapshotId == null) {
+            snapshotId = UUID.randomUUID();
+        }
+        createdAt = Instant.now();
+    }
+
+    public UUID getSnapshotId() {
+        return snapshotId;
+    }
+
+    public void setSnapshotId(UUID snapshotId) {
+        this.snapshotId = snapshotId;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(String patientId) {
+        this.patientId = patientId;
+    }
+
+    public Instant getCoveredUntil() {
+        return coveredUntil;
+    }
+
+    public void setCoveredUntil(Instant coveredUntil) {
+        this.coveredUntil = coveredUntil;
+    }
+
+    public String getStateJson() {
+        return stateJson;
+    }
+
+    public void setStateJson(String stateJson) {
+        this.stateJson = stateJson;
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    public void setOperations(int operations) {
+        this.operations = operations;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
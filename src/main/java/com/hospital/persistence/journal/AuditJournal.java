@@ -0,0 +1,305 @@
+package com.hospital.persistence.journal;
+
+import com.hospital.config.HospitalProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only audit journal on memory-mapped, checksummed segment files.
+ *
+ * When enabled, OperationService writes the full audit record of each operation here and keeps
+ * only a compact index row in the operations table. Appends from concurrent requests are
+ * group-committed: a single flusher thread fsyncs everything written since its last pass, so
+ * N requests arriving during one fsync share the next one.
+ *
+ * Positions handed out are (segment id << 32 | offset) and are stored in the index row.
+ *
+ * Settings (system properties):
+ *     hospital.journal.enabled     (default false)
+ *     hospital.journal.dir         (default ./data/journal)
+ *     hospital.journal.segment-mb  (default 64)
+ */
+@ApplicationScoped
+public class AuditJournal {
+
+    private static final Logger LOG = Logger.getLogger(AuditJournal.class.getName());
+
+    static final String ENABLED_PROPERTY = "hospital.journal.enabled";
+    static final String DIR_PROPERTY = "hospital.journal.dir";
+    static final String SEGMENT_MB_PROPERTY = "hospital.journal.segment-mb";
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentSize;
+
+    private final NavigableMap<Integer, JournalSegment> segments = new ConcurrentSkipListMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // guarded by lock
+    private JournalSegment active;
+    private final Map<JournalSegment, Integer> dirty = new LinkedHashMap<>();
+    private long appendedSeq;
+    private long durableSeq;
+    private RuntimeException flushFailure;
+    private boolean closed;
+
+    // statistics, guarded by lock
+    private long fsyncBatches;
+    private long maxBatchSize;
+
+    private Thread flusher;
+
+    public AuditJournal() {
+        this(HospitalProperties.booleanValue(ENABLED_PROPERTY, false),
+                Paths.get(HospitalProperties.stringValue(DIR_PROPERTY, "./data/journal")),
+                HospitalProperties.intValue(SEGMENT_MB_PROPERTY, 64) * 1024 * 1024);
+    }
+
+    AuditJournal(boolean enabled, Path dir, int segmentSize) {
+        this.enabled = enabled;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    @PostConstruct
+    void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*.journal")) {
+                for (Path file : files) {
+                    JournalSegment segment = JournalSegment.open(file);
+                    segments.put(segment.id(), segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open audit journal in " + dir, e);
+        }
+        active = segments.isEmpty()
+                ? newSegment(0)
+                : segments.lastEntry().getValue();
+
+        flusher = new Thread(this::flushLoop, "audit-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        LOG.info(() -> "Audit journal open in " + dir.toAbsolutePath() + " with " + segments.size() + " segment(s)");
+    }
+
+    @PreDestroy
+    void close() {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            pending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the record and returns once it is on disk (shares the fsync with concurrent appends).
+     *
+     * @return the position of the record, see {@link #read(long)}
+     */
+    public long append(JournalRecord record) {
+        long[] positionAndSeq = write(record);
+        awaitDurable(positionAndSeq[1]);
+        return positionAndSeq[0];
+    }
+
+    /**
+     * Appends all records and returns once the last one is on disk, so a batch waits for one fsync.
+     *
+     * @return the positions of the records, in order
+     */
+    public long[] appendAll(List<JournalRecord> records) {
+        long[] positions = new long[records.size()];
+        long lastSeq = 0;
+        for (int i = 0; i < positions.length; i++) {
+            long[] positionAndSeq = write(records.get(i));
+            positions[i] = positionAndSeq[0];
+            lastSeq = positionAndSeq[1];
+        }
+        awaitDurable(lastSeq);
+        return positions;
+    }
+
+    /**
+     * Appends the record without waiting; it becomes durable with the next group commit.
+     */
+    public long appendAsync(JournalRecord record) {
+        return write(record)[0];
+    }
+
+    public JournalRecord read(long position) {
+        JournalSegment segment = segments.get((int) (position >>> 32));
+        if (segment == null) {
+            throw new IllegalStateException("Unknown journal segment for position " + position);
+        }
+        return segment.read((int) position);
+    }
+
+    public interface Visitor {
+        void visit(long position, JournalRecord record);
+    }
+
+    /**
+     * Visits every valid record in append order (used by recovery).
+     */
+    public void forEach(Visitor visitor) {
+        for (JournalSegment segment : segments.values()) {
+            long base = (long) segment.id() << 32;
+            segment.forEach((offset, record) -> visitor.visit(base | offset, record));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", enabled);
+            stats.put("segments", segments.size());
+            stats.put("records", appendedSeq);
+            stats.put("fsyncBatches", fsyncBatches);
+            stats.put("avgBatchSize", fsyncBatches == 0 ? 0.0 : (double) durableSeq / fsyncBatches);
+            stats.put("maxBatchSize", maxBatchSize);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long[] write(JournalRecord record) {
+        if (!enabled) {
+            throw new IllegalStateException("Audit journal is disabled");
+        }
+        byte[] payload = record.encode();
+        if (payload.length > JournalSegment.maxPayload(segmentSize)) {
+            throw new IllegalArgumentException("Journal record of " + payload.length
+                    + " bytes does not fit in a segment, raise " + SEGMENT_MB_PROPERTY);
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Audit journal is closed");
+            }
+            if (!active.hasRoom(payload.length)) {
+                active = newSegment(active.id() + 1);
+            }
+            int offset = active.write(payload);
+            dirty.put(active, active.writePosition());
+            long seq = ++appendedSeq;
+            pending.signal();
+            return new long[]{((long) active.id() << 32) | offset, seq};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long seq) {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (flushFailure != null) {
+                    throw new IllegalStateException("Audit journal flush failed", flushFailure);
+                }
+                if (closed && flusher != null && !flusher.isAlive()) {
+                    throw new IllegalStateException("Audit journal closed before record was flushed");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<Map.Entry<JournalSegment, Integer>> batch;
+            long target;
+            lock.lock();
+            try {
+                while (appendedSeq == durableSeq && !closed) {
+                    pending.awaitUninterruptibly();
+                }
+                if (appendedSeq == durableSeq) {
+                    flushed.signalAll();
+                    return; // closed and nothing left to flush
+                }
+                target = appendedSeq;
+                batch = new ArrayList<>(dirty.entrySet());
+                dirty.clear();
+            } finally {
+                lock.unlock();
+            }
+
+            RuntimeException failure = null;
+            try {
+                for (Map.Entry<JournalSegment, Integer> entry : batch) {
+                    entry.getKey().forceTo(entry.getValue());
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Audit journal fsync failed", e);
+                failure = e;
+            }
+
+            lock.lock();
+            try {
+                if (failure != null) {
+                    flushFailure = failure;
+                } else {
+                    maxBatchSize = Math.max(maxBatchSize, target - durableSeq);
+                    durableSeq = target;
+                    fsyncBatches++;
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (failure != null) {
+                return;
+            }
+        }
+    }
+
+    private JournalSegment newSegment(int id) {
+        JournalSegment segment = JournalSegment.create(dir, id, segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+}
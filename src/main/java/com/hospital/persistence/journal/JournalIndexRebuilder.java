@@ -0,0 +1,94 @@
+package com.hospital.persistence.journal;
+
+import com.hospital.persistence.entity.OperationEntity;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Inserts missing index rows for committed journal records, one batch per transaction.
+ *
+ * A rebuilt row keeps the times of the journal record: created_at when it was received, updated_at
+ * when it finished, which point-in-time history orders by. Snapshots of its patient taken after
+ * that time were computed without the operation and are dropped, so history replays it from the
+ * snapshot before.
+ */
+@ApplicationScoped
+public class JournalIndexRebuilder {
+
+    @PersistenceContext(unitName = "hospitalPU")
+    EntityManager em;
+
+    @Inject
+    AuditJournal journal;
+
+    /**
+     * @param positions journal position per operation id, all committed COMPLETED operations
+     * @return number of rows inserted
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public int rebuild(Map<UUID, Long> positions) {
+        List<JournalRecord> records = new ArrayList<>(positions.size());
+        for (Long position : positions.values()) {
+            records.add(journal.read(position));
+        }
+
+        Set<UUID> presentIds = new HashSet<>(em.createQuery(
+                        "SELECT o.operationId FROM OperationEntity o WHERE o.operationId IN :ids", UUID.class)
+                .setParameter("ids", positions.keySet())
+                .getResultList());
+        List<String> keys = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            keys.add(record.getIdempotencyKey());
+        }
+        // a key may have been reused after its original row was purged; that row wins
+        Set<String> presentKeys = new HashSet<>(em.createQuery(
+                        "SELECT o.idempotencyKey FROM OperationEntity o WHERE o.idempotencyKey IN :keys", String.class)
+                .setParameter("keys", keys)
+                .getResultList());
+
+        int inserted = 0;
+        Map<String, Instant> earliestByPatient = new HashMap<>();
+        for (JournalRecord record : records) {
+            if (presentIds.contains(record.getOperationId()) || !presentKeys.add(record.getIdempotencyKey())) {
+                continue;
+            }
+            OperationEntity op = new OperationEntity();
+            op.setOperationId(record.getOperationId());
+            op.setIdempotencyKey(record.getIdempotencyKey());
+            op.setMethod(record.getMethod());
+            op.setUri(record.getUri());
+            op.setBodyHash(record.getBodyHash());
+            op.setType(record.getType());
+            op.setStatus(record.getStatus());
+            op.setHttpStatus(record.getHttpStatus());
+            op.setCreatedAt(record.getReceivedAt());
+            op.setUpdatedAt(record.getFinishedAt());
+            op.setJournalPosition(positions.get(record.getOperationId()));
+            em.persist(op);
+            inserted++;
+            if (op.getPatientId() != null && op.getUpdatedAt() != null) {
+                earliestByPatient.merge(op.getPatientId(), op.getUpdatedAt(),
+                        (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        earliestByPatient.forEach((patientId, finishedAt) -> em.createQuery(
+                        "DELETE FROM PatientSnapshotEntity s WHERE s.patientId = :patientId"
+                                + " AND s.coveredUntil >= :finishedAt")
+                .setParameter("patientId", patientId)
+                .setParameter("finishedAt", finishedAt)
+                .executeUpdate());
+        return inserted;
+    }
+}
@@ -0,0 +1,222 @@
+package com.hospital.persistence.journal;
+
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One entry of the audit journal.
+ *
+ * OPERATION entries carry the full audit record of one attempt at an operation, written when the
+ * attempt ends: when the operation was received (RECEIVED), when this attempt started processing
+ * (PROCESSING), when it finished and with which status (COMPLETED or FAILED), and which attempt it
+ * was. The transitions are journalled together with the outcome rather than appended one by one,
+ * so an operation still costs a single append; a failed attempt has its own FAILED record and the
+ * retry that takes the operation over writes another. Operations the lease reaper fails without
+ * running them again are recorded only in the operations table.
+ *
+ * COMMITTED / ABORTED entries are small markers appended once the database transaction for that
+ * operation has ended, so recovery knows which OPERATION entries actually took effect.
+ */
+public final class JournalRecord {
+
+    public enum Kind {
+        OPERATION,
+        COMMITTED,
+        ABORTED
+    }
+
+    private final Kind kind;
+    private final UUID operationId;
+    private final String idempotencyKey;
+    private final String method;
+    private final String uri;
+    private final String bodyHash;
+    private final OperationType type;
+    private final OperationStatus status;
+    private final int httpStatus;
+    private final Instant receivedAt;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+    private final int attempt;
+    private final String requestJson;
+    private final String responseJson;
+
+    private JournalRecord(Kind kind, UUID operationId, String idempotencyKey, String method, String uri,
+                          String bodyHash, OperationType type, OperationStatus status, int httpStatus,
+                          Instant receivedAt, Instant startedAt, Instant finishedAt, int attempt,
+                          String requestJson, String responseJson) {
+        this.kind = kind;
+        this.operationId = operationId;
+        this.idempotencyKey = idempotencyKey;
+        this.method = method;
+        this.uri = uri;
+        this.bodyHash = bodyHash;
+        this.type = type;
+        this.status = status;
+        this.httpStatus = httpStatus;
+        this.receivedAt = receivedAt;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.attempt = attempt;
+        this.requestJson = requestJson;
+        this.responseJson = responseJson;
+    }
+
+    /**
+     * Full audit record of an attempt that reached a final status (COMPLETED or FAILED).
+     *
+     * @param startedAt when the attempt moved the operation to PROCESSING
+     */
+    public static JournalRecord operation(OperationEntity op, Instant startedAt, Instant finishedAt) {
+        return new JournalRecord(Kind.OPERATION, op.getOperationId(), op.getIdempotencyKey(), op.getMethod(),
+                op.getUri(), op.getBodyHash(), op.getType(), op.getStatus(), op.getHttpStatus(),
+                op.getCreatedAt(), startedAt, finishedAt, op.getAttempts(), op.getRequestJson(),
+                op.getResponseJson());
+    }
+
+    public static JournalRecord committed(UUID operationId) {
+        return marker(Kind.COMMITTED, operationId);
+    }
+
+    public static JournalRecord aborted(UUID operationId) {
+        return marker(Kind.ABORTED, operationId);
+    }
+
+    private static JournalRecord marker(Kind kind, UUID operationId) {
+        return new JournalRecord(kind, operationId, null, null, null, null, null, null, 0,
+                null, null, Instant.now(), 0, null, null);
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                256 + length(requestJson) + length(responseJson));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(kind.ordinal());
+            out.writeLong(operationId.getMostSignificantBits());
+            out.writeLong(operationId.getLeastSignificantBits());
+            writeInstant(out, finishedAt);
+            if (kind == Kind.OPERATION) {
+                writeString(out, idempotencyKey);
+                writeString(out, method);
+                writeString(out, uri);
+                writeString(out, bodyHash);
+                writeString(out, type.name());
+                writeString(out, status.name());
+                out.writeInt(httpStatus);
+                writeInstant(out, receivedAt);
+                writeString(out, requestJson);
+                writeString(out, responseJson);
+                writeInstant(out, startedAt);
+                out.writeInt(attempt);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static JournalRecord decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            Kind kind = Kind.values()[in.readByte()];
+            UUID operationId = new UUID(in.readLong(), in.readLong());
+            Instant finishedAt = readInstant(in);
+            if (kind != Kind.OPERATION) {
+                return new JournalRecord(kind, operationId, null, null, null, null, null, null, 0,
+                        null, null, finishedAt, 0, null, null);
+            }
+            String idempotencyKey = readString(in);
+            String method = readString(in);
+            String uri = readString(in);
+            String bodyHash = readString(in);
+            OperationType type = OperationType.valueOf(readString(in));
+            OperationStatus status = OperationStatus.valueOf(readString(in));
+            int httpStatus = in.readInt();
+            Instant receivedAt = readInstant(in);
+            String requestJson = readString(in);
+            String responseJson = readString(in);
+            // records journalled before attempts were tracked end here
+            boolean hasAttempt = in.available() > 0;
+            Instant startedAt = hasAttempt ? readInstant(in) : null;
+            int attempt = hasAttempt ? in.readInt() : 0;
+            return new JournalRecord(kind, operationId, idempotencyKey, method, uri, bodyHash, type, status,
+                    httpStatus, receivedAt, startedAt, finishedAt, attempt, requestJson, responseJson);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = in.readNBytes(length);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeLong(instant == null ? Long.MIN_VALUE : instant.getEpochSecond());
+        out.writeInt(instant == null ? 0 : instant.getNano());
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return seconds == Long.MIN_VALUE ? null : Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    public Kind getKind() { return kind; }
+
+    public UUID getOperationId() { return operationId; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+
+    public String getMethod() { return method; }
+
+    public String getUri() { return uri; }
+
+    public String getBodyHash() { return bodyHash; }
+
+    public OperationType getType() { return type; }
+
+    public OperationStatus getStatus() { return status; }
+
+    public int getHttpStatus() { return httpStatus; }
+
+    public Instant getReceivedAt() { return receivedAt; }
+
+    public Instant getStartedAt() { return startedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+
+    public int getAttempt() { return attempt; }
+
+    public String getRequestJson() { return requestJson; }
+
+    public String getResponseJson() { return responseJson; }
+}
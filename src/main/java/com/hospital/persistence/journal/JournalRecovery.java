@@ -0,0 +1,118 @@
+package com.hospital.persistence.journal;
+
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import com.hospital.service.RetentionPolicy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Replays the audit journal at startup and rebuilds index rows that are missing from the
+ * operations table (e.g. after the database was restored from an older backup).
+ *
+ * Only records with a COMMITTED marker are rebuilt; an OPERATION record without a marker
+ * whose row is also missing is in doubt (crash between journal append and database commit)
+ * and is only reported. Records older than their retention window are skipped so recovery
+ * does not resurrect rows the sweeper already purged. Rows are rebuilt on the shard of the
+ * patient in the recorded uri.
+ */
+@ApplicationScoped
+public class JournalRecovery {
+
+    private static final Logger LOG = Logger.getLogger(JournalRecovery.class.getName());
+
+    private static final int BATCH_SIZE = 500;
+
+    @Inject
+    AuditJournal journal;
+
+    @Inject
+    JournalIndexRebuilder rebuilder;
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        if (journal.isEnabled()) {
+            recover();
+        }
+    }
+
+    public void recover() {
+        long start = System.nanoTime();
+        RetentionPolicy retention = new RetentionPolicy();
+        Instant now = Instant.now();
+
+        int shards = Shards.count();
+        Map<UUID, Long> completed = new LinkedHashMap<>();
+        Map<UUID, Integer> shardOf = new HashMap<>();
+        Set<UUID> committed = new HashSet<>();
+        journal.forEach((position, record) -> {
+            switch (record.getKind()) {
+                case OPERATION:
+                    Duration window = retention.windowFor(record.getType());
+                    boolean expired = window != null && record.getReceivedAt().isBefore(now.minus(window));
+                    if (record.getStatus() == OperationStatus.COMPLETED && !expired) {
+                        completed.put(record.getOperationId(), position);
+                        shardOf.put(record.getOperationId(), Shards.shardOfUri(record.getUri(), shards));
+                    }
+                    break;
+                case COMMITTED:
+                    committed.add(record.getOperationId());
+                    break;
+                case ABORTED:
+                    completed.remove(record.getOperationId());
+                    break;
+                default:
+                    break;
+            }
+        });
+
+        int rebuilt = 0;
+        int inDoubt = 0;
+        List<Map<UUID, Long>> batches = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            batches.add(new LinkedHashMap<>());
+        }
+        for (Map.Entry<UUID, Long> entry : completed.entrySet()) {
+            if (!committed.contains(entry.getKey())) {
+                inDoubt++;
+                continue;
+            }
+            int shard = shardOf.get(entry.getKey());
+            Map<UUID, Long> batch = batches.get(shard);
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() == BATCH_SIZE) {
+                rebuilt += rebuild(shard, batch);
+                batches.set(shard, new LinkedHashMap<>());
+            }
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            if (!batches.get(shard).isEmpty()) {
+                rebuilt += rebuild(shard, batches.get(shard));
+            }
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        int rebuiltRows = rebuilt;
+        int inDoubtRecords = inDoubt;
+        LOG.info(() -> String.format("Audit journal replayed in %d ms: %d completed records, %d index rows rebuilt,"
+                + " %d in doubt (no commit marker)", millis, completed.size(), rebuiltRows, inDoubtRecords));
+    }
+
+    private int rebuild(int shard, Map<UUID, Long> batch) {
+        return ShardContext.call(shard, () -> rebuilder.rebuild(batch));
+    }
+}
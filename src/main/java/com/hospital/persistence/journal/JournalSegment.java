@@ -0,0 +1,184 @@
+package com.hospital.persistence.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One fixed-size, memory-mapped journal file.
+ *
+ * Layout: a 16 byte header (magic, version, segment id) followed by entries of
+ * [int payload length][int CRC32C of payload][payload]. The file is pre-sized, so the
+ * unwritten tail is zeros and a zero length marks the end of the data.
+ */
+final class JournalSegment {
+
+    static final int MAGIC = 0x48414A31; // "HAJ1"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int ENTRY_HEADER_SIZE = 8;
+
+    private final int id;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+
+    // guarded by the journal lock
+    private int writePosition;
+    // only touched by the flusher thread
+    private int flushedPosition;
+
+    private JournalSegment(int id, Path file, MappedByteBuffer buffer, int writePosition) {
+        this.id = id;
+        this.file = file;
+        this.buffer = buffer;
+        this.writePosition = writePosition;
+        this.flushedPosition = writePosition;
+    }
+
+    static Path fileName(Path dir, int id) {
+        return dir.resolve(String.format("segment-%010d.journal", id));
+    }
+
+    static JournalSegment create(Path dir, int id, int size) {
+        Path file = fileName(dir, id);
+        MappedByteBuffer buffer = map(file, size, true);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, id);
+        buffer.force(0, FILE_HEADER_SIZE);
+        return new JournalSegment(id, file, buffer, FILE_HEADER_SIZE);
+    }
+
+    /**
+     * Maps an existing segment and finds the end of its valid data. A torn or corrupt
+     * entry at the tail (crash mid-append) is treated as the end and later overwritten.
+     */
+    static JournalSegment open(Path file) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = map(file, (int) Files.size(file), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not an audit journal segment: " + file);
+        }
+        int id = (int) buffer.getLong(8);
+        JournalSegment segment = new JournalSegment(id, file, buffer, FILE_HEADER_SIZE);
+        segment.writePosition = segment.scanEnd();
+        segment.flushedPosition = segment.writePosition;
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path file, int size, boolean create) {
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    boolean hasRoom(int payloadLength) {
+        return writePosition + ENTRY_HEADER_SIZE + payloadLength <= buffer.capacity();
+    }
+
+    static int maxPayload(int segmentSize) {
+        return segmentSize - FILE_HEADER_SIZE - ENTRY_HEADER_SIZE;
+    }
+
+    /**
+     * Copies one entry into the mapping. Caller holds the journal lock.
+     *
+     * @return the entry offset inside this segment
+     */
+    int write(byte[] payload) {
+        int offset = writePosition;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        buffer.put(offset + ENTRY_HEADER_SIZE, payload);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        // length last, so a reader never sees a length without its payload
+        buffer.putInt(offset, payload.length);
+        writePosition = offset + ENTRY_HEADER_SIZE + payload.length;
+        return offset;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * fsyncs everything written up to the given position. Called by the flusher only.
+     */
+    void forceTo(int position) {
+        if (position > flushedPosition) {
+            buffer.force(flushedPosition, position - flushedPosition);
+            flushedPosition = position;
+        }
+    }
+
+    JournalRecord read(int offset) {
+        byte[] payload = readPayload(offset);
+        if (payload == null) {
+            throw new IllegalStateException("No valid journal entry at " + file + "@" + offset);
+        }
+        return JournalRecord.decode(payload);
+    }
+
+    interface EntryVisitor {
+        void visit(int offset, JournalRecord record);
+    }
+
+    void forEach(EntryVisitor visitor) {
+        int offset = FILE_HEADER_SIZE;
+        byte[] payload;
+        while (offset < writePosition && (payload = readPayload(offset)) != null) {
+            visitor.visit(offset, JournalRecord.decode(payload));
+            offset += ENTRY_HEADER_SIZE + payload.length;
+        }
+    }
+
+    private int scanEnd() {
+        int offset = FILE_HEADER_SIZE;
+        byte[] payload;
+        while ((payload = readPayload(offset)) != null) {
+            offset += ENTRY_HEADER_SIZE + payload.length;
+        }
+        return offset;
+    }
+
+    private byte[] readPayload(int offset) {
+        if (offset + ENTRY_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + ENTRY_HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + ENTRY_HEADER_SIZE, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,90 @@
+package com.hospital.persistence.migration;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.Priority;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.interceptor.Interceptor;
+import liquibase.Scope;
+import liquibase.command.CommandScope;
+import liquibase.command.core.UpdateCommandStep;
+import liquibase.command.core.helpers.DbUrlConnectionArgumentsCommandStep;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Brings the database schema up to date at startup (Liquibase, db/changelog/db.changelog-master.xml).
+ *
+ * persistence.xml no longer lets Hibernate generate the schema, so the operation log and the
+ * domain tables survive restarts. Only changesets not yet recorded in DATABASECHANGELOG run;
+ * on an up-to-date database this is a lock plus one query.
+ *
+ * Runs before every other startup observer (journal recovery, retention sweeper), which
+ * all expect the schema to be there. Every active shard (see Shards) gets the same schema.
+ *
+ * Settings (system properties):
+ *     hospital.migrations.enabled (default true)
+ */
+@ApplicationScoped
+public class SchemaMigrations {
+
+    private static final Logger LOG = Logger.getLogger(SchemaMigrations.class.getName());
+
+    static final String ENABLED_PROPERTY = "hospital.migrations.enabled";
+    static final String CHANGELOG = "db/changelog/db.changelog-master.xml";
+
+    @Resource(lookup = "java:jboss/datasources/HospitalDS")
+    DataSource dataSource;
+
+    void onStart(@Observes @Priority(Interceptor.Priority.PLATFORM_BEFORE) @Initialized(ApplicationScoped.class) Object init) {
+        if (!HospitalProperties.booleanValue(ENABLED_PROPERTY, true)) {
+            LOG.info("Schema migrations disabled, expecting an up-to-date schema");
+            return;
+        }
+        long start = System.nanoTime();
+        int shards = Shards.count();
+        for (int shard = 0; shard < shards; shard++) {
+            try (Connection connection = dataSource(shard).getConnection()) {
+                migrate(connection);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Schema migration of shard " + shard + " failed", e);
+            }
+        }
+        LOG.info(() -> "Schema up to date on " + shards + " shard(s) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private DataSource dataSource(int shard) {
+        return shard == 0 ? dataSource : Shards.dataSource(shard);
+    }
+
+    /**
+     * Applies all pending changesets over the given connection (left open).
+     */
+    public static void migrate(Connection connection) {
+        ClassLoader classLoader = SchemaMigrations.class.getClassLoader();
+        try {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            Scope.child(Map.of(
+                    Scope.Attr.classLoader.name(), classLoader,
+                    Scope.Attr.resourceAccessor.name(), new ClassLoaderResourceAccessor(classLoader)
+            ), () -> new CommandScope(UpdateCommandStep.COMMAND_NAME)
+                    .addArgumentValue(DbUrlConnectionArgumentsCommandStep.DATABASE_ARG, database)
+                    .addArgumentValue(UpdateCommandStep.CHANGELOG_FILE_ARG, CHANGELOG)
+                    .execute());
+        } catch (Exception e) {
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.hospital.persistence.shard;
+
+import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+
+import javax.sql.DataSource;
+
+/**
+ * Hibernate multi-tenant connection provider where each tenant is a shard ("0", "1", ...).
+ * Configured in persistence.xml; the datasources are the container's JTA datasources, so
+ * connections still enlist in the current transaction.
+ */
+public class ShardConnectionProvider extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected DataSource selectAnyDataSource() {
+        return Shards.dataSource(0);
+    }
+
+    @Override
+    protected DataSource selectDataSource(String tenantIdentifier) {
+        return Shards.dataSource(Integer.parseInt(tenantIdentifier));
+    }
+}
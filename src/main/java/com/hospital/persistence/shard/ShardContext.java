@@ -0,0 +1,49 @@
+package com.hospital.persistence.shard;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread works on; ShardTenantResolver hands it to Hibernate whenever a
+ * new session opens, so every EntityManager used inside call/run talks to that shard's database.
+ *
+ * A transaction-scoped persistence context keeps the connection it started with, so the shard has
+ * to be chosen before the transaction begins: resources route the request, and work handed to
+ * another thread (group commit, async executor) carries the shard it was submitted from.
+ * Threads that were never routed use shard 0.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Runs the work routed to the given shard, then restores the previous routing.
+     */
+    public static <T> T call(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void run(int shard, Runnable work) {
+        call(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,252 @@
+package com.hospital.persistence.shard;
+
+import com.hospital.persistence.migration.SchemaMigrations;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offline tool that moves rows to the shard they belong to after the shard count changes,
+ * e.g. splitting one database into two or four, or merging shards back.
+ *
+ * Works on the H2 files directly, so the server must be stopped (H2 refuses to open a file another
+ * process holds). Every shard that will be used is migrated to the current schema first. Then every
+ * row of patient, medication_order, patient_snapshots and operations is checked against Shards.shardOf
+ * for the new count; rows on the wrong shard are copied with MERGE (target committed first) and only
+ * then deleted from their old shard. An interrupted run leaves at worst a row on both shards, and
+ * simply running the tool again finishes the move. With jump consistent hashing a split only moves
+ * the rows of the patients that land on the new shards.
+ *
+ * An idempotency key reused for different patients can exist on two shards; moving such a row onto
+ * the shard that has the other one fails on the unique index and stops the run.
+ *
+ * Usage: ShardRebalancer --from N --to M [--data ./data] [--batch-size 500] [--dry-run]
+ * (see scripts/shards/rebalance.sh), then start the server with -Dhospital.shards.count=M.
+ */
+public final class ShardRebalancer {
+
+    private static final Table[] TABLES = {
+            new Table("patient", "patient_id", "patient_id"),
+            new Table("medication_order", "order_id", "patient_id"),
+            new Table("patient_snapshots", "snapshot_id", "patient_id"),
+            new Table("operations", "operation_id", "uri")
+    };
+
+    private final String dataDir;
+    private final int batchSize;
+    private final boolean dryRun;
+
+    ShardRebalancer(String dataDir, int batchSize, boolean dryRun) {
+        this.dataDir = dataDir;
+        this.batchSize = batchSize;
+        this.dryRun = dryRun;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int from = -1;
+        int to = -1;
+        String dataDir = "./data";
+        int batchSize = 500;
+        boolean dryRun = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = Integer.parseInt(args[++i]);
+                case "--to" -> to = Integer.parseInt(args[++i]);
+                case "--data" -> dataDir = args[++i];
+                case "--batch-size" -> batchSize = Integer.parseInt(args[++i]);
+                case "--dry-run" -> dryRun = true;
+                default -> usage("Unknown argument " + args[i]);
+            }
+        }
+        if (from < 1 || from > Shards.MAX_SHARDS || to < 1 || to > Shards.MAX_SHARDS) {
+            usage("--from and --to must be between 1 and " + Shards.MAX_SHARDS);
+        }
+        if (batchSize < 1) {
+            usage("--batch-size must be positive");
+        }
+
+        long start = System.nanoTime();
+        Map<String, Long> moved = new ShardRebalancer(dataDir, batchSize, dryRun).rebalance(from, to);
+        System.out.printf("%s rows from %d to %d shard(s) in %d ms: %s%n", dryRun ? "Would move" : "Moved",
+                from, to, (System.nanoTime() - start) / 1_000_000, moved);
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: ShardRebalancer --from N --to M [--data ./data] [--batch-size 500] [--dry-run]");
+        System.exit(2);
+    }
+
+    /**
+     * @return number of rows moved (or that would be moved) per table
+     */
+    Map<String, Long> rebalance(int from, int to) throws SQLException {
+        // a dry run only reads the shards that already hold data; a real run also revisits shards
+        // that an interrupted earlier run may have written to
+        int scanned = dryRun ? from : Math.max(from, to);
+        List<Connection> shards = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < scanned; shard++) {
+                Connection connection = DriverManager.getConnection(url(dataDir, shard), "sa", "sa");
+                shards.add(connection);
+                if (!dryRun) {
+                    SchemaMigrations.migrate(connection);
+                }
+                connection.setAutoCommit(false);
+            }
+
+            Map<String, Long> moved = new LinkedHashMap<>();
+            for (Table table : TABLES) {
+                long rows = 0;
+                for (int shard = 0; shard < scanned; shard++) {
+                    rows += move(table, shard, shards, to);
+                }
+                moved.put(table.name, rows);
+            }
+            return moved;
+        } finally {
+            for (Connection connection : shards) {
+                connection.close();
+            }
+        }
+    }
+
+    static String url(String dataDir, int shard) {
+        return "jdbc:h2:file:" + dataDir + "/hospital" + (shard == 0 ? "" : "-shard" + shard) + ";MODE=MySQL";
+    }
+
+    private long move(Table table, int source, List<Connection> shards, int shardCount) throws SQLException {
+        Connection from = shards.get(source);
+        long moved = 0;
+        Object lastKey = null;
+        while (true) {
+            Rows batch = read(from, table, lastKey);
+            if (batch.values.isEmpty()) {
+                return moved;
+            }
+            Map<Integer, List<Object[]>> byTarget = new TreeMap<>();
+            for (Object[] row : batch.values) {
+                Object route = row[batch.routeColumn];
+                int target = table.routeColumn.equals("uri")
+                        ? Shards.shardOfUri((String) route, shardCount)
+                        : Shards.shardOf((String) route, shardCount);
+                if (target != source) {
+                    byTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(row);
+                }
+            }
+            for (Map.Entry<Integer, List<Object[]>> target : byTarget.entrySet()) {
+                moved += target.getValue().size();
+                if (!dryRun) {
+                    copy(shards.get(target.getKey()), table, batch.columns, target.getValue());
+                    delete(from, table, batch.keyColumn, target.getValue());
+                }
+            }
+            if (batch.values.size() < batchSize) {
+                return moved;
+            }
+            lastKey = batch.values.get(batch.values.size() - 1)[batch.keyColumn];
+        }
+    }
+
+    private Rows read(Connection connection, Table table, Object afterKey) throws SQLException {
+        String sql = "SELECT * FROM " + table.name
+                + (afterKey == null ? "" : " WHERE " + table.key + " > ?")
+                + " ORDER BY " + table.key + " LIMIT " + batchSize;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (afterKey != null) {
+                statement.setObject(1, afterKey);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                Rows rows = new Rows(meta.getColumnCount());
+                for (int i = 0; i < rows.columns.length; i++) {
+                    rows.columns[i] = meta.getColumnName(i + 1).toLowerCase(Locale.ROOT);
+                    if (rows.columns[i].equals(table.key)) {
+                        rows.keyColumn = i;
+                    }
+                    if (rows.columns[i].equals(table.routeColumn)) {
+                        rows.routeColumn = i;
+                    }
+                }
+                while (rs.next()) {
+                    Object[] row = new Object[rows.columns.length];
+                    for (int i = 0; i < row.length; i++) {
+                        // LOBs are bound to the source connection, copy them as strings
+                        row[i] = meta.getColumnType(i + 1) == Types.CLOB ? rs.getString(i + 1) : rs.getObject(i + 1);
+                    }
+                    rows.values.add(row);
+                }
+                return rows;
+            }
+        }
+    }
+
+    private static void copy(Connection target, Table table, String[] columns, List<Object[]> rows)
+            throws SQLException {
+        String sql = "MERGE INTO " + table.name + " (" + String.join(", ", columns) + ") KEY (" + table.key + ")"
+                + " VALUES (" + "?, ".repeat(columns.length - 1) + "?)";
+        try (PreparedStatement statement = target.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            target.commit();
+        } catch (SQLException e) {
+            target.rollback();
+            throw e;
+        }
+    }
+
+    private static void delete(Connection source, Table table, int keyColumn, List<Object[]> rows)
+            throws SQLException {
+        try (PreparedStatement statement = source.prepareStatement(
+                "DELETE FROM " + table.name + " WHERE " + table.key + " = ?")) {
+            for (Object[] row : rows) {
+                statement.setObject(1, row[keyColumn]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            source.commit();
+        } catch (SQLException e) {
+            source.rollback();
+            throw e;
+        }
+    }
+
+    private static final class Table {
+        final String name;
+        final String key;
+        final String routeColumn;
+
+        Table(String name, String key, String routeColumn) {
+            this.name = name;
+            this.key = key;
+            this.routeColumn = routeColumn;
+        }
+    }
+
+    private static final class Rows {
+        final String[] columns;
+        final List<Object[]> values = new ArrayList<>();
+        int keyColumn;
+        int routeColumn;
+
+        Rows(int columnCount) {
+            this.columns = new String[columnCount];
+        }
+    }
+}
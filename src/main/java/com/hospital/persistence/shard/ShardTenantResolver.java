@@ -0,0 +1,30 @@
+package com.hospital.persistence.shard;
+
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+
+/**
+ * Tells Hibernate which shard a new session belongs to: the one in ShardContext.
+ */
+public class ShardTenantResolver implements CurrentTenantIdentifierResolver<String> {
+
+    private static final String[] TENANTS = new String[Shards.MAX_SHARDS];
+
+    static {
+        for (int shard = 0; shard < TENANTS.length; shard++) {
+            TENANTS[shard] = Integer.toString(shard);
+        }
+    }
+
+    @Override
+    public String resolveCurrentTenantIdentifier() {
+        return TENANTS[ShardContext.current()];
+    }
+
+    /**
+     * Sessions are bound to JTA transactions by the container, which routes before they start.
+     */
+    @Override
+    public boolean validateExistingCurrentSessions() {
+        return false;
+    }
+}
@@ -0,0 +1,146 @@
+package com.hospital.persistence.shard;
+
+import com.hospital.config.HospitalProperties;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps patients to shards, one H2 database per shard.
+ *
+ * The operation rows of a patient live on the same shard as its patient and medication order rows,
+ * so every request runs in a transaction local to one database. The shard is a jump consistent hash
+ * (Lamping and Veach) of the 64-bit FNV-1a hash of the patient id: growing from n to n + 1 shards
+ * moves only the patients that land on the new shard, which is what ShardRebalancer copies.
+ *
+ * Shard 0 is java:jboss/datasources/HospitalDS, shard n is java:jboss/datasources/HospitalDS-shard{n};
+ * HospitalDataSourceConfig defines MAX_SHARDS of them. With the default of one shard everything stays
+ * on HospitalDS exactly as before.
+ *
+ * Settings (system properties):
+ *     hospital.shards.count (default 1, at most MAX_SHARDS)
+ */
+public final class Shards {
+
+    public static final String COUNT_PROPERTY = "hospital.shards.count";
+
+    /** Datasources defined in HospitalDataSourceConfig. */
+    public static final int MAX_SHARDS = 4;
+
+    static final String PRIMARY_DATASOURCE = "java:jboss/datasources/HospitalDS";
+
+    private static final String PATIENTS_PREFIX = "/v1/patients/";
+
+    private static final int COUNT = HospitalProperties.intValue(COUNT_PROPERTY, 1);
+
+    private static final DataSource[] DATA_SOURCES = new DataSource[MAX_SHARDS];
+
+    private Shards() {
+    }
+
+    /**
+     * Number of active shards.
+     *
+     * @throws IllegalStateException if hospital.shards.count is not between 1 and MAX_SHARDS
+     */
+    public static int count() {
+        if (COUNT < 1 || COUNT > MAX_SHARDS) {
+            throw new IllegalStateException(COUNT_PROPERTY + " must be between 1 and " + MAX_SHARDS + ", was " + COUNT);
+        }
+        return COUNT;
+    }
+
+    public static int shardOf(String patientId) {
+        return shardOf(patientId, count());
+    }
+
+    /**
+     * Shard of the patient when there are the given number of shards.
+     */
+    public static int shardOf(String patientId, int shards) {
+        if (shards == 1) {
+            return 0;
+        }
+        long key = fnv1a(patientId);
+        long bucket = -1;
+        long next = 0;
+        while (next < shards) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    /**
+     * Shard of a stored operation, from the patient in its uri (/v1/patients/{patientId}/...).
+     * Operations without a patient are kept on shard 0.
+     */
+    public static int shardOfUri(String uri, int shards) {
+        String patientId = patientIdOf(uri);
+        return patientId == null ? 0 : shardOf(patientId, shards);
+    }
+
+    /**
+     * Patient of an operation uri (/v1/patients/{patientId}/...), null for any other uri.
+     */
+    public static String patientIdOf(String uri) {
+        if (uri == null || !uri.startsWith(PATIENTS_PREFIX)) {
+            return null;
+        }
+        int end = uri.indexOf('/', PATIENTS_PREFIX.length());
+        String patientId = uri.substring(PATIENTS_PREFIX.length(), end < 0 ? uri.length() : end);
+        return patientId.isEmpty() ? null : patientId;
+    }
+
+    /**
+     * The patients of the list that live on the shard the current thread is routed to.
+     */
+    public static List<String> onCurrentShard(List<String> patientIds) {
+        int shards = count();
+        if (shards == 1) {
+            return patientIds;
+        }
+        int current = ShardContext.current();
+        List<String> local = new ArrayList<>(patientIds.size());
+        for (String patientId : patientIds) {
+            if (shardOf(patientId, shards) == current) {
+                local.add(patientId);
+            }
+        }
+        return local;
+    }
+
+    public static String jndiName(int shard) {
+        return shard == 0 ? PRIMARY_DATASOURCE : PRIMARY_DATASOURCE + "-shard" + shard;
+    }
+
+    /**
+     * The shard's datasource, looked up once and then cached.
+     */
+    public static DataSource dataSource(int shard) {
+        DataSource dataSource = DATA_SOURCES[shard];
+        if (dataSource == null) {
+            try {
+                dataSource = (DataSource) new InitialContext().lookup(jndiName(shard));
+            } catch (NamingException e) {
+                throw new IllegalStateException("Datasource of shard " + shard + " not found: " + jndiName(shard), e);
+            }
+            DATA_SOURCES[shard] = dataSource;
+        }
+        return dataSource;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
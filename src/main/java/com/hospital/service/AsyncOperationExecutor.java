@@ -0,0 +1,172 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ContextService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs operations accepted in async mode (202 Accepted) off the request thread.
+ *
+ * The number of accepted-but-unfinished operations is bounded: a caller reserves a slot before
+ * the operation row is written, so when the server is saturated the request is refused up front
+ * instead of leaving a RECEIVED row behind that nobody will run.
+ *
+ * On runtimes with virtual threads every task gets its own virtual thread (slow downstream work
+ * then costs no platform thread); tasks are wrapped by the ContextService so they see the same
+ * application context as managed threads. Older runtimes use a fixed pool of managed threads.
+ *
+ * Settings (system properties):
+ *     hospital.async.max-pending      (default 1000)
+ *     hospital.async.virtual-threads  (default true)
+ *     hospital.async.platform-threads (default 16)
+ */
+@ApplicationScoped
+public class AsyncOperationExecutor {
+
+    private static final Logger LOG = Logger.getLogger(AsyncOperationExecutor.class.getName());
+
+    static final String MAX_PENDING_PROPERTY = "hospital.async.max-pending";
+    static final String VIRTUAL_THREADS_PROPERTY = "hospital.async.virtual-threads";
+    static final String PLATFORM_THREADS_PROPERTY = "hospital.async.platform-threads";
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Resource
+    ContextService contextService;
+
+    private final int maxPending;
+    private final Semaphore slots;
+    private ExecutorService executor;
+    private boolean virtualThreads;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public AsyncOperationExecutor() {
+        this(HospitalProperties.intValue(MAX_PENDING_PROPERTY, 1_000));
+    }
+
+    AsyncOperationExecutor(int maxPending) {
+        this.maxPending = maxPending;
+        this.slots = new Semaphore(maxPending);
+    }
+
+    @PostConstruct
+    void start() {
+        if (HospitalProperties.booleanValue(VIRTUAL_THREADS_PROPERTY, true)) {
+            executor = newVirtualThreadExecutor();
+        }
+        if (executor != null) {
+            virtualThreads = true;
+        } else {
+            executor = Executors.newFixedThreadPool(
+                    HospitalProperties.intValue(PLATFORM_THREADS_PROPERTY, 16), threadFactory);
+        }
+        LOG.info("Async operations run on " + (virtualThreads ? "virtual threads" : "managed platform threads")
+                + ", at most " + maxPending + " pending");
+    }
+
+    /**
+     * Only used from tests: runs tasks on the given executor instead of the managed one.
+     */
+    void start(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warning("Async operations still running at shutdown; their rows stay RECEIVED/PROCESSING");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reserves a slot for one operation. Every successful reservation must be followed
+     * by exactly one submit or cancel.
+     *
+     * @return false when max-pending operations are already accepted
+     */
+    public boolean tryReserve() {
+        if (slots.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void cancel() {
+        slots.release();
+    }
+
+    /**
+     * Runs the task on a reserved slot; the slot is released when the task ends.
+     */
+    public void submit(Runnable task) {
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failed.increment();
+                LOG.log(Level.WARNING, "Async operation task failed", e);
+            } finally {
+                slots.release();
+            }
+        };
+        try {
+            executor.execute(virtualThreads && contextService != null
+                    ? contextService.contextualRunnable(guarded)
+                    : guarded);
+            submitted.increment();
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("virtualThreads", virtualThreads);
+        stats.put("maxPending", maxPending);
+        stats.put("pending", maxPending - slots.availablePermits());
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failedTasks", failed.sum());
+        return stats;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() exists from Java 21 on; the project is
+     * compiled for 17, so it is looked up reflectively.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
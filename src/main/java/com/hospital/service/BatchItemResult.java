@@ -0,0 +1,25 @@
+package com.hospital.service;
+
+/**
+ * Outcome of one batch item. The response is kept as the pre-encoded JSON bytes
+ * so the batch response can embed it without parsing or serializing it again.
+ */
+final class BatchItemResult {
+
+    private final String idempotencyKey;
+    private final OperationOutcome outcome;
+    private final int httpStatus;
+    private final byte[] responseBody;
+
+    BatchItemResult(String idempotencyKey, OperationOutcome outcome, int httpStatus, byte[] responseBody) {
+        this.idempotencyKey = idempotencyKey;
+        this.outcome = outcome;
+        this.httpStatus = httpStatus;
+        this.responseBody = responseBody;
+    }
+
+    String getIdempotencyKey() { return idempotencyKey; }
+    OperationOutcome getOutcome() { return outcome; }
+    int getHttpStatus() { return httpStatus; }
+    byte[] getResponseBody() { return responseBody; }
+}
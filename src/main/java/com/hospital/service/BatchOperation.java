@@ -0,0 +1,54 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationType;
+
+import java.util.function.Supplier;
+
+/**
+ * One item of a batch request: the same arguments OperationService.execute takes for a single call,
+ * plus optionally the patient it belongs to. Items of patients on different shards are run in
+ * separate transactions, one per shard; without a patient the item stays on the caller's shard.
+ */
+public final class BatchOperation<T> {
+
+    private final OperationType type;
+    private final String idempotencyKey;
+    private final String method;
+    private final String uri;
+    private final String requestJson;
+    private final Supplier<T> businessLogic;
+    private final String patientId;
+
+    public BatchOperation(OperationType type,
+                          String idempotencyKey,
+                          String method,
+                          String uri,
+                          String requestJson,
+                          Supplier<T> businessLogic) {
+        this(type, idempotencyKey, method, uri, requestJson, businessLogic, null);
+    }
+
+    public BatchOperation(OperationType type,
+                          String idempotencyKey,
+                          String method,
+                          String uri,
+                          String requestJson,
+                          Supplier<T> businessLogic,
+                          String patientId) {
+        this.type = type;
+        this.idempotencyKey = idempotencyKey;
+        this.method = method;
+        this.uri = uri;
+        this.requestJson = requestJson;
+        this.businessLogic = businessLogic;
+        this.patientId = patientId;
+    }
+
+    public OperationType getType() { return type; }
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public String getMethod() { return method; }
+    public String getUri() { return uri; }
+    public String getRequestJson() { return requestJson; }
+    public Supplier<T> getBusinessLogic() { return businessLogic; }
+    public String getPatientId() { return patientId; }
+}
@@ -0,0 +1,82 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Immutable copy of the parts of a COMPLETED OperationEntity needed to answer a retry.
+ * Kept detached from JPA so it can be shared safely between request threads.
+ *
+ * The response is held as pre-encoded UTF-8 JSON, so every replay writes the exact
+ * bytes of the first response without serializing anything again.
+ */
+public final class CompletedOperation {
+
+    private final String idempotencyKey;
+    private final String method;
+    private final String uri;
+    private final String bodyHash;
+    private final int httpStatus;
+    private final byte[] responseBody;
+
+    public CompletedOperation(String idempotencyKey,
+                              String method,
+                              String uri,
+                              String bodyHash,
+                              int httpStatus,
+                              byte[] responseBody) {
+        this.idempotencyKey = idempotencyKey;
+        this.method = method;
+        this.uri = uri;
+        this.bodyHash = bodyHash;
+        this.httpStatus = httpStatus;
+        this.responseBody = responseBody;
+    }
+
+    public static CompletedOperation from(OperationEntity op) {
+        return from(op, op.getResponseJson());
+    }
+
+    /**
+     * For index-only rows whose response JSON is kept outside the operations table.
+     */
+    public static CompletedOperation from(OperationEntity op, String responseJson) {
+        return new CompletedOperation(
+                op.getIdempotencyKey(),
+                op.getMethod(),
+                op.getUri(),
+                op.getBodyHash(),
+                op.getHttpStatus(),
+                responseJson == null
+                        ? new byte[0]
+                        : responseJson.getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Same check OperationService does against the stored row:
+     * a key may only be replayed for the exact same method, URI and body.
+     */
+    public boolean matches(String method, String uri, String bodyHash) {
+        return Objects.equals(this.method, method)
+                && Objects.equals(this.uri, uri)
+                && Objects.equals(this.bodyHash, bodyHash);
+    }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+
+    public String getMethod() { return method; }
+
+    public String getUri() { return uri; }
+
+    public String getBodyHash() { return bodyHash; }
+
+    public int getHttpStatus() { return httpStatus; }
+
+    /**
+     * Shared with every replay, callers must not modify the returned array.
+     */
+    public byte[] getResponseBody() { return responseBody; }
+}
@@ -0,0 +1,62 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.MedicationOrderEntity;
+import com.hospital.persistence.entity.PatientEntity;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Second-level cache statistics for the cached domain entities, read from Hibernate's
+ * statistics (hibernate.generate_statistics in persistence.xml).
+ *
+ * databaseLoads is the number the cache is meant to cut: entities that had to be read from H2.
+ */
+@ApplicationScoped
+public class EntityCacheStats {
+
+    private static final List<Class<?>> CACHED_ENTITIES = List.of(PatientEntity.class, MedicationOrderEntity.class);
+
+    @PersistenceUnit(unitName = "hospitalPU")
+    EntityManagerFactory emf;
+
+    public Map<String, Object> stats() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        Map<String, Object> entities = new LinkedHashMap<>();
+        for (Class<?> entity : CACHED_ENTITIES) {
+            EntityStatistics entityStats = statistics.getEntityStatistics(entity.getName());
+            long hits = entityStats.getCacheHitCount();
+            long misses = entityStats.getCacheMissCount();
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("region", entityStats.getCacheRegionName());
+            body.put("hits", hits);
+            body.put("misses", misses);
+            body.put("puts", entityStats.getCachePutCount());
+            body.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            body.put("databaseLoads", entityStats.getLoadCount());
+            body.put("updates", entityStats.getUpdateCount());
+            body.put("optimisticLockFailures", entityStats.getOptimisticFailureCount());
+            entities.put(entity.getSimpleName(), body);
+        }
+
+        long hits = statistics.getSecondLevelCacheHitCount();
+        long misses = statistics.getSecondLevelCacheMissCount();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", statistics.isStatisticsEnabled());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("puts", statistics.getSecondLevelCachePutCount());
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("entities", entities);
+        return stats;
+    }
+}
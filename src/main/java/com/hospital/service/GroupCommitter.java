@@ -0,0 +1,270 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.shard.ShardContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opt-in group commit for OperationService.
+ *
+ * Operations submitted within a short window (or until the batch is full) are run one after
+ * the other in a single transaction, so shift-change bursts pay for one H2 commit per batch
+ * instead of one per request. Each caller still gets its own response, handed out only after
+ * the batch has committed.
+ *
+ * If an item throws, the batch is rolled back; the failing item is retried alone and the rest
+ * are retried as a new batch, so one bad request never fails its neighbours. If the commit
+ * itself fails every item is retried alone.
+ *
+ * Items lock their patients in arrival order, not in stripe order. PatientLocks never lets such a
+ * transaction wait for a stripe below one it holds; the item fails instead and its alone retry
+ * waits for the patient like any other request, so a batch cannot deadlock with bulk requests.
+ *
+ * Work keeps the shard it was submitted from (ShardContext): a window with items of several
+ * shards commits one transaction per shard.
+ *
+ * Settings (system properties):
+ *     hospital.group-commit.enabled       (default false)
+ *     hospital.group-commit.max-batch     (default 32)
+ *     hospital.group-commit.window-micros (default 2000)
+ */
+@ApplicationScoped
+public class GroupCommitter {
+
+    private static final Logger LOG = Logger.getLogger(GroupCommitter.class.getName());
+
+    static final String ENABLED_PROPERTY = "hospital.group-commit.enabled";
+    static final String MAX_BATCH_PROPERTY = "hospital.group-commit.max-batch";
+    static final String WINDOW_MICROS_PROPERTY = "hospital.group-commit.window-micros";
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Inject
+    TransactionRunner transactions;
+
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long windowNanos;
+
+    private final BlockingQueue<Item<?>> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread worker;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder isolatedRetries = new LongAdder();
+
+    public GroupCommitter() {
+        this(HospitalProperties.booleanValue(ENABLED_PROPERTY, false),
+                HospitalProperties.intValue(MAX_BATCH_PROPERTY, 32),
+                TimeUnit.MICROSECONDS.toNanos(HospitalProperties.longValue(WINDOW_MICROS_PROPERTY, 2_000)));
+    }
+
+    GroupCommitter(boolean enabled, int maxBatch, long windowNanos) {
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.windowNanos = windowNanos;
+    }
+
+    @PostConstruct
+    void start() {
+        start(threadFactory);
+    }
+
+    void start(ThreadFactory factory) {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = factory.newThread(this::batchLoop);
+        worker.setName("operation-group-commit");
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    void setTransactionRunner(TransactionRunner transactions) {
+        this.transactions = transactions;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the work for the next batch and waits until that batch has committed.
+     * Exceptions thrown by the work (in its isolated retry) are rethrown to the caller.
+     */
+    public <T> T submit(Supplier<T> work) {
+        if (!running) {
+            throw new IllegalStateException("Group commit is not running");
+        }
+        Item<T> item = new Item<>(work);
+        queue.add(item);
+        try {
+            return item.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.sum();
+        stats.put("enabled", enabled);
+        stats.put("batches", batchCount);
+        stats.put("items", items.sum());
+        stats.put("avgBatchSize", batchCount == 0 ? 0.0 : (double) items.sum() / batchCount);
+        stats.put("isolatedRetries", isolatedRetries.sum());
+        stats.put("queued", queue.size());
+        return stats;
+    }
+
+    private void batchLoop() {
+        while (running) {
+            try {
+                List<Item<?>> batch = new ArrayList<>(maxBatch);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    Item<?> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                runPerShard(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // never let the worker die, callers would wait forever
+                LOG.log(Level.SEVERE, "Group commit batch failed unexpectedly", e);
+            }
+        }
+        Item<?> left;
+        while ((left = queue.poll()) != null) {
+            left.result.completeExceptionally(new IllegalStateException("Group commit stopped"));
+        }
+    }
+
+    private void runPerShard(List<Item<?>> batch) {
+        int shard = batch.get(0).shard;
+        boolean sameShard = batch.stream().allMatch(item -> item.shard == shard);
+        if (sameShard) {
+            ShardContext.run(shard, () -> runBatch(batch));
+            return;
+        }
+        Map<Integer, List<Item<?>>> groups = new TreeMap<>();
+        for (Item<?> item : batch) {
+            groups.computeIfAbsent(item.shard, s -> new ArrayList<>()).add(item);
+        }
+        groups.forEach((groupShard, group) -> ShardContext.run(groupShard, () -> runBatch(group)));
+    }
+
+    private void runBatch(List<Item<?>> batch) {
+        if (batch.size() == 1) {
+            runAlone(batch.get(0));
+            return;
+        }
+        int[] failedIndex = {-1};
+        List<Object> results;
+        try {
+            results = transactions.required(() -> {
+                List<Object> out = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    failedIndex[0] = i;
+                    out.add(batch.get(i).work.get());
+                }
+                failedIndex[0] = -1;
+                return out;
+            });
+        } catch (RuntimeException e) {
+            isolate(batch, failedIndex[0]);
+            return;
+        }
+
+        batches.increment();
+        items.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private void isolate(List<Item<?>> batch, int failedIndex) {
+        if (failedIndex < 0) {
+            // the commit itself failed, no single culprit
+            for (Item<?> item : batch) {
+                isolatedRetries.increment();
+                runAlone(item);
+            }
+            return;
+        }
+        isolatedRetries.increment();
+        runAlone(batch.get(failedIndex));
+
+        List<Item<?>> rest = new ArrayList<>(batch);
+        rest.remove(failedIndex);
+        if (!rest.isEmpty()) {
+            runBatch(rest);
+        }
+    }
+
+    private void runAlone(Item<?> item) {
+        try {
+            Object result = transactions.required(item.work);
+            batches.increment();
+            items.increment();
+            item.complete(result);
+        } catch (RuntimeException e) {
+            item.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Item<T> {
+        final Supplier<T> work;
+        final int shard;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Item(Supplier<T> work) {
+            this.work = work;
+            this.shard = ShardContext.current();
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value) {
+            result.complete((T) value);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hospital.service;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An operation that is currently being executed for an Idempotency-Key.
+ *
+ * Concurrent duplicates of the same key park on it instead of racing the leader to the
+ * unique constraint. When the leader's transaction ends they receive the committed result,
+ * or null if it rolled back (in which case one of them takes over).
+ */
+final class InFlightOperation {
+
+    private final String method;
+    private final String uri;
+    private final String bodyHash;
+    private final CompletableFuture<CompletedOperation> done = new CompletableFuture<>();
+
+    // written by the leader thread, read when its transaction completes
+    private volatile CompletedOperation result;
+
+    InFlightOperation(String method, String uri, String bodyHash) {
+        this.method = method;
+        this.uri = uri;
+        this.bodyHash = bodyHash;
+    }
+
+    boolean matches(String method, String uri, String bodyHash) {
+        return Objects.equals(this.method, method)
+                && Objects.equals(this.uri, uri)
+                && Objects.equals(this.bodyHash, bodyHash);
+    }
+
+    CompletedOperation getResult() {
+        return result;
+    }
+
+    void setResult(CompletedOperation result) {
+        this.result = result;
+    }
+
+    void finish(CompletedOperation committedResult) {
+        done.complete(committedResult);
+    }
+
+    /**
+     * @return the leader's committed result, or null if the leader rolled back
+     * @throws TimeoutException if the leader did not finish before the deadline
+     */
+    CompletedOperation await(long deadlineNanos) throws TimeoutException, InterruptedException {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            throw new TimeoutException();
+        }
+        try {
+            return done.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // finish() never completes exceptionally
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
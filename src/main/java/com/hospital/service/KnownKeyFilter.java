@@ -0,0 +1,216 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.Priority;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.interceptor.Interceptor;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bloom filter of the idempotency keys in the operations table, so first-time keys (most
+ * requests) skip the findByIdempotencyKey query and go straight to the insert.
+ *
+ * "Definitely new" is only as good as what this node has seen: the keys it inserted itself and
+ * the ones loaded at startup. A key another node inserted since is caught by the unique constraint,
+ * and OperationService then retries with the lookup. Until the startup load has finished, and when
+ * disabled, every key counts as possibly known.
+ *
+ * Keys purged by retention stay in the filter and only cost their lookup. The false positive rate
+ * holds while the table stays below expected-keys; size it for the rows kept by the retention window.
+ *
+ * Settings (system properties):
+ * - hospital.key-filter.enabled: default true
+ * - hospital.key-filter.expected-keys: keys the filter is sized for, default 1000000
+ * - hospital.key-filter.false-positive-rate: target rate at expected-keys, default 0.01
+ */
+@ApplicationScoped
+public class KnownKeyFilter {
+
+    private static final Logger LOG = Logger.getLogger(KnownKeyFilter.class.getName());
+
+    static final String ENABLED_PROPERTY = "hospital.key-filter.enabled";
+    static final String EXPECTED_KEYS_PROPERTY = "hospital.key-filter.expected-keys";
+    static final String FALSE_POSITIVE_RATE_PROPERTY = "hospital.key-filter.false-positive-rate";
+
+    private static final int FETCH_SIZE = 1000;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    private final boolean enabled = HospitalProperties.booleanValue(ENABLED_PROPERTY, true);
+    private final long expectedKeys = HospitalProperties.longValue(EXPECTED_KEYS_PROPERTY, 1_000_000);
+    private final double targetRate = Double.parseDouble(
+            HospitalProperties.stringValue(FALSE_POSITIVE_RATE_PROPERTY, "0.01"));
+    private final BloomFilter filter = enabled ? new BloomFilter(expectedKeys, targetRate) : null;
+
+    private volatile boolean ready;
+
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder skippedLookups = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder missedKeys = new LongAdder();
+    private long loadedKeys;
+    private long loadMillis;
+
+    /**
+     * Loads the existing keys in the background once the other startup observers (migrations,
+     * journal recovery) are done; requests keep using the lookup until it has finished.
+     */
+    void onStart(@Observes @Priority(Interceptor.Priority.LIBRARY_AFTER) @Initialized(ApplicationScoped.class)
+                 Object init) {
+        if (enabled) {
+            scheduler.execute(this::load);
+        }
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            long keys = 0;
+            for (int shard = 0; shard < Shards.count(); shard++) {
+                keys += loadShard(Shards.dataSource(shard));
+            }
+            markLoaded(keys, System.nanoTime() - start);
+            LOG.info(() -> String.format("Idempotency key filter loaded %d keys in %d ms, %d KB",
+                    loadedKeys, loadMillis, filter.memoryBytes() / 1024));
+        } catch (SQLException | RuntimeException e) {
+            // stays not ready: every key is looked up as before
+            LOG.log(Level.WARNING, "Could not load the idempotency key filter, all keys will be looked up", e);
+        }
+    }
+
+    private long loadShard(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if ("H2".equals(connection.getMetaData().getDatabaseProductName())) {
+                // H2 materializes results unless lazy execution is on for the session
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+                }
+            }
+            long keys = 0;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT idempotency_key FROM operations", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        filter.add(rows.getString(1));
+                        keys++;
+                    }
+                }
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Loads the given keys and marks the filter ready; for tests and benchmarks without a datasource.
+     */
+    void loadKeys(Iterable<String> keys) {
+        long start = System.nanoTime();
+        long count = 0;
+        for (String key : keys) {
+            filter.add(key);
+            count++;
+        }
+        markLoaded(count, System.nanoTime() - start);
+    }
+
+    private synchronized void markLoaded(long keys, long nanos) {
+        loadedKeys = keys;
+        loadMillis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        ready = true;
+    }
+
+    /**
+     * False means the key is definitely not in the operations table (as far as this node knows),
+     * so its lookup can be skipped.
+     */
+    public boolean mightContain(String idempotencyKey) {
+        if (!ready) {
+            return true;
+        }
+        if (filter.mightContain(idempotencyKey)) {
+            return true;
+        }
+        skippedLookups.increment();
+        return false;
+    }
+
+    /**
+     * Called with the lookup result of a key mightContain let through; an absent key was a false positive.
+     */
+    public void lookedUp(boolean found) {
+        if (ready) {
+            lookups.increment();
+            if (!found) {
+                falsePositives.increment();
+            }
+        }
+    }
+
+    /**
+     * Called before a new operation row is written. A rollback leaves the key behind, which only costs a lookup.
+     */
+    public void add(String idempotencyKey) {
+        if (enabled) {
+            filter.add(idempotencyKey);
+            insertions.increment();
+        }
+    }
+
+    /**
+     * The insert of a key the filter did not know hit the unique constraint: another node inserted it.
+     */
+    public void missed(String idempotencyKey) {
+        add(idempotencyKey);
+        missedKeys.increment();
+    }
+
+    /**
+     * Numbers for GET /admin/key-filter. observedFalsePositiveRate is the share of new keys that
+     * were looked up anyway; estimatedFalsePositiveRate follows from how full the filter is.
+     */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("ready", ready);
+        if (!enabled) {
+            return map;
+        }
+        long skipped = skippedLookups.sum();
+        long wasted = falsePositives.sum();
+        map.put("expectedKeys", expectedKeys);
+        map.put("targetFalsePositiveRate", targetRate);
+        map.put("bits", filter.bitCount());
+        map.put("hashFunctions", filter.hashFunctions());
+        map.put("memoryBytes", filter.memoryBytes());
+        map.put("loadedKeys", loadedKeys);
+        map.put("loadMillis", loadMillis);
+        map.put("insertions", insertions.sum());
+        map.put("skippedLookups", skipped);
+        map.put("lookups", lookups.sum());
+        map.put("falsePositives", wasted);
+        map.put("observedFalsePositiveRate", skipped + wasted == 0 ? 0.0 : (double) wasted / (skipped + wasted));
+        map.put("estimatedFalsePositiveRate", filter.estimatedFalsePositiveRate());
+        map.put("missedKeys", missedKeys.sum());
+        return map;
+    }
+}
@@ -0,0 +1,68 @@
+package com.hospital.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position in the operations table: the last (created_at, operation_id) seen.
+ *
+ * Used internally by the retention purge and handed to API clients as an opaque
+ * token (encode/decode), so a page is always an index range scan, never an OFFSET.
+ */
+public final class OperationCursor {
+
+    private final Instant createdAt;
+    private final UUID operationId;
+
+    public OperationCursor(Instant createdAt, UUID operationId) {
+        this.createdAt = createdAt;
+        this.operationId = operationId;
+    }
+
+    public Instant getCreatedAt() { return createdAt; }
+
+    public UUID getOperationId() { return operationId; }
+
+    /**
+     * Orders positions the way the database orders (created_at, operation_id), e.g. to merge the
+     * pages of several shards. UUIDs compare as unsigned numbers there, unlike UUID.compareTo.
+     */
+    public static int compare(Instant createdAt, UUID operationId, Instant otherCreatedAt, UUID otherOperationId) {
+        int byTime = createdAt.compareTo(otherCreatedAt);
+        if (byTime != 0) {
+            return byTime;
+        }
+        int byHigh = Long.compareUnsigned(operationId.getMostSignificantBits(), otherOperationId.getMostSignificantBits());
+        if (byHigh != 0) {
+            return byHigh;
+        }
+        return Long.compareUnsigned(operationId.getLeastSignificantBits(), otherOperationId.getLeastSignificantBits());
+    }
+
+    /**
+     * URL-safe token; clients must treat it as opaque.
+     */
+    public String encode() {
+        String raw = createdAt.getEpochSecond() + "." + createdAt.getNano() + "." + operationId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by encode
+     */
+    public static OperationCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            String[] parts = raw.split("\\.", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+            Instant createdAt = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new OperationCursor(createdAt, UUID.fromString(parts[2]));
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
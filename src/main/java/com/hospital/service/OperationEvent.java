@@ -0,0 +1,60 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One completed operation in the change feed (see OperationFeed).
+ *
+ * The SSE payload is encoded once when the event is published, so every subscriber writes the
+ * same string and fan-out costs no serialization per subscriber.
+ */
+public final class OperationEvent {
+
+    private final long sequence;
+    private final UUID operationId;
+    private final OperationType type;
+    private final String patientId;
+    private final Instant completedAt;
+    private final String data;
+
+    OperationEvent(long sequence, UUID operationId, OperationType type, String patientId, Instant completedAt,
+                   String data) {
+        this.sequence = sequence;
+        this.operationId = operationId;
+        this.type = type;
+        this.patientId = patientId;
+        this.completedAt = completedAt;
+        this.data = data;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public UUID getOperationId() {
+        return operationId;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * JSON data of the SSE event: operationId, type, patientId, uri, httpStatus, completedAt and the
+     * stored response.
+     */
+    public String getData() {
+        return data;
+    }
+}
@@ -0,0 +1,303 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.journal.AuditJournal;
+import com.hospital.persistence.journal.JournalRecord;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Streams the operation log as newline-delimited JSON (one operation per line).
+ *
+ * Rows come from a forward-only, read-only JDBC cursor with a fixed fetch size and are written
+ * as they are read, so memory use does not depend on the number of rows. JPA is bypassed on
+ * purpose: a persistence context would keep every exported entity.
+ *
+ * Rows are written in (created_at, operation_id) order and every line carries the cursor of
+ * that row; passing the cursor of the last complete line back continues the export right after it.
+ * With several shards there is one cursor per shard and their rows are merged in that order.
+ *
+ * Settings (system properties):
+ *     hospital.export.fetch-size (default 500)
+ */
+@ApplicationScoped
+public class OperationExporter {
+
+    static final String FETCH_SIZE_PROPERTY = "hospital.export.fetch-size";
+
+    @Resource(lookup = "java:jboss/datasources/HospitalDS")
+    DataSource dataSource;
+
+    @Inject
+    AuditJournal journal;
+
+    private final int fetchSize = HospitalProperties.intValue(FETCH_SIZE_PROPERTY, 500);
+
+    /**
+     * Writes all operations matching the filter, strictly after the cursor (null = from the start).
+     * The stream is flushed but not closed.
+     *
+     * @return the number of rows written
+     */
+    public long export(OperationFilter filter, OperationCursor after, OutputStream out) throws IOException {
+        List<Object> params = new ArrayList<>();
+        String sql = buildQuery(filter, after, params);
+
+        List<ShardRows> shards = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < Shards.count(); shard++) {
+                shards.add(ShardRows.open(dataSource(shard), sql, params, fetchSize));
+            }
+            return writeRows(shards, out);
+        } catch (SQLException e) {
+            throw new IOException("Operation export failed", e);
+        } finally {
+            for (ShardRows rows : shards) {
+                rows.close();
+            }
+        }
+    }
+
+    private DataSource dataSource(int shard) {
+        return shard == 0 ? dataSource : Shards.dataSource(shard);
+    }
+
+    private long writeRows(List<ShardRows> shards, OutputStream out) throws SQLException, IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        StringBuilder line = new StringBuilder(1024);
+        PriorityQueue<ShardRows> next = new PriorityQueue<>(Math.max(1, shards.size()), (a, b) ->
+                OperationCursor.compare(a.createdAt, a.operationId, b.createdAt, b.operationId));
+        for (ShardRows rows : shards) {
+            if (rows.next()) {
+                next.add(rows);
+            }
+        }
+        long count = 0;
+        ShardRows rows;
+        while ((rows = next.poll()) != null) {
+            line.setLength(0);
+            appendRow(line, rows.rows);
+            writer.append(line);
+            count++;
+            if (rows.next()) {
+                next.add(rows);
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private void appendRow(StringBuilder line, ResultSet rows) throws SQLException {
+        UUID operationId = rows.getObject("operation_id", UUID.class);
+        Instant createdAt = instant(rows, "created_at");
+        String requestJson = rows.getString("request_json");
+        String responseJson = rows.getString("response_json");
+        long journalPosition = rows.getLong("journal_position");
+        if (!rows.wasNull() && requestJson == null && responseJson == null) {
+            // index-only row, the payloads live in the audit journal
+            JournalRecord record = journal.read(journalPosition);
+            requestJson = record.getRequestJson();
+            responseJson = record.getResponseJson();
+        }
+
+        line.append("{\"operationId\":\"").append(operationId).append('"');
+        appendField(line, "idempotencyKey", rows.getString("idempotency_key"));
+        appendField(line, "type", rows.getString("type"));
+        appendField(line, "status", rows.getString("status"));
+        appendField(line, "method", rows.getString("method"));
+        appendField(line, "uri", rows.getString("uri"));
+        appendField(line, "bodyHash", rows.getString("body_hash"));
+        line.append(",\"httpStatus\":").append(rows.getInt("http_status"));
+        appendField(line, "createdAt", createdAt.toString());
+        appendField(line, "updatedAt", instant(rows, "updated_at").toString());
+        appendRawJson(line, "request", requestJson);
+        appendRawJson(line, "response", responseJson);
+        appendField(line, "cursor", new OperationCursor(createdAt, operationId).encode());
+        line.append("}\n");
+    }
+
+    private static String buildQuery(OperationFilter filter, OperationCursor after, List<Object> params) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT operation_id, idempotency_key, type, status, method, uri, body_hash, http_status,"
+                        + " created_at, updated_at, request_json, response_json, journal_position"
+                        + " FROM operations WHERE 1 = 1");
+        if (filter.getType() != null) {
+            sql.append(" AND type = ?");
+            params.add(filter.getType().name());
+        }
+        if (filter.getStatus() != null) {
+            sql.append(" AND status = ?");
+            params.add(filter.getStatus().name());
+        }
+        if (filter.getFrom() != null) {
+            sql.append(" AND created_at >= ?");
+            params.add(utc(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            sql.append(" AND created_at < ?");
+            params.add(utc(filter.getTo()));
+        }
+        if (after != null) {
+            // same keyset condition as the search API, served by the same indexes
+            sql.append(" AND created_at >= ? AND (created_at > ? OR operation_id > ?)");
+            params.add(utc(after.getCreatedAt()));
+            params.add(utc(after.getCreatedAt()));
+            params.add(after.getOperationId());
+        }
+        sql.append(" ORDER BY created_at, operation_id");
+        return sql.toString();
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    private static Instant instant(ResultSet rows, String column) throws SQLException {
+        return rows.getObject(column, OffsetDateTime.class).toInstant();
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Open export cursor on one shard, positioned on its current row once next() returned true.
+     */
+    private static final class ShardRows {
+
+        private final Connection connection;
+        private final boolean autoCommit;
+        private final boolean h2;
+        private PreparedStatement statement;
+        private ResultSet rows;
+        private Instant createdAt;
+        private UUID operationId;
+
+        private ShardRows(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.autoCommit = connection.getAutoCommit();
+            this.h2 = "H2".equals(connection.getMetaData().getDatabaseProductName());
+        }
+
+        static ShardRows open(DataSource dataSource, String sql, List<Object> params, int fetchSize)
+                throws SQLException {
+            ShardRows shard = new ShardRows(dataSource.getConnection());
+            try {
+                // some drivers (e.g. PostgreSQL) only stream with a fetch size inside a transaction
+                shard.connection.setAutoCommit(false);
+                if (shard.h2) {
+                    // H2 materializes results unless lazy execution is on for the session
+                    execute(shard.connection, "SET LAZY_QUERY_EXECUTION TRUE");
+                }
+                shard.statement = shard.connection.prepareStatement(
+                        sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                shard.statement.setFetchSize(fetchSize);
+                for (int i = 0; i < params.size(); i++) {
+                    shard.statement.setObject(i + 1, params.get(i));
+                }
+                shard.rows = shard.statement.executeQuery();
+                return shard;
+            } catch (SQLException | RuntimeException e) {
+                shard.close();
+                throw e;
+            }
+        }
+
+        boolean next() throws SQLException {
+            if (!rows.next()) {
+                return false;
+            }
+            createdAt = instant(rows, "created_at");
+            operationId = rows.getObject("operation_id", UUID.class);
+            return true;
+        }
+
+        void close() {
+            try (connection) {
+                try {
+                    if (rows != null) {
+                        rows.close();
+                    }
+                    if (statement != null) {
+                        statement.close();
+                    }
+                } finally {
+                    if (h2) {
+                        execute(connection, "SET LAZY_QUERY_EXECUTION FALSE");
+                    }
+                    connection.rollback();
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                // the export itself is done or already failed, nothing left to report to the client
+            }
+        }
+    }
+
+    private static void appendField(StringBuilder line, String name, String value) {
+        line.append(",\"").append(name).append("\":");
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Stored request/response JSON is embedded as-is. A raw line break can only be
+     * whitespace between JSON tokens, so replacing it keeps one record per line.
+     */
+    private static void appendRawJson(StringBuilder line, String name, String json) {
+        line.append(",\"").append(name).append("\":");
+        if (json == null || json.isEmpty()) {
+            line.append("null");
+            return;
+        }
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            line.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.shard.Shards;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.json.spi.JsonProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory change feed of the operations completed on this node, served as Server-Sent Events
+ * by GET /operations/stream (see OperationStream).
+ *
+ * Events get consecutive sequence numbers and go into a ring of slots allocated once at startup;
+ * the newest event overwrites the oldest. Publishing never waits for subscribers: each one reads
+ * the ring from its own position, and a subscriber that falls more than the ring size behind
+ * skips to the oldest event still held instead of the feed buffering for it. So memory is bounded
+ * by the ring whatever the number or speed of subscribers.
+ *
+ * Events are published once their transaction has committed. Only operations completed on this
+ * node are in the feed, and it starts empty on every restart: event ids carry a stream id that
+ * changes with each start, so a client resuming from an id of an earlier run can tell it missed
+ * events and resynchronize from GET /operations.
+ *
+ * Settings (system properties):
+ *     hospital.feed.capacity (default 8192, rounded up to a power of two, 0 disables the feed)
+ */
+@ApplicationScoped
+public class OperationFeed {
+
+    static final String CAPACITY_PROPERTY = "hospital.feed.capacity";
+
+    // Json.createValue looks the provider up again on every call
+    private static final JsonProvider JSON = JsonProvider.provider();
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<OperationEvent> ring;
+    private final String streamId = Long.toString(System.currentTimeMillis(), 36);
+
+    // sequence of the newest event, written after its slot (0 before the first event)
+    private volatile long latest;
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public OperationFeed() {
+        this(HospitalProperties.intValue(CAPACITY_PROPERTY, 8192));
+    }
+
+    OperationFeed(int capacity) {
+        this.capacity = capacity <= 0 ? 0 : Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.ring = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Appends a committed operation and wakes the subscribers.
+     */
+    public void publish(UUID operationId, OperationType type, String uri, int httpStatus, byte[] responseBody) {
+        if (!isEnabled()) {
+            return;
+        }
+        Instant completedAt = Instant.now();
+        String patientId = Shards.patientIdOf(uri);
+        String data = "{\"operationId\":" + quoted(operationId == null ? null : operationId.toString())
+                + ",\"type\":" + quoted(type == null ? null : type.name())
+                + ",\"patientId\":" + quoted(patientId)
+                + ",\"uri\":" + quoted(uri)
+                + ",\"httpStatus\":" + httpStatus
+                + ",\"completedAt\":" + quoted(completedAt.toString())
+                + ",\"response\":" + (responseBody == null || responseBody.length == 0
+                ? "null" : new String(responseBody, StandardCharsets.UTF_8))
+                + "}";
+        synchronized (this) {
+            long sequence = latest + 1;
+            ring.set((int) (sequence & mask), new OperationEvent(sequence, operationId, type, patientId, completedAt, data));
+            latest = sequence;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Copies up to max events following the one numbered after into out, oldest first.
+     *
+     * @return number of events after it that were already overwritten; the copied events follow
+     *         right after those
+     */
+    public long read(long after, int max, List<OperationEvent> out) {
+        long newest = latest;
+        long next = after + 1;
+        long skipped = 0;
+        long oldest = oldest(newest);
+        if (next < oldest) {
+            skipped = oldest - next;
+            next = oldest;
+        }
+        for (; next <= newest && out.size() < max; next++) {
+            OperationEvent event = ring.get((int) (next & mask));
+            if (event == null || event.getSequence() != next) {
+                break; // overwritten while reading, the next read reports the gap
+            }
+            out.add(event);
+        }
+        return skipped;
+    }
+
+    public long latest() {
+        return latest;
+    }
+
+    /**
+     * Id of the SSE event with the given sequence: stream id and sequence.
+     */
+    public String eventId(long sequence) {
+        return streamId + "-" + sequence;
+    }
+
+    /**
+     * Sequence of an event id handed out by this feed since it started, -1 for any other id.
+     */
+    public long sequenceOf(String eventId) {
+        if (eventId == null || !eventId.startsWith(streamId + "-")) {
+            return -1;
+        }
+        try {
+            long sequence = Long.parseLong(eventId.substring(streamId.length() + 1));
+            return sequence >= 0 && sequence <= latest ? sequence : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The listener runs on the publishing thread after every event, so it must only hand off.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public Map<String, Object> stats() {
+        long newest = latest;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("capacity", capacity);
+        stats.put("streamId", streamId);
+        stats.put("published", newest);
+        stats.put("oldestHeld", newest == 0 ? 0 : oldest(newest));
+        return stats;
+    }
+
+    private long oldest(long newest) {
+        return Math.max(1, newest - capacity + 1);
+    }
+
+    private static String quoted(String value) {
+        return value == null ? "null" : JSON.createValue(value).toString();
+    }
+}
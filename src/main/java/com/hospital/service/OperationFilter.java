@@ -0,0 +1,50 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+
+import java.time.Instant;
+
+/**
+ * Filters shared by the operation search and export; every field is optional (null = any).
+ * The created_at range is [from, to).
+ */
+public final class OperationFilter {
+
+    private final OperationType type;
+    private final OperationStatus status;
+    private final Instant from;
+    private final Instant to;
+
+    public OperationFilter(OperationType type, OperationStatus status, Instant from, Instant to) {
+        this.type = type;
+        this.status = status;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parses the query parameters of the read API.
+     *
+     * @throws IllegalArgumentException for an unknown type/status or a malformed instant
+     */
+    public static OperationFilter parse(String type, String status, String from, String to) {
+        try {
+            return new OperationFilter(
+                    type == null ? null : OperationType.valueOf(type),
+                    status == null ? null : OperationStatus.valueOf(status),
+                    from == null ? null : Instant.parse(from),
+                    to == null ? null : Instant.parse(to));
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    public OperationType getType() { return type; }
+
+    public OperationStatus getStatus() { return status; }
+
+    public Instant getFrom() { return from; }
+
+    public Instant getTo() { return to; }
+}
@@ -0,0 +1,137 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background reaper for pending operations whose lease has expired because the node working on
+ * them died or hung, and for pending operations nobody retried (see OperationLeases.reapExpired).
+ *
+ * Every node runs one; the row locks taken per batch keep them from reclaiming the same operation
+ * twice. Runs on the managed scheduler, shard after shard, one short transaction per batch.
+ *
+ * Settings (system properties):
+ * - hospital.leases.reap-interval-seconds: pause between runs, default 30, 0 disables the reaper
+ * - hospital.leases.reap-batch-size: operations per transaction, default 100
+ */
+@ApplicationScoped
+public class OperationLeaseReaper {
+
+    private static final Logger LOG = Logger.getLogger(OperationLeaseReaper.class.getName());
+
+    static final String INTERVAL_SECONDS_PROPERTY = "hospital.leases.reap-interval-seconds";
+    static final String BATCH_SIZE_PROPERTY = "hospital.leases.reap-batch-size";
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    OperationLeases leases;
+
+    private final long intervalSeconds = HospitalProperties.longValue(INTERVAL_SECONDS_PROPERTY, 30);
+    private final int batchSize = HospitalProperties.intValue(BATCH_SIZE_PROPERTY, 100);
+
+    private final Stats stats = new Stats();
+    private ScheduledFuture<?> task;
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        if (intervalSeconds <= 0) {
+            LOG.info("Operation lease reaper disabled");
+            return;
+        }
+        task = scheduler.scheduleWithFixedDelay(this::reap, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * One pass over all shards. Public so it can be triggered manually.
+     */
+    public void reap() {
+        long runStart = System.nanoTime();
+        try {
+            int released = 0;
+            int failed = 0;
+            for (int shard = 0; shard < Shards.count(); shard++) {
+                while (true) {
+                    OperationLeases.Reaped batch = ShardContext.call(shard, () -> leases.reapExpired(batchSize));
+                    released += batch.getReleased();
+                    failed += batch.getFailed();
+                    if (batch.getScanned() < batchSize) {
+                        break;
+                    }
+                }
+            }
+            stats.runFinished(released, failed, System.nanoTime() - runStart);
+            if (released + failed > 0) {
+                int total = released + failed;
+                int failedTotal = failed;
+                LOG.info(() -> String.format("Reclaimed %d operations with expired leases (%d failed for good)",
+                        total, failedTotal));
+            }
+        } catch (RuntimeException e) {
+            // keep the schedule alive, the next run tries again
+            LOG.log(Level.WARNING, "Lease reaper run failed", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = stats.toMap();
+        map.put("nodeId", leases.getNodeId());
+        map.put("leaseSeconds", leases.getDuration().toSeconds());
+        map.put("maxAttempts", leases.getMaxAttempts());
+        map.put("abandonedHours", leases.getAbandonedAfter().toHours());
+        map.put("claimFirst", leases.isClaimFirst());
+        return map;
+    }
+
+    /**
+     * Counters for GET /admin/leases.
+     */
+    static final class Stats {
+        private long runs;
+        private long totalReleased;
+        private long totalFailed;
+        private Instant lastRunAt;
+        private long lastRunNanos;
+
+        synchronized void runFinished(int released, int failed, long nanos) {
+            runs++;
+            totalReleased += released;
+            totalFailed += failed;
+            lastRunAt = Instant.now();
+            lastRunNanos = nanos;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("runs", runs);
+            map.put("totalReleased", totalReleased);
+            map.put("totalFailed", totalFailed);
+            map.put("lastRunAt", lastRunAt == null ? null : lastRunAt.toString());
+            map.put("lastRunMillis", lastRunNanos / 1_000_000.0);
+            return map;
+        }
+    }
+}
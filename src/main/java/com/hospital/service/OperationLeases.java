@@ -0,0 +1,250 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.core.Response;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Leases on pending operations, so several nodes can share one database.
+ *
+ * Whoever works on a RECEIVED/PROCESSING row holds its lease: lease_owner is the node id and
+ * lease_expires_at the time after which anyone may take the operation over. Every claim increments
+ * attempts, which doubles as fencing token: a node only finishes an operation while the row still
+ * carries its owner and attempt. A pending row without a live lease was abandoned (its attempt
+ * failed, or its node died) and the next request with the same key takes it over. Once an operation
+ * has used max-attempts, a failed attempt or an expired lease fails it for good (FAILED, 500), and
+ * a row nobody retried for abandoned-hours is failed by the reaper, so no row stays pending forever.
+ *
+ * Leases compare wall clocks of different nodes, so their clocks must agree to well within the
+ * lease duration.
+ *
+ * Settings (system properties):
+ * - hospital.node-id: owner written into leases, default host name and process id
+ * - hospital.leases.duration-seconds: lease length, default 60
+ * - hospital.leases.max-attempts: attempts (failed or with an expired lease) before the operation fails, default 3
+ * - hospital.leases.abandoned-hours: unleased pending rows not retried for this long fail, default 24, 0 never
+ * - hospital.leases.claim-first: commit the claim before the business logic runs, default false
+ */
+@ApplicationScoped
+public class OperationLeases {
+
+    static final String NODE_ID_PROPERTY = "hospital.node-id";
+    static final String DURATION_SECONDS_PROPERTY = "hospital.leases.duration-seconds";
+    static final String MAX_ATTEMPTS_PROPERTY = "hospital.leases.max-attempts";
+    static final String CLAIM_FIRST_PROPERTY = "hospital.leases.claim-first";
+    static final String ABANDONED_HOURS_PROPERTY = "hospital.leases.abandoned-hours";
+
+    static final String FAILED_BODY = "{\"error\":\"Internal error processing operation\"}";
+
+    private static final int MAX_ERROR_LENGTH = 512;
+
+    @PersistenceContext(unitName = "hospitalPU")
+    EntityManager em;
+
+    private final String nodeId = HospitalProperties.stringValue(NODE_ID_PROPERTY, defaultNodeId());
+    private final Duration duration = Duration.ofSeconds(HospitalProperties.longValue(DURATION_SECONDS_PROPERTY, 60));
+    private final int maxAttempts = HospitalProperties.intValue(MAX_ATTEMPTS_PROPERTY, 3);
+    private final boolean claimFirst = HospitalProperties.booleanValue(CLAIM_FIRST_PROPERTY, false);
+    private final Duration abandonedAfter = Duration.ofHours(HospitalProperties.longValue(ABANDONED_HOURS_PROPERTY, 24));
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getAbandonedAfter() {
+        return abandonedAfter;
+    }
+
+    /**
+     * In claim-first mode execute commits the claimed row before running the business logic, so other
+     * nodes see the lease at once and answer "in progress" instead of queueing on the unique index
+     * until the first transaction ends. Costs one extra commit per operation.
+     */
+    public boolean isClaimFirst() {
+        return claimFirst;
+    }
+
+    /**
+     * Takes the lease for this node and starts a new attempt.
+     */
+    void acquire(OperationEntity op) {
+        op.setLeaseOwner(nodeId);
+        op.setLeaseExpiresAt(Instant.now().plus(duration));
+        op.setAttempts(op.getAttempts() + 1);
+    }
+
+    /**
+     * Extends a lease this node already holds, without starting a new attempt.
+     */
+    void renew(OperationEntity op) {
+        op.setLeaseExpiresAt(Instant.now().plus(duration));
+    }
+
+    /**
+     * Ends an attempt that did not complete: releases the lease and puts the row back to RECEIVED for
+     * the next retry of its key, or fails it (500) once it has used max-attempts.
+     *
+     * @return true if the operation failed for good
+     */
+    boolean endAttempt(OperationEntity op, String error) {
+        op.setLastError(error);
+        if (op.getAttempts() >= maxAttempts) {
+            fail(op);
+            return true;
+        }
+        release(op);
+        op.setStatus(OperationStatus.RECEIVED);
+        return false;
+    }
+
+    private static void fail(OperationEntity op) {
+        release(op);
+        op.setStatus(OperationStatus.FAILED);
+        op.setHttpStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        op.setResponseJson(FAILED_BODY);
+    }
+
+    static void release(OperationEntity op) {
+        op.setLeaseOwner(null);
+        op.setLeaseExpiresAt(null);
+    }
+
+    /**
+     * True while some node (this one included) holds an unexpired lease on the row.
+     */
+    static boolean isLeased(OperationEntity op) {
+        return op.getLeaseOwner() != null
+                && op.getLeaseExpiresAt() != null
+                && op.getLeaseExpiresAt().isAfter(Instant.now());
+    }
+
+    /**
+     * True if the row still carries the lease this node took for the given attempt.
+     */
+    boolean isOwnAttempt(OperationEntity op, int attempt) {
+        return nodeId.equals(op.getLeaseOwner()) && op.getAttempts() == attempt;
+    }
+
+    boolean isOwnedHere(OperationEntity op) {
+        return nodeId.equals(op.getLeaseOwner());
+    }
+
+    static String describe(Throwable error) {
+        String description = error.getClass().getName()
+                + (error.getMessage() == null ? "" : ": " + error.getMessage());
+        return description.length() <= MAX_ERROR_LENGTH ? description : description.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * Reclaims up to batchSize pending operations whose lease has expired: their node died or hung.
+     * Operations with attempts left are released for the next retry of their key, the others fail
+     * with a 500 like a failed async operation. Pending rows without a lease that nobody retried for
+     * abandoned-hours fail as well. The rows are locked, so two reapers (or a reaper and a late owner)
+     * never both change the same row.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Reaped reapExpired(int batchSize) {
+        Instant now = Instant.now();
+        List<OperationEntity> expired = new ArrayList<>(em.createQuery(
+                        "SELECT o FROM OperationEntity o WHERE o.status IN :pending AND o.leaseExpiresAt < :now"
+                                + " ORDER BY o.leaseExpiresAt", OperationEntity.class)
+                .setParameter("pending", List.of(OperationStatus.RECEIVED, OperationStatus.PROCESSING))
+                .setParameter("now", now)
+                .setMaxResults(batchSize)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList());
+        Instant abandonedBefore = abandonedAfter.isZero() ? null : now.minus(abandonedAfter);
+        if (abandonedBefore != null && expired.size() < batchSize) {
+            expired.addAll(em.createQuery(
+                            "SELECT o FROM OperationEntity o WHERE o.status IN :pending AND o.leaseExpiresAt IS NULL"
+                                    + " AND o.updatedAt < :before ORDER BY o.updatedAt", OperationEntity.class)
+                    .setParameter("pending", List.of(OperationStatus.RECEIVED, OperationStatus.PROCESSING))
+                    .setParameter("before", abandonedBefore)
+                    .setMaxResults(batchSize - expired.size())
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getResultList());
+        }
+
+        Reaped reaped = new Reaped(expired.size());
+        for (OperationEntity op : expired) {
+            // another transaction may have finished, renewed or retried the row before we locked it
+            if (op.getStatus() != OperationStatus.RECEIVED && op.getStatus() != OperationStatus.PROCESSING) {
+                continue;
+            }
+            if (op.getLeaseExpiresAt() == null) {
+                if (abandonedBefore == null || op.getUpdatedAt() == null || !op.getUpdatedAt().isBefore(abandonedBefore)) {
+                    continue;
+                }
+                fail(op); // keeps the error of its last attempt
+                reaped.failed++;
+                continue;
+            }
+            if (!op.getLeaseExpiresAt().isBefore(now)) {
+                continue;
+            }
+            if (endAttempt(op, "Lease of " + op.getLeaseOwner() + " expired during attempt " + op.getAttempts())) {
+                reaped.failed++;
+            } else {
+                reaped.released++;
+            }
+        }
+        return reaped;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = Objects.requireNonNullElse(System.getenv("HOSTNAME"), "localhost");
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * Outcome of one reaper batch.
+     */
+    public static final class Reaped {
+        private final int scanned;
+        private int released;
+        private int failed;
+
+        Reaped(int scanned) {
+            this.scanned = scanned;
+        }
+
+        public int getScanned() {
+            return scanned;
+        }
+
+        public int getReleased() {
+            return released;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+    }
+}
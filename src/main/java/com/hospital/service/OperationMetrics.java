@@ -0,0 +1,301 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.ws.rs.core.Response;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-phase timings of OperationService.execute, rendered in the Prometheus text format.
+ *
+ * Every execution carries a Sample that notes how long each phase took; when the outcome is known
+ * the durations are added to fixed-bucket histograms indexed by (phase, type, outcome). Recording
+ * is a few System.nanoTime calls and LongAdder increments, with no locks or map lookups.
+ *
+ * Phases (only those an execution went through are recorded):
+ *     lookup     finding an earlier operation with the same key in the database
+ *     persist    inserting the RECEIVED row (persist + flush)
+ *     business   the business logic supplier
+ *     serialize  JSON serialization of the result
+ *     journal    appending to the audit journal (journal mode only)
+ *     commit     from the end of the transaction work until the transaction has completed
+ *
+ * Gauges: operations currently executing on this node, and the operations table size (a COUNT
+ * query per shard, re-run at most every table-size-refresh-seconds).
+ *
+ * Settings (system properties):
+ *     hospital.metrics.table-size-refresh-seconds (default 30)
+ */
+@ApplicationScoped
+public class OperationMetrics {
+
+    static final String TABLE_SIZE_REFRESH_PROPERTY = "hospital.metrics.table-size-refresh-seconds";
+
+    public enum Phase {
+        LOOKUP, PERSIST, BUSINESS, SERIALIZE, JOURNAL, COMMIT
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final OperationType[] TYPES = OperationType.values();
+    private static final OperationOutcome[] OUTCOMES = OperationOutcome.values();
+
+    /** Upper bounds in seconds; the last bucket is +Inf. */
+    private static final double[] BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * 1e9);
+        }
+    }
+
+    @PersistenceContext(unitName = "hospitalPU")
+    EntityManager em;
+
+    // [phase][type][outcome] and [type][outcome]
+    private final Timer[][][] phaseTimers = new Timer[PHASES.length][TYPES.length][OUTCOMES.length];
+    private final Timer[][] operationTimers = new Timer[TYPES.length][OUTCOMES.length];
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final long tableSizeRefreshNanos = TimeUnit.SECONDS.toNanos(
+            HospitalProperties.longValue(TABLE_SIZE_REFRESH_PROPERTY, 30));
+    private volatile long tableSize = -1;
+    private volatile long tableSizeReadAt;
+
+    public OperationMetrics() {
+        for (int t = 0; t < TYPES.length; t++) {
+            for (int o = 0; o < OUTCOMES.length; o++) {
+                operationTimers[t][o] = new Timer();
+                for (int p = 0; p < PHASES.length; p++) {
+                    phaseTimers[p][t][o] = new Timer();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts timing one execution; the clock for the first phase starts now as well.
+     */
+    public Sample start(OperationType type) {
+        return new Sample(type);
+    }
+
+    /**
+     * One execution. Not thread-safe: it belongs to the request thread (and the group
+     * commit thread that runs its transaction work, which happens-before the request resumes).
+     */
+    public final class Sample {
+
+        private final OperationType type;
+        private final long startNanos;
+        private final long[] phaseNanos = new long[PHASES.length];
+        private long markNanos;
+        private long workDoneNanos;
+        private boolean executing;
+        private OperationOutcome outcome = OperationOutcome.FAILED;
+        private boolean finished;
+
+        private Sample(OperationType type) {
+            this.type = type;
+            this.startNanos = System.nanoTime();
+            this.markNanos = startNanos;
+        }
+
+        /**
+         * Restarts the phase clock, e.g. before the first phase inside the transaction.
+         */
+        public void reset() {
+            markNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends the given phase; the next phase starts now.
+         */
+        public void mark(Phase phase) {
+            long now = System.nanoTime();
+            phaseNanos[phase.ordinal()] += now - markNanos;
+            markNanos = now;
+        }
+
+        /**
+         * The transaction work is done, what follows until committed() is the commit.
+         */
+        public void workDone() {
+            workDoneNanos = System.nanoTime();
+        }
+
+        public void committed() {
+            if (workDoneNanos != 0) {
+                phaseNanos[Phase.COMMIT.ordinal()] += System.nanoTime() - workDoneNanos;
+            }
+        }
+
+        /**
+         * This execution runs the operation (rather than answering from an earlier one);
+         * counted in the in-flight gauge until finish.
+         */
+        public void executing() {
+            if (!executing) {
+                executing = true;
+                inFlight.increment();
+            }
+        }
+
+        public void setOutcome(OperationOutcome outcome) {
+            this.outcome = outcome;
+        }
+
+        public Response finish(OperationOutcome outcome, Response response) {
+            setOutcome(outcome);
+            finish();
+            return response;
+        }
+
+        /**
+         * Records the execution under its outcome (FAILED unless set otherwise). Only the first call counts.
+         */
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (executing) {
+                inFlight.decrement();
+            }
+            int t = type.ordinal();
+            int o = outcome.ordinal();
+            operationTimers[t][o].record(System.nanoTime() - startNanos);
+            for (int p = 0; p < PHASES.length; p++) {
+                if (phaseNanos[p] != 0) {
+                    phaseTimers[p][t][o].record(phaseNanos[p]);
+                }
+            }
+        }
+    }
+
+    public long inFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Rows in the operations table of all shards, at most table-size-refresh-seconds old; -1 if it cannot be read.
+     */
+    public long operationTableSize() {
+        long now = System.nanoTime();
+        if (tableSize < 0 || now - tableSizeReadAt > tableSizeRefreshNanos) {
+            try {
+                long rows = 0;
+                for (int shard = 0; shard < Shards.count(); shard++) {
+                    rows += ShardContext.call(shard, () ->
+                            em.createQuery("SELECT COUNT(o) FROM OperationEntity o", Long.class).getSingleResult());
+                }
+                tableSize = rows;
+                tableSizeReadAt = now;
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+        return tableSize;
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format (version 0.0.4).
+     * Series that never saw a value are left out.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        header(out, "hospital_operation_duration_seconds", "histogram",
+                "End-to-end time of OperationService.execute by operation type and outcome.");
+        for (int t = 0; t < TYPES.length; t++) {
+            for (int o = 0; o < OUTCOMES.length; o++) {
+                operationTimers[t][o].write(out, "hospital_operation_duration_seconds",
+                        "type=\"" + TYPES[t] + "\",outcome=\"" + label(OUTCOMES[o]) + "\"");
+            }
+        }
+
+        header(out, "hospital_operation_phase_seconds", "histogram",
+                "Time spent in each phase of OperationService.execute.");
+        for (int p = 0; p < PHASES.length; p++) {
+            for (int t = 0; t < TYPES.length; t++) {
+                for (int o = 0; o < OUTCOMES.length; o++) {
+                    phaseTimers[p][t][o].write(out, "hospital_operation_phase_seconds",
+                            "phase=\"" + label(PHASES[p]) + "\",type=\"" + TYPES[t]
+                                    + "\",outcome=\"" + label(OUTCOMES[o]) + "\"");
+                }
+            }
+        }
+
+        header(out, "hospital_operations_in_flight", "gauge",
+                "Operations currently being executed on this node.");
+        out.append("hospital_operations_in_flight ").append(inFlight()).append('\n');
+
+        header(out, "hospital_operation_table_rows", "gauge",
+                "Rows in the operations table (refreshed at most every "
+                        + TimeUnit.NANOSECONDS.toSeconds(tableSizeRefreshNanos) + "s).");
+        out.append("hospital_operation_table_rows ").append(operationTableSize()).append('\n');
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String label(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Fixed-bucket histogram; bucket counts are kept per bucket and made cumulative when written.
+     */
+    private static final class Timer {
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            int i = 0;
+            while (i < BUCKET_NANOS.length && nanos > BUCKET_NANOS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumNanos.add(nanos);
+            count.increment();
+        }
+
+        void write(StringBuilder out, String name, String labels) {
+            long total = count.sum();
+            if (total == 0) {
+                return;
+            }
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(sumNanos.sum() / 1e9).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(total).append('\n');
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.hospital.service;
+
+/**
+ * How an idempotent request was answered.
+ */
+public enum OperationOutcome {
+    /** The business logic ran for this request. */
+    EXECUTED,
+    /** The stored response of an earlier request with the same key was returned. */
+    REPLAYED,
+    /** The key was already used for a different method, URI or body. */
+    CONFLICT,
+    /** The business logic failed and nothing was committed. */
+    FAILED
+}
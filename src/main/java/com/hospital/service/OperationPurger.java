@@ -0,0 +1,92 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deletes expired operations, one small batch per transaction.
+ *
+ * Batches walk the (type, created_at, operation_id) index with a keyset cursor,
+ * so each batch is a short index range scan and row locks are held only briefly.
+ */
+@ApplicationScoped
+public class OperationPurger {
+
+    @PersistenceContext(unitName = "hospitalPU")
+    EntityManager em;
+
+    /**
+     * Deletes up to batchSize finished (COMPLETED or FAILED) operations of the given type created
+     * before the cutoff, strictly after the cursor position (null cursor = start of the range).
+     * RECEIVED and PROCESSING rows are never deleted, leased or not: a row whose last attempt failed
+     * is still the audit record of that attempt, and the next retry of its key takes it over.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Batch purgeBatch(OperationType type, Instant cutoff, OperationCursor after, int batchSize) {
+        StringBuilder jpql = new StringBuilder(
+                "SELECT o.operationId, o.idempotencyKey, o.createdAt FROM OperationEntity o"
+                        + " WHERE o.type = :type AND o.createdAt < :cutoff AND o.status IN :finished");
+        if (after != null) {
+            jpql.append(" AND (o.createdAt > :afterCreated"
+                    + " OR (o.createdAt = :afterCreated AND o.operationId > :afterId))");
+        }
+        jpql.append(" ORDER BY o.createdAt, o.operationId");
+
+        TypedQuery<Object[]> query = em.createQuery(jpql.toString(), Object[].class)
+                .setParameter("type", type)
+                .setParameter("cutoff", cutoff)
+                .setParameter("finished", List.of(OperationStatus.COMPLETED, OperationStatus.FAILED))
+                .setMaxResults(batchSize);
+        if (after != null) {
+            query.setParameter("afterCreated", after.getCreatedAt())
+                    .setParameter("afterId", after.getOperationId());
+        }
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty()) {
+            return new Batch(List.of(), null);
+        }
+
+        List<UUID> ids = new ArrayList<>(rows.size());
+        List<String> keys = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add((UUID) row[0]);
+            keys.add((String) row[1]);
+        }
+
+        em.createQuery("DELETE FROM OperationEntity o WHERE o.operationId IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+
+        Object[] last = rows.get(rows.size() - 1);
+        return new Batch(keys, new OperationCursor((Instant) last[2], (UUID) last[0]));
+    }
+
+    @Transactional
+    public long countOperations() {
+        return em.createQuery("SELECT COUNT(o) FROM OperationEntity o", Long.class).getSingleResult();
+    }
+
+    public static final class Batch {
+        private final List<String> purgedKeys;
+        private final OperationCursor next;
+
+        Batch(List<String> purgedKeys, OperationCursor next) {
+            this.purgedKeys = purgedKeys;
+            this.next = next;
+        }
+
+        public List<String> getPurgedKeys() { return purgedKeys; }
+
+        public OperationCursor getNext() { return next; }
+    }
+}
@@ -0,0 +1,198 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background sweeper that enforces the RetentionPolicy on the operations table. Deleting is
+ * opt-in: without a configured window the sweeper is never scheduled.
+ *
+ * Runs on the managed scheduler, never on a request thread. Each batch is its own short
+ * transaction (see OperationPurger) with a pause in between, so a large backlog is worked
+ * off gradually instead of in one long delete. Shards are swept one after the other.
+ */
+@ApplicationScoped
+public class OperationRetentionSweeper {
+
+    private static final Logger LOG = Logger.getLogger(OperationRetentionSweeper.class.getName());
+
+    static final String INTERVAL_SECONDS_PROPERTY = "hospital.retention.sweep-interval-seconds";
+    static final String BATCH_SIZE_PROPERTY = "hospital.retention.batch-size";
+    static final String BATCH_PAUSE_MILLIS_PROPERTY = "hospital.retention.batch-pause-millis";
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    OperationPurger purger;
+
+    @Inject
+    ReplayCache replayCache;
+
+    private final RetentionPolicy policy = new RetentionPolicy();
+    private final long intervalSeconds = HospitalProperties.longValue(INTERVAL_SECONDS_PROPERTY, 300);
+    private final int batchSize = HospitalProperties.intValue(BATCH_SIZE_PROPERTY, 500);
+    private final long batchPauseMillis = HospitalProperties.longValue(BATCH_PAUSE_MILLIS_PROPERTY, 50);
+
+    private final Stats stats = new Stats();
+    private ScheduledFuture<?> task;
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        if (intervalSeconds <= 0) {
+            LOG.info("Operation retention sweeper disabled");
+            return;
+        }
+        if (policy.keepsEverything()) {
+            LOG.info("No operation retention window configured, operations are kept forever");
+            return;
+        }
+        task = scheduler.scheduleWithFixedDelay(this::sweep, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * One pass over all operation types. Public so it can be triggered manually.
+     */
+    public void sweep() {
+        long runStart = System.nanoTime();
+        Map<OperationType, Long> purged = new EnumMap<>(OperationType.class);
+        try {
+            for (OperationType type : OperationType.values()) {
+                Duration window = policy.windowFor(type);
+                if (window != null) {
+                    purged.put(type, sweepType(type, Instant.now().minus(window)));
+                }
+            }
+            long tableSize = countOperations();
+            stats.runFinished(purged, System.nanoTime() - runStart, tableSize);
+
+            long total = purged.values().stream().mapToLong(Long::longValue).sum();
+            if (total > 0) {
+                LOG.info(() -> String.format("Retention sweep purged %d operations %s in %d ms, %d rows remain",
+                        total, purged, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart), tableSize));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // keep the schedule alive, the next run picks up where this one stopped
+            LOG.log(Level.WARNING, "Retention sweep failed", e);
+        }
+    }
+
+    private long countOperations() {
+        long rows = 0;
+        for (int shard = 0; shard < Shards.count(); shard++) {
+            rows += ShardContext.call(shard, purger::countOperations);
+        }
+        return rows;
+    }
+
+    private long sweepType(OperationType type, Instant cutoff) throws InterruptedException {
+        long purged = 0;
+        for (int shard = 0; shard < Shards.count(); shard++) {
+            purged += sweepShard(shard, type, cutoff);
+        }
+        return purged;
+    }
+
+    private long sweepShard(int shard, OperationType type, Instant cutoff) throws InterruptedException {
+        long purged = 0;
+        OperationCursor cursor = null;
+        while (true) {
+            long batchStart = System.nanoTime();
+            OperationCursor after = cursor;
+            OperationPurger.Batch batch = ShardContext.call(shard,
+                    () -> purger.purgeBatch(type, cutoff, after, batchSize));
+            int count = batch.getPurgedKeys().size();
+            if (count == 0) {
+                return purged;
+            }
+            batch.getPurgedKeys().forEach(key -> replayCache.invalidateOnShard(shard, key));
+            stats.batchFinished(count, System.nanoTime() - batchStart);
+            purged += count;
+
+            if (count < batchSize) {
+                return purged;
+            }
+            cursor = batch.getNext();
+            Thread.sleep(batchPauseMillis);
+        }
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /**
+     * Counters for GET /admin/retention.
+     */
+    public static final class Stats {
+        private long totalPurged;
+        private long batches;
+        private long lastBatchNanos;
+        private long maxBatchNanos;
+        private long totalBatchNanos;
+        private Instant lastRunAt;
+        private long lastRunNanos;
+        private Map<OperationType, Long> lastRunPurged = Map.of();
+        private long tableSize = -1;
+
+        synchronized void batchFinished(int rows, long nanos) {
+            totalPurged += rows;
+            batches++;
+            lastBatchNanos = nanos;
+            maxBatchNanos = Math.max(maxBatchNanos, nanos);
+            totalBatchNanos += nanos;
+        }
+
+        synchronized void runFinished(Map<OperationType, Long> purged, long nanos, long tableSize) {
+            this.lastRunAt = Instant.now();
+            this.lastRunNanos = nanos;
+            this.lastRunPurged = Map.copyOf(purged);
+            this.tableSize = tableSize;
+        }
+
+        public synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("totalPurged", totalPurged);
+            map.put("batches", batches);
+            map.put("lastBatchMillis", nanosToMillis(lastBatchNanos));
+            map.put("maxBatchMillis", nanosToMillis(maxBatchNanos));
+            map.put("avgBatchMillis", batches == 0 ? 0.0 : nanosToMillis(totalBatchNanos / batches));
+            map.put("lastRunAt", lastRunAt == null ? null : lastRunAt.toString());
+            map.put("lastRunMillis", nanosToMillis(lastRunNanos));
+            map.put("lastRunPurged", lastRunPurged);
+            map.put("tableSize", tableSize);
+            return map;
+        }
+
+        private static double nanosToMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
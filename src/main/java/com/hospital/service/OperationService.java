@@ -1,32 +1,111 @@
 package com.hospital.service;
 
+import com.hospital.config.HospitalProperties;
 import com.hospital.persistence.entity.OperationEntity;
 import com.hospital.persistence.entity.OperationStatus;
 import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.journal.AuditJournal;
+import com.hospital.persistence.journal.JournalRecord;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.Resource;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.json.bind.Jsonb;
 import jakarta.json.bind.JsonbBuilder;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
-import jakarta.transaction.Transactional;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @ApplicationScoped
 public class OperationService {
 
+    static final String SINGLE_FLIGHT_WAIT_MILLIS_PROPERTY = "hospital.single-flight.wait-millis";
+    static final String BATCH_MAX_ITEMS_PROPERTY = "hospital.batch.max-items";
+    static final String INSERT_FIRST_PROPERTY = "hospital.idempotency.insert-first";
+
+    private static final Logger LOG = Logger.getLogger(OperationService.class.getName());
+
+    private static final byte[] CONFLICT_BODY =
+            "{\"error\":\"Idempotency key reused with different request\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FAILED_BODY =
+            "{\"error\":\"Internal error processing operation\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IN_PROGRESS_BODY =
+            "{\"error\":\"Operation with this Idempotency-Key is still in progress\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_BODY = "null".getBytes(StandardCharsets.UTF_8);
+
     @PersistenceContext(unitName = "hospitalPU")
     private EntityManager em;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    @Inject
+    ReplayCache replayCache;
+
+    @Inject
+    AuditJournal journal;
+
+    @Inject
+    TransactionRunner transactions;
+
+    @Inject
+    GroupCommitter groupCommitter;
+
+    @Inject
+    AsyncOperationExecutor asyncExecutor;
+
+    @Inject
+    OperationMetrics metrics;
+
+    @Inject
+    OperationLeases leases;
+
+    @Inject
+    KnownKeyFilter knownKeys;
+
+    @Inject
+    OperationFeed feed;
+
+    // Idempotency keys currently being executed on this node (single-flight)
+    private final ConcurrentMap<String, InFlightOperation> inFlight = new ConcurrentHashMap<>();
+
+    private final long singleFlightWaitNanos = TimeUnit.MILLISECONDS.toNanos(
+            HospitalProperties.longValue(SINGLE_FLIGHT_WAIT_MILLIS_PROPERTY, 10_000));
+
+    private final int maxBatchItems = HospitalProperties.intValue(BATCH_MAX_ITEMS_PROPERTY, 500);
+
+    // claim keys with one MERGE instead of lookup + insert, see OperationUpserts
+    private boolean insertFirst = HospitalProperties.booleanValue(INSERT_FIRST_PROPERTY, false);
+
     private final Jsonb jsonb = JsonbBuilder.create();
 
     // --- only used from tests ---
@@ -34,7 +113,56 @@ public class OperationService {
         this.em = em;
     }
 
-    @Transactional
+    void setReplayCache(ReplayCache replayCache) {
+        this.replayCache = replayCache;
+    }
+
+    void setAuditJournal(AuditJournal journal) {
+        this.journal = journal;
+    }
+
+    void setTransactionRunner(TransactionRunner transactions) {
+        this.transactions = transactions;
+    }
+
+    void setGroupCommitter(GroupCommitter groupCommitter) {
+        this.groupCommitter = groupCommitter;
+    }
+
+    void setAsyncExecutor(AsyncOperationExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    void setMetrics(OperationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setLeases(OperationLeases leases) {
+        this.leases = leases;
+    }
+
+    void setKnownKeys(KnownKeyFilter knownKeys) {
+        this.knownKeys = knownKeys;
+    }
+
+    void setOperationFeed(OperationFeed feed) {
+        this.feed = feed;
+    }
+
+    void setInsertFirst(boolean insertFirst) {
+        this.insertFirst = insertFirst;
+    }
+
+    /**
+     * Runs the business logic at most once per Idempotency-Key and stores its response.
+     *
+     * Demarcates its own transaction (see inTransaction), so callers must not already be in one:
+     * waiters and the replay cache are released only once the outcome is committed.
+     *
+     * The operation row carries this node's lease while it runs (see OperationLeases). If the attempt
+     * fails, its transaction rolls back and the failure is recorded in a new one, leaving the row
+     * RECEIVED without a lease so the next retry of the key, on any node, takes it over.
+     */
     public <T> Response execute(
             OperationType type,
             String idempotencyKey,
@@ -43,31 +171,877 @@ public class OperationService {
             String requestJson,
             Supplier<T> businessLogic
     ) {
-        String bodyHash = hashBody(requestJson == null ? "" : requestJson);
+        return execute(type, idempotencyKey, method, uri, requestJson, hashOf(requestJson), businessLogic);
+    }
 
-        // Check if operation already exists
-        OperationEntity existing = findByIdempotencyKey(idempotencyKey);
+    /**
+     * Same as execute, for callers that hashed the request body while reading it (see IdempotencyFilter).
+     *
+     * @param requestBodyHash SHA-256 of the request body, as returned by RequestBodyHasher
+     */
+    public <T> Response execute(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            byte[] requestBodyHash,
+            Supplier<T> businessLogic
+    ) {
+        OperationMetrics.Sample sample = metrics.start(type);
+        String bodyHash = HexFormat.of().formatHex(requestBodyHash);
 
-        if (existing != null) {
-            // Check for semantic mismatch
-            if (!Objects.equals(existing.getMethod(), method)
-                    || !Objects.equals(existing.getUri(), uri)
-                    || !Objects.equals(existing.getBodyHash(), bodyHash)) {
+        // Retries of recently completed operations are answered from memory
+        CompletedOperation cached = replayCache.get(idempotencyKey, uri);
+        if (cached != null) {
+            return sample.finish(outcomeOf(cached, method, uri, bodyHash), replay(cached, method, uri, bodyHash));
+        }
+
+        // Only one request per key (and shard) runs at a time; concurrent duplicates wait for it
+        String flightKey = replayCache.scopedKey(idempotencyKey, uri);
+        InFlightOperation flight = new InFlightOperation(method, uri, bodyHash);
+        long deadline = System.nanoTime() + singleFlightWaitNanos;
+        InFlightOperation leader;
+        while ((leader = inFlight.putIfAbsent(flightKey, flight)) != null) {
+            if (!leader.matches(method, uri, bodyHash)) {
+                return sample.finish(OperationOutcome.CONFLICT, conflict());
+            }
+            try {
+                CompletedOperation result = leader.await(deadline);
+                if (result != null) {
+                    return sample.finish(outcomeOf(result, method, uri, bodyHash), replay(result, method, uri, bodyHash));
+                }
+                // leader rolled back, try to take over
+            } catch (TimeoutException e) {
+                return sample.finish(OperationOutcome.CONFLICT, stillInProgress());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return sample.finish(OperationOutcome.CONFLICT, stillInProgress());
+            }
+        }
 
-                return Response.status(Response.Status.CONFLICT)
-                        .entity("{\"error\":\"Idempotency key reused with different request\"}")
-                        .type(MediaType.APPLICATION_JSON)
-                        .build();
+        boolean committed = false;
+        sample.executing();
+        try {
+            Response response;
+            try {
+                response = lead(type, idempotencyKey, method, uri, requestJson, bodyHash, businessLogic, flight, sample);
+            } catch (UnknownKeyCollision e) {
+                // the key filter did not know a key another node inserted, it does now; or (insert-first)
+                // another transaction held the new key past the lock timeout and may have committed since
+                try {
+                    response = lead(type, idempotencyKey, method, uri, requestJson, bodyHash, businessLogic, flight,
+                            sample);
+                } catch (UnknownKeyCollision again) {
+                    // insert-first only: that transaction still holds the key
+                    sample.setOutcome(OperationOutcome.CONFLICT);
+                    response = stillInProgress();
+                }
             }
+            sample.committed();
+            committed = true;
+            return response;
+        } catch (RuntimeException e) {
+            recordFailure(type, idempotencyKey, method, uri, requestJson, bodyHash, e);
+            throw e;
+        } finally {
+            if (!committed) {
+                sample.setOutcome(OperationOutcome.FAILED);
+            }
+            // Release waiters only once the outcome is durable (or rolled back)
+            inFlight.remove(flightKey, flight);
+            CompletedOperation result = committed ? flight.getResult() : null;
+            if (result != null) {
+                replayCache.put(result);
+            } else {
+                replayCache.invalidate(idempotencyKey, uri);
+            }
+            flight.finish(result);
+            sample.finish();
+        }
+    }
 
-            // Return stored response
-            return Response.status(existing.getHttpStatus())
-                    .entity(existing.getResponseJson())
+    private <T> Response lead(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash,
+            Supplier<T> businessLogic,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        if (leases.isClaimFirst()) {
+            return executeClaimFirst(
+                    type, idempotencyKey, method, uri, requestJson, bodyHash, businessLogic, flight, sample);
+        }
+        return inTransaction(() -> {
+            Response answer = executeAsLeader(
+                    type, idempotencyKey, method, uri, requestJson, bodyHash, businessLogic, flight, sample);
+            sample.workDone();
+            return answer;
+        });
+    }
+
+    /**
+     * Answers a retry from the replay cache alone, without a database round trip: the stored response,
+     * or 409 if the key was used for a different request. Null when the key is not cached, and the
+     * request has to go through execute.
+     */
+    public Response replayFromCache(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            byte[] requestBodyHash
+    ) {
+        CompletedOperation cached = replayCache.get(idempotencyKey, uri);
+        if (cached == null) {
+            return null;
+        }
+        String bodyHash = HexFormat.of().formatHex(requestBodyHash);
+        return metrics.start(type).finish(outcomeOf(cached, method, uri, bodyHash), replay(cached, method, uri, bodyHash));
+    }
+
+    /**
+     * True when a Prefer request header asks for respond-async (RFC 7240).
+     */
+    public static boolean prefersAsync(String preferHeader) {
+        if (preferHeader == null) {
+            return false;
+        }
+        for (String preference : preferHeader.split(",")) {
+            String token = preference.split(";", 2)[0].trim();
+            if (token.equalsIgnoreCase("respond-async")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Async variant of execute (Prefer: respond-async).
+     *
+     * The RECEIVED operation row is committed and the caller gets 202 Accepted with
+     * Location: operations/{operationId} right away; the business logic runs later on the
+     * AsyncOperationExecutor, which moves the row to PROCESSING and then COMPLETED or FAILED.
+     * Unlike the synchronous path a failure is committed (status FAILED, 500 body), because
+     * the client learns about it by polling.
+     *
+     * The business logic runs after the request has ended, so it must not use request-scoped state.
+     * Retries of a key that is still running get 202 for the same operation; finished keys are
+     * replayed as usual. A pending operation whose lease has run out (its node died) is taken over and
+     * runs again here. When too many operations are pending the request is refused with 503.
+     */
+    public <T> Response executeAsync(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            Supplier<T> businessLogic
+    ) {
+        return executeAsync(type, idempotencyKey, method, uri, requestJson, hashOf(requestJson), businessLogic);
+    }
+
+    /**
+     * Same as executeAsync, for callers that hashed the request body while reading it.
+     */
+    public <T> Response executeAsync(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            byte[] requestBodyHash,
+            Supplier<T> businessLogic
+    ) {
+        String bodyHash = HexFormat.of().formatHex(requestBodyHash);
+
+        CompletedOperation cached = replayCache.get(idempotencyKey, uri);
+        if (cached != null) {
+            return replay(cached, method, uri, bodyHash);
+        }
+        if (!asyncExecutor.tryReserve()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", 1)
+                    .entity("{\"error\":\"Too many pending asynchronous operations\"}")
                     .type(MediaType.APPLICATION_JSON)
                     .build();
         }
 
+        boolean submitted = false;
+        try {
+            Acceptance acceptance;
+            try {
+                acceptance = transactions.required(
+                        () -> acceptAsync(type, idempotencyKey, method, uri, requestJson, bodyHash));
+            } catch (RuntimeException e) {
+                // most likely a concurrent request inserted the same key first
+                acceptance = transactions.required(() -> {
+                    OperationEntity existing = findByIdempotencyKey(idempotencyKey);
+                    if (existing == null) {
+                        throw e;
+                    }
+                    return Acceptance.existing(answerExisting(existing, method, uri, bodyHash));
+                });
+            }
+            if (acceptance.operationId == null) {
+                return acceptance.answer;
+            }
+
+            UUID operationId = acceptance.operationId;
+            int attempt = acceptance.attempt;
+            int shard = ShardContext.current();
+            asyncExecutor.submit(() -> ShardContext.run(shard, () -> runAccepted(operationId, attempt, businessLogic)));
+            submitted = true;
+            return acceptance.answer;
+        } finally {
+            if (!submitted) {
+                asyncExecutor.cancel();
+            }
+        }
+    }
+
+    private Acceptance acceptAsync(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash
+    ) {
+        // an insert of a key the filter did not know but another node did fails below, like any
+        // concurrent insert, and is answered by executeAsync
+        OperationEntity existing = knownKeys.mightContain(idempotencyKey) ? lookup(idempotencyKey) : null;
+        if (existing != null && isAbandoned(existing) && sameRequest(existing, method, uri, bodyHash)) {
+            // re-read under a row lock so only one request takes it over
+            em.refresh(existing, LockModeType.PESSIMISTIC_WRITE);
+            if (isAbandoned(existing)) {
+                leases.acquire(existing);
+                existing.setStatus(OperationStatus.RECEIVED);
+                return Acceptance.created(existing.getOperationId(), existing.getAttempts(), accepted(existing));
+            }
+        }
+        if (existing != null) {
+            return Acceptance.existing(answerExisting(existing, method, uri, bodyHash));
+        }
+
+        OperationEntity op = new OperationEntity();
+        op.setIdempotencyKey(idempotencyKey);
+        op.setMethod(method);
+        op.setUri(uri);
+        op.setBodyHash(bodyHash);
+        op.setType(type);
+        op.setStatus(OperationStatus.RECEIVED);
+        op.setRequestJson(requestJson);
+        leases.acquire(op);
+        knownKeys.add(idempotencyKey);
+        em.persist(op);
+        em.flush();
+        return Acceptance.created(op.getOperationId(), op.getAttempts(), accepted(op));
+    }
+
+    private Response answerExisting(OperationEntity existing, String method, String uri, String bodyHash) {
+        if (isPending(existing)) {
+            return sameRequest(existing, method, uri, bodyHash) ? accepted(existing) : conflict();
+        }
+        return replay(toCompleted(existing), method, uri, bodyHash);
+    }
+
+    /**
+     * Runs on the async executor: RECEIVED -> PROCESSING is committed first so pollers can see
+     * the work has started, then the business logic and its outcome commit together.
+     *
+     * The lease taken at accept time is renewed at the start, since the task may have waited in the
+     * queue. If it ran out meanwhile and the reaper released the row, the lease is taken again; if
+     * another node took the operation over, this task does nothing.
+     */
+    private <T> void runAccepted(UUID operationId, int acceptedAttempt, Supplier<T> businessLogic) {
+        Instant startedAt = Instant.now();
+        int attempt = transactions.required(() -> {
+            OperationEntity op = em.find(OperationEntity.class, operationId, LockModeType.PESSIMISTIC_WRITE);
+            if (op == null || op.getStatus() != OperationStatus.RECEIVED) {
+                return -1;
+            }
+            if (leases.isOwnAttempt(op, acceptedAttempt)) {
+                leases.renew(op);
+            } else if (op.getLeaseOwner() == null) {
+                leases.acquire(op);
+            } else {
+                return -1;
+            }
+            op.setStatus(OperationStatus.PROCESSING);
+            return op.getAttempts();
+        });
+        if (attempt < 0) {
+            return;
+        }
+
+        try {
+            CompletedOperation completed = transactions.required(() -> {
+                OperationEntity op = em.find(OperationEntity.class, operationId, LockModeType.PESSIMISTIC_WRITE);
+                if (op == null || !leases.isOwnAttempt(op, attempt)) {
+                    LOG.fine(() -> "Async operation " + operationId + " was taken over, not running attempt " + attempt);
+                    return null;
+                }
+                byte[] responseBody = toJsonBytes(businessLogic.get());
+                int httpStatus = Response.Status.OK.getStatusCode();
+                op.setResponseJson(new String(responseBody, StandardCharsets.UTF_8));
+                op.setHttpStatus(httpStatus);
+                OperationLeases.release(op);
+                op.setStatus(OperationStatus.COMPLETED);
+                publishOnCommit(op, responseBody);
+                CompletedOperation result = new CompletedOperation(op.getIdempotencyKey(), op.getMethod(),
+                        op.getUri(), op.getBodyHash(), httpStatus, responseBody);
+                if (journal.isEnabled()) {
+                    journalCompleted(op, startedAt);
+                }
+                return result;
+            });
+            if (completed != null) {
+                replayCache.put(completed);
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Async operation " + operationId + " failed", e);
+            transactions.requiresNew(() -> {
+                OperationEntity op = em.find(OperationEntity.class, operationId, LockModeType.PESSIMISTIC_WRITE);
+                if (op != null && leases.isOwnAttempt(op, attempt)) {
+                    OperationLeases.release(op);
+                    op.setLastError(OperationLeases.describe(e));
+                    op.setStatus(OperationStatus.FAILED);
+                    op.setHttpStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+                    op.setResponseJson(new String(FAILED_BODY, StandardCharsets.UTF_8));
+                    if (journal.isEnabled()) {
+                        // the row keeps its full record, the journal gets the failed attempt as well
+                        journal.appendAsync(JournalRecord.operation(op, startedAt, Instant.now()));
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 202 with a relative Location, which JAX-RS resolves against the application base URI.
+     */
+    private static Response accepted(OperationEntity op) {
+        String body = "{\"operationId\":\"" + op.getOperationId()
+                + "\",\"status\":\"" + op.getStatus().name() + "\"}";
+        return Response.accepted(body)
+                .location(URI.create("operations/" + op.getOperationId()))
+                .header("Preference-Applied", "respond-async")
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private static boolean sameRequest(OperationEntity op, String method, String uri, String bodyHash) {
+        return Objects.equals(op.getMethod(), method)
+                && Objects.equals(op.getUri(), uri)
+                && Objects.equals(op.getBodyHash(), bodyHash);
+    }
+
+    private static boolean isPending(OperationEntity op) {
+        return op.getStatus() == OperationStatus.RECEIVED || op.getStatus() == OperationStatus.PROCESSING;
+    }
+
+    /**
+     * Pending, but nobody works on it: its last attempt failed, or the node running it died.
+     */
+    private static boolean isAbandoned(OperationEntity op) {
+        return isPending(op) && !OperationLeases.isLeased(op);
+    }
+
+    /**
+     * Result of accepting an async request: either a new operation to run, or the answer for an existing key.
+     */
+    private static final class Acceptance {
+        final UUID operationId;
+        final int attempt;
+        final Response answer;
+
+        private Acceptance(UUID operationId, int attempt, Response answer) {
+            this.operationId = operationId;
+            this.attempt = attempt;
+            this.answer = answer;
+        }
+
+        static Acceptance created(UUID operationId, int attempt, Response answer) {
+            return new Acceptance(operationId, attempt, answer);
+        }
+
+        static Acceptance existing(Response answer) {
+            return new Acceptance(null, 0, answer);
+        }
+    }
+
+    /**
+     * Largest batch executeBatch is meant for; resources reject bigger requests up front.
+     */
+    public int getMaxBatchItems() {
+        return maxBatchItems;
+    }
+
+    /**
+     * Runs many operations, each with its own Idempotency-Key, in one transaction.
+     *
+     * Keys that missed the replay cache are looked up with a single IN query, new operation rows
+     * are inserted with one flush and the remaining changes are written at commit, so with JDBC
+     * batching enabled the whole batch costs a handful of statements instead of several per item.
+     * prepare runs inside that transaction before any business logic, so resources can load the
+     * entities the items will touch in one query.
+     *
+     * If anything in the batch fails the transaction is rolled back and the new items are retried
+     * one by one through execute, so a single bad item only fails itself. Items whose operation was
+     * abandoned by an earlier attempt are taken over the same way, after the batch.
+     * A key repeated within the batch runs once; later copies are answered like a retry.
+     *
+     * With several shards the items are grouped by the shard of their patient and each group gets
+     * its own transaction (and its own prepare call, on that shard).
+     *
+     * @return 200 with one result per item, in request order
+     */
+    public Response executeBatch(List<? extends BatchOperation<?>> operations, Runnable prepare) {
+        int size = operations.size();
+        String[] bodyHashes = new String[size];
+        BatchItemResult[] results = new BatchItemResult[size];
+        Map<String, Integer> firstIndex = new HashMap<>();
+        List<Integer> pending = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            BatchOperation<?> op = operations.get(i);
+            bodyHashes[i] = hashBody(op.getRequestJson() == null ? "" : op.getRequestJson());
+            if (firstIndex.putIfAbsent(replayCache.scopedKey(op.getIdempotencyKey(), op.getUri()), i) != null) {
+                continue; // duplicate, answered from the first copy below
+            }
+            CompletedOperation cached = replayCache.get(op.getIdempotencyKey(), op.getUri());
+            if (cached != null) {
+                results[i] = replayed(cached, op, bodyHashes[i]);
+            } else {
+                pending.add(i);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            for (Map.Entry<Integer, List<Integer>> group : byShard(operations, pending).entrySet()) {
+                ShardContext.run(group.getKey(),
+                        () -> executePending(operations, bodyHashes, group.getValue(), prepare, results));
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (results[i] == null) {
+                int first = firstIndex.get(replayCache.scopedKey(operations.get(i).getIdempotencyKey(),
+                        operations.get(i).getUri()));
+                results[i] = duplicateOf(results[first], operations.get(first), bodyHashes[first],
+                        operations.get(i), bodyHashes[i]);
+            }
+        }
+        return batchResponse(results);
+    }
+
+    /**
+     * Pending items per shard; everything stays on the caller's shard unless there are several.
+     */
+    private static Map<Integer, List<Integer>> byShard(List<? extends BatchOperation<?>> operations,
+                                                       List<Integer> pending) {
+        int shards = Shards.count();
+        if (shards == 1) {
+            return Map.of(ShardContext.current(), pending);
+        }
+        Map<Integer, List<Integer>> groups = new TreeMap<>();
+        for (int i : pending) {
+            String patientId = operations.get(i).getPatientId();
+            int shard = patientId == null ? ShardContext.current() : Shards.shardOf(patientId, shards);
+            groups.computeIfAbsent(shard, s -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private void executePending(
+            List<? extends BatchOperation<?>> operations,
+            String[] bodyHashes,
+            List<Integer> pending,
+            Runnable prepare,
+            BatchItemResult[] results
+    ) {
+        List<CompletedOperation> executed = new ArrayList<>();
+        try {
+            BatchItemResult[] created = transactions.required(
+                    () -> executeBatchInTransaction(operations, bodyHashes, pending, prepare, results, executed));
+            for (int i : pending) {
+                if (created[i] != null) {
+                    results[i] = created[i];
+                }
+            }
+            for (CompletedOperation completed : executed) {
+                replayCache.put(completed);
+            }
+            for (int i : pending) {
+                if (results[i] == null) {
+                    results[i] = executeSingle(operations.get(i)); // abandoned, see executeBatchInTransaction
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.FINE, "Batch of " + pending.size() + " operations rolled back, retrying one by one", e);
+            for (int i : pending) {
+                if (results[i] == null) {
+                    results[i] = executeSingle(operations.get(i));
+                }
+            }
+        }
+    }
+
+    private BatchItemResult[] executeBatchInTransaction(
+            List<? extends BatchOperation<?>> operations,
+            String[] bodyHashes,
+            List<Integer> pending,
+            Runnable prepare,
+            BatchItemResult[] replays,
+            List<CompletedOperation> executed
+    ) {
+        BatchItemResult[] results = new BatchItemResult[operations.size()];
+        // keys the filter has never seen are not looked up; if another node inserted one of them,
+        // the flush below fails and the items are retried one by one through execute
+        List<String> keys = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            String key = operations.get(i).getIdempotencyKey();
+            if (knownKeys.mightContain(key)) {
+                keys.add(key);
+            }
+        }
+        Map<String, OperationEntity> existing = keys.isEmpty() ? Map.of() : findByIdempotencyKeys(keys);
+        for (String key : keys) {
+            knownKeys.lookedUp(existing.containsKey(key));
+        }
+
+        List<Integer> created = new ArrayList<>();
+        List<OperationEntity> rows = new ArrayList<>();
+        for (int i : pending) {
+            BatchOperation<?> item = operations.get(i);
+            OperationEntity stored = existing.get(item.getIdempotencyKey());
+            if (stored != null && isAbandoned(stored) && sameRequest(stored, item.getMethod(), item.getUri(),
+                    bodyHashes[i])) {
+                continue; // left without a result, taken over by executeSingle after the batch
+            }
+            if (stored != null) {
+                // committed before this transaction, so still valid if the batch rolls back
+                replays[i] = isPending(stored)
+                        ? new BatchItemResult(item.getIdempotencyKey(), OperationOutcome.CONFLICT,
+                                Response.Status.CONFLICT.getStatusCode(),
+                                sameRequest(stored, item.getMethod(), item.getUri(), bodyHashes[i])
+                                        ? IN_PROGRESS_BODY
+                                        : CONFLICT_BODY)
+                        : replayed(toCompleted(stored), item, bodyHashes[i]);
+                continue;
+            }
+            OperationEntity op = new OperationEntity();
+            op.setIdempotencyKey(item.getIdempotencyKey());
+            op.setMethod(item.getMethod());
+            op.setUri(item.getUri());
+            op.setBodyHash(bodyHashes[i]);
+            op.setType(item.getType());
+            op.setStatus(OperationStatus.RECEIVED);
+            op.setRequestJson(item.getRequestJson());
+            leases.acquire(op);
+            knownKeys.add(item.getIdempotencyKey());
+            em.persist(op);
+            created.add(i);
+            rows.add(op);
+        }
+        if (rows.isEmpty()) {
+            return results;
+        }
+        em.flush(); // one batched insert, and a concurrent duplicate key fails the batch here
+
+        if (prepare != null) {
+            prepare.run();
+        }
+        int ok = Response.Status.OK.getStatusCode();
+        byte[][] bodies = new byte[rows.size()][];
+        Instant[] startedAt = new Instant[rows.size()];
+        for (int n = 0; n < rows.size(); n++) {
+            OperationEntity op = rows.get(n);
+            startedAt[n] = Instant.now();
+            op.setStatus(OperationStatus.PROCESSING);
+            bodies[n] = toJsonBytes(operations.get(created.get(n)).getBusinessLogic().get());
+            op.setResponseJson(new String(bodies[n], StandardCharsets.UTF_8));
+            op.setHttpStatus(ok);
+            OperationLeases.release(op);
+            op.setStatus(OperationStatus.COMPLETED);
+            publishOnCommit(op, bodies[n]);
+        }
+        if (journal.isEnabled()) {
+            journalCompleted(rows, startedAt);
+        }
+
+        executed.clear();
+        for (int n = 0; n < rows.size(); n++) {
+            int i = created.get(n);
+            BatchOperation<?> item = operations.get(i);
+            executed.add(new CompletedOperation(item.getIdempotencyKey(), item.getMethod(), item.getUri(),
+                    bodyHashes[i], ok, bodies[n]));
+            results[i] = new BatchItemResult(item.getIdempotencyKey(), OperationOutcome.EXECUTED, ok, bodies[n]);
+        }
+        return results;
+    }
+
+    /**
+     * Fallback for a rolled back batch, and for abandoned operations the batch found. Other keys
+     * found by the batch lookup never get here, so a 200 means this call (or a concurrent request
+     * with the same key) ran the operation.
+     */
+    private BatchItemResult executeSingle(BatchOperation<?> item) {
+        String key = item.getIdempotencyKey();
+        try {
+            Response response = execute(item.getType(), key, item.getMethod(), item.getUri(),
+                    item.getRequestJson(), item.getBusinessLogic());
+            Object entity = response.getEntity();
+            byte[] body = entity instanceof byte[]
+                    ? (byte[]) entity
+                    : String.valueOf(entity).getBytes(StandardCharsets.UTF_8);
+            OperationOutcome outcome = response.getStatus() == Response.Status.CONFLICT.getStatusCode()
+                    ? OperationOutcome.CONFLICT
+                    : OperationOutcome.EXECUTED;
+            return new BatchItemResult(key, outcome, response.getStatus(), body);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Batch item " + key + " failed", e);
+            return new BatchItemResult(key, OperationOutcome.FAILED,
+                    Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), FAILED_BODY);
+        }
+    }
+
+    private static BatchItemResult replayed(CompletedOperation stored, BatchOperation<?> item, String bodyHash) {
+        if (!stored.matches(item.getMethod(), item.getUri(), bodyHash)) {
+            return new BatchItemResult(item.getIdempotencyKey(), OperationOutcome.CONFLICT,
+                    Response.Status.CONFLICT.getStatusCode(), CONFLICT_BODY);
+        }
+        return new BatchItemResult(item.getIdempotencyKey(), OperationOutcome.REPLAYED,
+                stored.getHttpStatus(), stored.getResponseBody());
+    }
+
+    private static BatchItemResult duplicateOf(BatchItemResult first, BatchOperation<?> firstItem, String firstHash,
+                                               BatchOperation<?> item, String bodyHash) {
+        boolean sameRequest = firstItem.getMethod().equals(item.getMethod())
+                && firstItem.getUri().equals(item.getUri())
+                && firstHash.equals(bodyHash);
+        if (!sameRequest) {
+            return new BatchItemResult(item.getIdempotencyKey(), OperationOutcome.CONFLICT,
+                    Response.Status.CONFLICT.getStatusCode(), CONFLICT_BODY);
+        }
+        OperationOutcome outcome = first.getOutcome() == OperationOutcome.EXECUTED
+                ? OperationOutcome.REPLAYED
+                : first.getOutcome();
+        return new BatchItemResult(item.getIdempotencyKey(), outcome, first.getHttpStatus(), first.getResponseBody());
+    }
+
+    /**
+     * Writes {"results":[...]} by hand so each stored response is embedded as its original bytes.
+     */
+    private Response batchResponse(BatchItemResult[] results) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + results.length * 128);
+        out.writeBytes("{\"results\":[".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < results.length; i++) {
+            BatchItemResult result = results[i];
+            StringBuilder head = new StringBuilder(96);
+            if (i > 0) {
+                head.append(',');
+            }
+            head.append("{\"idempotencyKey\":").append(jsonb.toJson(result.getIdempotencyKey()))
+                    .append(",\"outcome\":\"").append(result.getOutcome().name())
+                    .append("\",\"httpStatus\":").append(result.getHttpStatus())
+                    .append(",\"response\":");
+            out.writeBytes(head.toString().getBytes(StandardCharsets.UTF_8));
+            byte[] body = result.getResponseBody();
+            out.writeBytes(body == null || body.length == 0 ? NULL_BODY : body);
+            out.write('}');
+        }
+        out.writeBytes("]}".getBytes(StandardCharsets.UTF_8));
+        return jsonResponse(Response.Status.OK.getStatusCode(), out.toByteArray());
+    }
+
+    /**
+     * Each execution gets its own transaction, or shares one with its neighbours in group commit mode.
+     * Either way the transaction has ended when this returns.
+     */
+    private Response inTransaction(Supplier<Response> work) {
+        if (groupCommitter.isEnabled()) {
+            return groupCommitter.submit(work);
+        }
+        return transactions.required(work);
+    }
+
+    private <T> Response executeAsLeader(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash,
+            Supplier<T> businessLogic,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        // a previous attempt of this leader may have been rolled back (group commit retry)
+        flight.setResult(null);
+        sample.reset();
+
+        Claim claim = claim(type, idempotencyKey, method, uri, requestJson, bodyHash, flight, sample);
+        if (claim.op == null) {
+            return claim.answer;
+        }
+        Response response = runClaimed(claim.op, businessLogic, flight, sample);
+        if (!claim.managed) {
+            OperationUpserts.complete(em, claim.op);
+        }
+        return response;
+    }
+
+    /**
+     * Claim-first variant of the leader (see OperationLeases.isClaimFirst): the claim commits on its
+     * own, then the business logic runs in a second transaction that first checks, under a row lock,
+     * that the row still carries this node's lease for the claimed attempt. If the lease ran out and
+     * the operation was reclaimed meanwhile, nothing runs and the caller is told it is in progress.
+     */
+    private <T> Response executeClaimFirst(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash,
+            Supplier<T> businessLogic,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        flight.setResult(null);
+        sample.reset();
+        Claim claim = transactions.required(
+                () -> claim(type, idempotencyKey, method, uri, requestJson, bodyHash, flight, sample));
+        if (claim.op == null) {
+            return claim.answer;
+        }
+
+        UUID operationId = claim.op.getOperationId();
+        int attempt = claim.op.getAttempts();
+        return inTransaction(() -> {
+            flight.setResult(null);
+            OperationEntity op = em.find(OperationEntity.class, operationId, LockModeType.PESSIMISTIC_WRITE);
+            Response answer;
+            if (op == null || !leases.isOwnAttempt(op, attempt)) {
+                sample.setOutcome(OperationOutcome.CONFLICT);
+                answer = stillInProgress();
+            } else {
+                answer = runClaimed(op, businessLogic, flight, sample);
+            }
+            sample.workDone();
+            return answer;
+        });
+    }
+
+    /**
+     * Finds or creates the operation row and takes its lease, or answers from an existing row.
+     */
+    private Claim claim(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        if (insertFirst) {
+            return claimInsertFirst(type, idempotencyKey, method, uri, requestJson, bodyHash, flight, sample);
+        }
+
+        // Check if operation already exists (skipped for keys the filter has never seen)
+        boolean lookedUp = knownKeys.mightContain(idempotencyKey);
+        OperationEntity existing = lookedUp ? lookup(idempotencyKey) : null;
+        sample.mark(OperationMetrics.Phase.LOOKUP);
+
+        if (existing != null && isAbandoned(existing) && sameRequest(existing, method, uri, bodyHash)) {
+            // re-read under a row lock so only one request (on any node) takes it over
+            em.refresh(existing, LockModeType.PESSIMISTIC_WRITE);
+            if (isAbandoned(existing)) {
+                leases.acquire(existing);
+                existing.setStatus(OperationStatus.RECEIVED);
+                sample.mark(OperationMetrics.Phase.PERSIST);
+                return Claim.of(existing);
+            }
+        }
+
+        if (existing != null) {
+            return answerStored(existing, method, uri, bodyHash, flight, sample);
+        }
+
         // If not found I need to create a new operation row
+        OperationEntity op = newOperation(type, idempotencyKey, method, uri, requestJson, bodyHash);
+
+        try {
+            em.persist(op);
+            em.flush(); // ensures id + constraints are applied
+        } catch (RuntimeException e) {
+            if (lookedUp) {
+                throw e;
+            }
+            knownKeys.missed(idempotencyKey);
+            throw new UnknownKeyCollision(e);
+        }
+        sample.mark(OperationMetrics.Phase.PERSIST);
+        return Claim.of(op);
+    }
+
+    /**
+     * Insert-first variant of claim: one MERGE inserts the row or returns the stored one, no lookup
+     * before it (see OperationUpserts). Its time is counted as PERSIST.
+     */
+    private Claim claimInsertFirst(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        OperationEntity op = newOperation(type, idempotencyKey, method, uri, requestJson, bodyHash);
+        OperationEntity stored;
+        try {
+            stored = OperationUpserts.claim(em, op);
+        } catch (RuntimeException e) {
+            if (!OperationUpserts.isConcurrentClaim(e)) {
+                throw e;
+            }
+            // the transaction is rollback-only now, execute runs the MERGE again in a new one
+            throw new UnknownKeyCollision(e);
+        }
+        sample.mark(OperationMetrics.Phase.PERSIST);
+        if (stored == op) {
+            return Claim.unmanaged(op);
+        }
+
+        if (isAbandoned(stored) && sameRequest(stored, method, uri, bodyHash)) {
+            // the MERGE has locked the row, load it to take it over
+            OperationEntity existing = em.find(OperationEntity.class, stored.getOperationId());
+            leases.acquire(existing);
+            existing.setStatus(OperationStatus.RECEIVED);
+            return Claim.of(existing);
+        }
+        return answerStored(stored, method, uri, bodyHash, flight, sample);
+    }
+
+    private OperationEntity newOperation(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash
+    ) {
         OperationEntity op = new OperationEntity();
         op.setIdempotencyKey(idempotencyKey);
         op.setMethod(method);
@@ -76,29 +1050,322 @@ public class OperationService {
         op.setType(type);
         op.setStatus(OperationStatus.RECEIVED);
         op.setRequestJson(requestJson);
+        leases.acquire(op);
+        knownKeys.add(idempotencyKey);
+        return op;
+    }
 
-        em.persist(op);
-        em.flush(); // ensures id + constraints are applied
+    /**
+     * Answer for a key whose row already exists and is not taken over.
+     */
+    private Claim answerStored(
+            OperationEntity existing,
+            String method,
+            String uri,
+            String bodyHash,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        if (isPending(existing)) {
+            // another request holds the lease (async mode, claim-first mode or another node)
+            sample.setOutcome(OperationOutcome.CONFLICT);
+            return Claim.answered(sameRequest(existing, method, uri, bodyHash) ? stillInProgress() : conflict());
+        }
+        CompletedOperation stored = toCompleted(existing);
+        if (existing.getStatus() == OperationStatus.COMPLETED) {
+            // row is already committed, so it is safe to hand it to waiters and the cache
+            flight.setResult(stored);
+        }
+        sample.setOutcome(outcomeOf(stored, method, uri, bodyHash));
+        return Claim.answered(replay(stored, method, uri, bodyHash));
+    }
 
+    private <T> Response runClaimed(
+            OperationEntity op,
+            Supplier<T> businessLogic,
+            InFlightOperation flight,
+            OperationMetrics.Sample sample
+    ) {
+        Instant startedAt = Instant.now();
         try {
             op.setStatus(OperationStatus.PROCESSING);
             T result = businessLogic.get();
+            sample.mark(OperationMetrics.Phase.BUSINESS);
 
-            String responseJson = jsonb.toJson(result);
-            op.setResponseJson(responseJson);
-            op.setHttpStatus(Response.Status.OK.getStatusCode());
+            // Serialize once: the same bytes are stored, returned now and replayed later
+            byte[] responseBody = toJsonBytes(result);
+            sample.mark(OperationMetrics.Phase.SERIALIZE);
+            int httpStatus = Response.Status.OK.getStatusCode();
+            op.setResponseJson(new String(responseBody, StandardCharsets.UTF_8));
+            op.setHttpStatus(httpStatus);
+            OperationLeases.release(op);
             op.setStatus(OperationStatus.COMPLETED);
+            publishOnCommit(op, responseBody);
+            if (journal.isEnabled()) {
+                journalCompleted(op, startedAt);
+                sample.mark(OperationMetrics.Phase.JOURNAL);
+            }
+            sample.setOutcome(OperationOutcome.EXECUTED);
+            flight.setResult(new CompletedOperation(op.getIdempotencyKey(), op.getMethod(), op.getUri(),
+                    op.getBodyHash(), httpStatus, responseBody));
 
-            // JAX-RS will serialize result again; stored JSON is for retries
-            return Response.ok(result).build();
+            return jsonResponse(httpStatus, responseBody);
         } catch (RuntimeException e) {
             op.setStatus(OperationStatus.FAILED);
             op.setHttpStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
             op.setResponseJson("{\"error\":\"Internal error processing operation\"}");
+            if (journal.isEnabled()) {
+                // the row is rolled back with the transaction, the journal keeps the failed attempt
+                journal.appendAsync(JournalRecord.operation(op, startedAt, Instant.now()));
+            }
             throw e;
         }
     }
 
+    /**
+     * Durable record of a failed attempt, written in a new transaction once the attempt's own has
+     * rolled back: the row stays RECEIVED without a lease, with the attempt counted and its error,
+     * so the next retry of the key (on any node) takes it over. An operation that has used
+     * max-attempts fails instead, and its retries get the stored 500. Rows another node holds a
+     * lease on, or that finished meanwhile, are left alone. Best effort: the caller's exception is
+     * what counts.
+     */
+    private void recordFailure(
+            OperationType type,
+            String idempotencyKey,
+            String method,
+            String uri,
+            String requestJson,
+            String bodyHash,
+            RuntimeException error
+    ) {
+        try {
+            transactions.requiresNew(() -> {
+                OperationEntity op = findByIdempotencyKey(idempotencyKey);
+                if (op == null) {
+                    op = new OperationEntity();
+                    op.setIdempotencyKey(idempotencyKey);
+                    op.setMethod(method);
+                    op.setUri(uri);
+                    op.setBodyHash(bodyHash);
+                    op.setType(type);
+                    op.setRequestJson(requestJson);
+                    op.setAttempts(1);
+                    leases.endAttempt(op, OperationLeases.describe(error));
+                    knownKeys.add(idempotencyKey);
+                    em.persist(op);
+                    return null;
+                }
+                if (!isPending(op) || !sameRequest(op, method, uri, bodyHash)) {
+                    return null;
+                }
+                if (!leases.isOwnedHere(op)) {
+                    if (OperationLeases.isLeased(op)) {
+                        return null;
+                    }
+                    // the attempt's own claim was rolled back with it
+                    op.setAttempts(op.getAttempts() + 1);
+                }
+                leases.endAttempt(op, OperationLeases.describe(error));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // e.g. a concurrent request inserted the key first
+            LOG.log(Level.FINE, "Could not record failed attempt of " + idempotencyKey, e);
+        }
+    }
+
+    /**
+     * The insert of a key the KnownKeyFilter had never seen failed, most likely on the unique
+     * constraint because another node inserted it; execute runs again, this time with the lookup.
+     * In insert-first mode: the MERGE of a new key timed out waiting for another transaction
+     * inserting the same key; execute runs it again, once.
+     */
+    private static final class UnknownKeyCollision extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnknownKeyCollision(RuntimeException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Result of claim: either the operation row this request now holds the lease on, or the answer.
+     */
+    private static final class Claim {
+        final OperationEntity op;
+        final boolean managed; // false: inserted by OperationUpserts, completed with its UPDATE
+        final Response answer;
+
+        private Claim(OperationEntity op, boolean managed, Response answer) {
+            this.op = op;
+            this.managed = managed;
+            this.answer = answer;
+        }
+
+        static Claim of(OperationEntity op) {
+            return new Claim(op, true, null);
+        }
+
+        static Claim unmanaged(OperationEntity op) {
+            return new Claim(op, false, null);
+        }
+
+        static Claim answered(Response answer) {
+            return new Claim(null, true, answer);
+        }
+    }
+
+    private static OperationOutcome outcomeOf(CompletedOperation stored, String method, String uri, String bodyHash) {
+        return stored.matches(method, uri, bodyHash) ? OperationOutcome.REPLAYED : OperationOutcome.CONFLICT;
+    }
+
+    private Response replay(CompletedOperation stored, String method, String uri, String bodyHash) {
+        // Check for semantic mismatch
+        if (!stored.matches(method, uri, bodyHash)) {
+            return conflict();
+        }
+
+        // Return stored response
+        return jsonResponse(stored.getHttpStatus(), stored.getResponseBody());
+    }
+
+    /**
+     * The byte[] entity is written as-is by JAX-RS, no second serialization pass.
+     */
+    private static Response jsonResponse(int httpStatus, byte[] body) {
+        return Response.status(httpStatus)
+                .entity(body)
+                .type(MediaType.APPLICATION_JSON_TYPE.withCharset(StandardCharsets.UTF_8.name()))
+                .build();
+    }
+
+    private byte[] toJsonBytes(Object result) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        jsonb.toJson(result, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Journal mode: the full audit record is group-committed to the journal before the
+     * database commit, and the row keeps only the idempotency index plus the journal position.
+     */
+    private void journalCompleted(OperationEntity op, Instant startedAt) {
+        indexOnly(op, journal.append(JournalRecord.operation(op, startedAt, Instant.now())));
+    }
+
+    /**
+     * Batch variant of journalCompleted: all records share a single fsync.
+     */
+    private void journalCompleted(List<OperationEntity> ops, Instant[] startedAt) {
+        Instant finishedAt = Instant.now();
+        List<JournalRecord> records = new ArrayList<>(ops.size());
+        for (int i = 0; i < ops.size(); i++) {
+            records.add(JournalRecord.operation(ops.get(i), startedAt[i], finishedAt));
+        }
+        long[] positions = journal.appendAll(records);
+        for (int i = 0; i < positions.length; i++) {
+            indexOnly(ops.get(i), positions[i]);
+        }
+    }
+
+    private void indexOnly(OperationEntity op, long position) {
+        op.setJournalPosition(position);
+        op.setRequestJson(null);
+        op.setResponseJson(null);
+
+        UUID operationId = op.getOperationId();
+        afterCompletion(committed -> journal.appendAsync(committed
+                ? JournalRecord.committed(operationId)
+                : JournalRecord.aborted(operationId)));
+    }
+
+    /**
+     * Hands the completed operation to the change feed once its transaction has committed.
+     */
+    private void publishOnCommit(OperationEntity op, byte[] responseBody) {
+        if (!feed.isEnabled()) {
+            return;
+        }
+        UUID operationId = op.getOperationId();
+        OperationType type = op.getType();
+        String uri = op.getUri();
+        int httpStatus = op.getHttpStatus();
+        afterCompletion(committed -> {
+            if (committed) {
+                feed.publish(operationId, type, uri, httpStatus, responseBody);
+            }
+        });
+    }
+
+    private CompletedOperation toCompleted(OperationEntity op) {
+        if (op.getResponseJson() == null && op.getJournalPosition() != null) {
+            JournalRecord record = journal.read(op.getJournalPosition());
+            return CompletedOperation.from(op, record.getResponseJson());
+        }
+        return CompletedOperation.from(op);
+    }
+
+    private Response conflict() {
+        return Response.status(Response.Status.CONFLICT)
+                .entity(new String(CONFLICT_BODY, StandardCharsets.UTF_8))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private Response stillInProgress() {
+        return Response.status(Response.Status.CONFLICT)
+                .entity(new String(IN_PROGRESS_BODY, StandardCharsets.UTF_8))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Runs the callback once the current JTA transaction has finished, passing true on commit.
+     * Outside a transaction (unit tests) the callback runs immediately as committed.
+     */
+    private void afterCompletion(Consumer<Boolean> callback) {
+        if (transactionRegistry == null || transactionRegistry.getTransactionKey() == null) {
+            callback.accept(true);
+            return;
+        }
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                callback.accept(status == Status.STATUS_COMMITTED);
+            }
+        });
+    }
+
+    /**
+     * One round trip for all keys of a batch.
+     */
+    private Map<String, OperationEntity> findByIdempotencyKeys(Collection<String> keys) {
+        TypedQuery<OperationEntity> q = em.createQuery(
+                "SELECT o FROM OperationEntity o WHERE o.idempotencyKey IN :keys",
+                OperationEntity.class
+        );
+        q.setParameter("keys", keys);
+        Map<String, OperationEntity> byKey = new HashMap<>();
+        for (OperationEntity op : q.getResultList()) {
+            byKey.put(op.getIdempotencyKey(), op);
+        }
+        return byKey;
+    }
+
+    /**
+     * findByIdempotencyKey for a key the filter let through, counted in its false positive rate.
+     */
+    private OperationEntity lookup(String key) {
+        OperationEntity op = findByIdempotencyKey(key);
+        knownKeys.lookedUp(op != null);
+        return op;
+    }
+
     private OperationEntity findByIdempotencyKey(String key) {
         TypedQuery<OperationEntity> q = em.createQuery(
                 "SELECT o FROM OperationEntity o WHERE o.idempotencyKey = :key",
@@ -109,13 +1376,12 @@ public class OperationService {
         return list.isEmpty() ? null : list.get(0);
     }
 
-    private String hashBody(String body) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] bytes = digest.digest(body.getBytes(StandardCharsets.UTF_8));
-            return HexFormat.of().formatHex(bytes);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("SHA-256 not available", e);
-        }
+    private static byte[] hashOf(String requestJson) {
+        return RequestBodyHasher.hash(requestJson == null ? "" : requestJson);
+    }
+
+    private static String hashBody(String body) {
+        // hex only because body_hash is stored as text
+        return HexFormat.of().formatHex(RequestBodyHasher.hash(body));
     }
 }
@@ -0,0 +1,154 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.shard.Shards;
+import jakarta.persistence.EntityManager;
+import org.hibernate.query.NativeQuery;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Native SQL of the insert-first mode (see OperationService): the operation row is claimed with a
+ * single MERGE that inserts it if the key is new, and otherwise returns the stored row, so a request
+ * costs one statement before its business logic instead of a SELECT and an INSERT.
+ *
+ * Uses H2's data change delta table (SELECT ... FROM FINAL TABLE (MERGE ...)), which returns the
+ * inserted row, or the matched row after a no-op update that locks it. A concurrent MERGE of the same
+ * new key waits for the first transaction, up to the database lock timeout (H2: 1 second by
+ * default), and then may still fail: on the unique key once that one commits, or on the timeout
+ * (see isConcurrentClaim). OperationService then runs it once more in a new transaction, which
+ * sees the committed row (or inserts its own if the first one rolled back), and answers that the
+ * operation is still in progress if the key is still held. (PostgreSQL spells the same INSERT ...
+ * ON CONFLICT ... DO UPDATE ... RETURNING.)
+ *
+ * The claimed row is not managed by the persistence context; complete writes its outcome with one
+ * UPDATE, which is the statement the entity would have flushed at commit.
+ */
+final class OperationUpserts {
+
+    private static final String CLAIM_SQL =
+            "SELECT operation_id, method, uri, body_hash, status, http_status, response_json, journal_position,"
+                    + " lease_owner, lease_expires_at, attempts"
+                    + " FROM FINAL TABLE (MERGE INTO operations o"
+                    + " USING (VALUES (CAST(:operationId AS UUID), CAST(:idempotencyKey AS VARCHAR(64))))"
+                    + " AS s (operation_id, idempotency_key)"
+                    + " ON o.idempotency_key = s.idempotency_key"
+                    + " WHEN MATCHED THEN UPDATE SET o.idempotency_key = o.idempotency_key"
+                    + " WHEN NOT MATCHED THEN INSERT (operation_id, idempotency_key, method, uri, patient_id, body_hash, type,"
+                    + " status, request_json, http_status, lease_owner, lease_expires_at, attempts, created_at,"
+                    + " updated_at)"
+                    + " VALUES (s.operation_id, s.idempotency_key, :method, :uri, :patientId, :bodyHash, :type, :status,"
+                    + " :requestJson, 0, :leaseOwner, :leaseExpiresAt, :attempts, :createdAt, :createdAt))";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE operations SET status = :status, http_status = :httpStatus, request_json = :requestJson,"
+                    + " response_json = :responseJson, journal_position = :journalPosition, lease_owner = NULL,"
+                    + " lease_expires_at = NULL, updated_at = :updatedAt"
+                    + " WHERE operation_id = :operationId";
+
+    // H2 error codes (org.h2.api.ErrorCode)
+    private static final int DUPLICATE_KEY = 23505;
+    private static final int LOCK_TIMEOUT = 50200;
+    private static final int CONCURRENT_UPDATE = 90131;
+
+    private OperationUpserts() {
+    }
+
+    /**
+     * Inserts op unless its key is taken.
+     *
+     * @return op itself (now with id and timestamps) if it was inserted, otherwise a detached
+     *         view of the stored row with everything needed to answer from it
+     */
+    static OperationEntity claim(EntityManager em, OperationEntity op) {
+        Instant now = Instant.now();
+        op.setOperationId(UUID.randomUUID());
+        op.setCreatedAt(now);
+        op.setUpdatedAt(now);
+        op.setPatientId(Shards.patientIdOf(op.getUri()));
+
+        @SuppressWarnings("unchecked")
+        NativeQuery<Object[]> query = em.createNativeQuery(CLAIM_SQL).unwrap(NativeQuery.class);
+        List<Object[]> rows = query
+                .addScalar("operation_id", UUID.class)
+                .addScalar("method", String.class)
+                .addScalar("uri", String.class)
+                .addScalar("body_hash", String.class)
+                .addScalar("status", String.class)
+                .addScalar("http_status", Integer.class)
+                .addScalar("response_json", String.class)
+                .addScalar("journal_position", Long.class)
+                .addScalar("lease_owner", String.class)
+                .addScalar("lease_expires_at", Instant.class)
+                .addScalar("attempts", Integer.class)
+                .setParameter("operationId", op.getOperationId())
+                .setParameter("idempotencyKey", op.getIdempotencyKey())
+                .setParameter("method", op.getMethod())
+                .setParameter("uri", op.getUri())
+                .setParameter("patientId", op.getPatientId())
+                .setParameter("bodyHash", op.getBodyHash())
+                .setParameter("type", op.getType().name())
+                .setParameter("status", op.getStatus().name())
+                .setParameter("requestJson", op.getRequestJson(), String.class)
+                .setParameter("leaseOwner", op.getLeaseOwner(), String.class)
+                .setParameter("leaseExpiresAt", op.getLeaseExpiresAt(), Instant.class)
+                .setParameter("attempts", op.getAttempts())
+                .setParameter("createdAt", now)
+                .getResultList();
+
+        Object[] row = rows.get(0);
+        if (op.getOperationId().equals(row[0])) {
+            return op;
+        }
+        OperationEntity stored = new OperationEntity();
+        stored.setOperationId((UUID) row[0]);
+        stored.setIdempotencyKey(op.getIdempotencyKey());
+        stored.setMethod((String) row[1]);
+        stored.setUri((String) row[2]);
+        stored.setBodyHash((String) row[3]);
+        stored.setStatus(OperationStatus.valueOf((String) row[4]));
+        stored.setHttpStatus((Integer) row[5]);
+        stored.setResponseJson((String) row[6]);
+        stored.setJournalPosition((Long) row[7]);
+        stored.setLeaseOwner((String) row[8]);
+        stored.setLeaseExpiresAt((Instant) row[9]);
+        stored.setAttempts((Integer) row[10]);
+        return stored;
+    }
+
+    /**
+     * Whether claim failed because another transaction was inserting the same key: H2 gave up
+     * waiting for its lock (lock timeout, or the row changed under the wait) or the insert lost the
+     * race on the unique key.
+     */
+    static boolean isConcurrentClaim(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql) {
+                int code = sql.getErrorCode();
+                return code == LOCK_TIMEOUT || code == CONCURRENT_UPDATE || code == DUPLICATE_KEY;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the outcome of a claimed operation.
+     */
+    static void complete(EntityManager em, OperationEntity op) {
+        op.setUpdatedAt(Instant.now());
+        NativeQuery<?> update = em.createNativeQuery(COMPLETE_SQL).unwrap(NativeQuery.class);
+        // typed binds so the nullable columns get a SQL type when the value is null
+        update.setParameter("status", op.getStatus().name())
+                .setParameter("httpStatus", op.getHttpStatus())
+                .setParameter("requestJson", op.getRequestJson(), String.class)
+                .setParameter("responseJson", op.getResponseJson(), String.class)
+                .setParameter("journalPosition", op.getJournalPosition(), Long.class)
+                .setParameter("updatedAt", op.getUpdatedAt())
+                .setParameter("operationId", op.getOperationId())
+                .executeUpdate();
+    }
+}
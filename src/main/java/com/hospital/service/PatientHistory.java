@@ -0,0 +1,133 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.entity.PatientSnapshotEntity;
+import com.hospital.persistence.journal.AuditJournal;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Point-in-time state of a patient, reconstructed from the operation log.
+ *
+ * A patient's operations are the completed ones under its URI (/v1/patients/{patientId}/..., the
+ * operations.patient_id column), ordered by updated_at, the time they completed. The state at a given time is the latest snapshot
+ * covering up to that time (see PatientSnapshotter) plus a replay of the operations completed after
+ * the snapshot, so a query reads one snapshot and a short tail however long the history is.
+ *
+ * Snapshots also keep the history of operations that retention has purged since: the state at a
+ * time between two snapshots is only exact while the operations in between are still stored.
+ * Everything here runs on the current shard, which must be the patient's.
+ */
+@ApplicationScoped
+public class PatientHistory {
+
+    @PersistenceContext(unitName = "hospitalPU")
+    EntityManager em;
+
+    @Inject
+    AuditJournal journal;
+
+    /**
+     * State of the patient after every operation completed up to and including at.
+     */
+    public PatientState stateAt(String patientId, Instant at) {
+        List<PatientSnapshotEntity> snapshots = em.createQuery(
+                        "SELECT s FROM PatientSnapshotEntity s WHERE s.patientId = :patientId"
+                                + " AND s.coveredUntil <= :at ORDER BY s.coveredUntil DESC",
+                        PatientSnapshotEntity.class)
+                .setParameter("patientId", patientId)
+                .setParameter("at", at)
+                .setMaxResults(1)
+                .getResultList();
+
+        PatientState state;
+        TypedQuery<Object[]> tail;
+        if (snapshots.isEmpty()) {
+            state = new PatientState(patientId);
+            tail = em.createQuery(
+                    "SELECT o.type, o.responseJson, o.journalPosition, o.updatedAt FROM OperationEntity o"
+                            + " WHERE o.patientId = :patientId AND o.status = :completed AND o.updatedAt <= :at"
+                            + " ORDER BY o.updatedAt, o.operationId", Object[].class);
+        } else {
+            PatientSnapshotEntity snapshot = snapshots.get(0);
+            state = PatientState.fromSnapshot(patientId, snapshot.getStateJson(), snapshot.getCoveredUntil());
+            tail = em.createQuery(
+                            "SELECT o.type, o.responseJson, o.journalPosition, o.updatedAt FROM OperationEntity o"
+                                    + " WHERE o.patientId = :patientId AND o.status = :completed"
+                                    + " AND o.updatedAt > :from AND o.updatedAt <= :at"
+                                    + " ORDER BY o.updatedAt, o.operationId", Object[].class)
+                    .setParameter("from", snapshot.getCoveredUntil());
+        }
+        List<Object[]> operations = tail
+                .setParameter("patientId", patientId)
+                .setParameter("completed", OperationStatus.COMPLETED)
+                .setParameter("at", at)
+                .getResultList();
+        for (Object[] row : operations) {
+            String responseJson = (String) row[1];
+            if (responseJson == null && row[2] != null) {
+                // index-only row, the payloads live in the audit journal
+                responseJson = journal.read((Long) row[2]).getResponseJson();
+            }
+            if (responseJson != null) {
+                state.apply((OperationType) row[0], responseJson, (Instant) row[3]);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Patients with operations completed in (from, to].
+     */
+    public List<String> patientsChangedBetween(Instant from, Instant to) {
+        return em.createQuery(
+                        "SELECT DISTINCT o.patientId FROM OperationEntity o WHERE o.status = :completed"
+                                + " AND o.updatedAt > :from AND o.updatedAt <= :to AND o.patientId IS NOT NULL",
+                        String.class)
+                .setParameter("completed", OperationStatus.COMPLETED)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+    }
+
+    /**
+     * Writes a snapshot as of coveredUntil for every given patient that changed since its previous one.
+     *
+     * @return snapshots written
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public int snapshot(Collection<String> patientIds, Instant coveredUntil) {
+        int written = 0;
+        for (String patientId : patientIds) {
+            PatientState state = stateAt(patientId, coveredUntil);
+            if (state.getReplayedOperations() == 0) {
+                continue;
+            }
+            PatientSnapshotEntity snapshot = new PatientSnapshotEntity();
+            snapshot.setPatientId(patientId);
+            snapshot.setCoveredUntil(coveredUntil);
+            snapshot.setStateJson(state.toJson());
+            snapshot.setOperations(state.getReplayedOperations());
+            em.persist(snapshot);
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * coveredUntil of the newest snapshot on the current shard, null if there is none.
+     */
+    public Instant latestSnapshot() {
+        return em.createQuery("SELECT MAX(s.coveredUntil) FROM PatientSnapshotEntity s", Instant.class)
+                .getSingleResult();
+    }
+}
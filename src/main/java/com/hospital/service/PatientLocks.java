@@ -0,0 +1,215 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.ws.rs.ServiceUnavailableException;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped, in-JVM serialization of work on the same patient.
+ *
+ * PatientEntity and MedicationOrderEntity use optimistic locking, so two transactions touching the
+ * same patient at once both do their work and one of them fails at commit. Business methods take
+ * the patient's stripe first; a second transaction for that patient then queues (FIFO) until the
+ * first has committed and reads the new version, while other patients keep running in parallel.
+ *
+ * A stripe is held until the current JTA transaction completes, not until the business method
+ * returns, because the conflict is only decided at commit. Stripes are plain semaphores (released
+ * from afterCompletion, which may run on another thread) and re-taking a stripe already held by
+ * the same transaction is a no-op.
+ *
+ * A transaction only ever waits for a stripe above every stripe it holds, so no two transactions
+ * can wait for each other: a batch takes its stripes in ascending order. A transaction that locks
+ * one patient at a time (group commit runs several operations in one transaction, in arrival order)
+ * can need a stripe below one it already holds. That stripe is taken only if it is free right now,
+ * otherwise the operation fails with 503 at once instead of waiting into a deadlock; group commit
+ * then retries it in a transaction of its own.
+ *
+ * Waiting longer than wait-millis fails the operation with 503 so nothing queues forever.
+ * This only orders requests within one node; across nodes optimistic locking still applies.
+ *
+ * Settings (system properties):
+ *     hospital.patient-locks.stripes     (default 256, rounded up to a power of two)
+ *     hospital.patient-locks.wait-millis (default 5000)
+ */
+@ApplicationScoped
+public class PatientLocks {
+
+    static final String STRIPES_PROPERTY = "hospital.patient-locks.stripes";
+    static final String WAIT_MILLIS_PROPERTY = "hospital.patient-locks.wait-millis";
+
+    private static final Object HELD_STRIPES_KEY = PatientLocks.class.getName() + ".held";
+
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    private final Semaphore[] stripes;
+    private final int mask;
+    private final long waitNanos;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder orderConflicts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public PatientLocks() {
+        this(HospitalProperties.intValue(STRIPES_PROPERTY, 256),
+                TimeUnit.MILLISECONDS.toNanos(HospitalProperties.longValue(WAIT_MILLIS_PROPERTY, 5_000)));
+    }
+
+    PatientLocks(int stripeCount, long waitNanos) {
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new Semaphore[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Semaphore(1, true);
+        }
+        this.mask = size - 1;
+        this.waitNanos = waitNanos;
+    }
+
+    // --- only used from tests ---
+    void setTransactionRegistry(TransactionSynchronizationRegistry transactionRegistry) {
+        this.transactionRegistry = transactionRegistry;
+    }
+
+    /**
+     * Serializes the current transaction against every other transaction on this patient.
+     *
+     * @throws ServiceUnavailableException if the patient stays busy for longer than wait-millis
+     */
+    public void lockForTransaction(String patientId) {
+        lockForTransaction(List.of(patientId));
+    }
+
+    /**
+     * Batch variant: takes the stripes of all patients, in stripe order so batches cannot deadlock.
+     * Stripes below one the transaction already holds are not waited for (see the class comment).
+     *
+     * @throws ServiceUnavailableException if a patient stays busy for longer than wait-millis, or
+     *         a stripe below a held one is taken
+     */
+    public void lockForTransaction(Collection<String> patientIds) {
+        Set<Integer> held = heldByTransaction();
+        int highestHeld = held.stream().mapToInt(Integer::intValue).max().orElse(-1);
+        int[] wanted = patientIds.stream()
+                .mapToInt(this::stripeOf)
+                .filter(stripe -> !held.contains(stripe))
+                .distinct()
+                .sorted()
+                .toArray();
+        for (int stripe : wanted) {
+            if (stripe < highestHeld) {
+                acquireIfFree(stripe);
+            } else {
+                acquire(stripe);
+            }
+            held.add(stripe);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long contendedCount = contended.sum();
+        long acquisitionCount = acquisitions.sum();
+        int locked = 0;
+        for (Semaphore stripe : stripes) {
+            if (stripe.availablePermits() == 0) {
+                locked++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stripes", stripes.length);
+        stats.put("locked", locked);
+        stats.put("acquisitions", acquisitionCount);
+        stats.put("contended", contendedCount);
+        stats.put("contentionRatio", acquisitionCount == 0 ? 0.0 : (double) contendedCount / acquisitionCount);
+        stats.put("timeouts", timeouts.sum());
+        stats.put("orderConflicts", orderConflicts.sum());
+        stats.put("avgWaitMillis", contendedCount == 0 ? 0.0 : totalWaitNanos.sum() / 1_000_000.0 / contendedCount);
+        stats.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    int stripeOf(String patientId) {
+        int h = patientId.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void acquire(int stripe) {
+        acquisitions.increment();
+        Semaphore semaphore = stripes[stripe];
+        try {
+            // timed form even for the fast path: the untimed tryAcquire would jump the FIFO queue
+            if (semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+            contended.increment();
+            long start = System.nanoTime();
+            boolean acquired = semaphore.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            if (acquired) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timeouts.increment();
+        throw new ServiceUnavailableException("Patient is busy with another operation, retry later", 1L);
+    }
+
+    private void acquireIfFree(int stripe) {
+        acquisitions.increment();
+        try {
+            if (stripes[stripe].tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        orderConflicts.increment();
+        throw new ServiceUnavailableException("Patient is busy with another operation, retry later", 1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Integer> heldByTransaction() {
+        if (transactionRegistry == null || transactionRegistry.getTransactionKey() == null) {
+            throw new IllegalStateException("Patient locks are held until commit and need an active transaction");
+        }
+        Set<Integer> held = (Set<Integer>) transactionRegistry.getResource(HELD_STRIPES_KEY);
+        if (held == null) {
+            Set<Integer> stripesOfTransaction = new HashSet<>();
+            transactionRegistry.putResource(HELD_STRIPES_KEY, stripesOfTransaction);
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    for (int stripe : stripesOfTransaction) {
+                        stripes[stripe].release();
+                    }
+                    stripesOfTransaction.clear();
+                }
+            });
+            held = stripesOfTransaction;
+        }
+        return held;
+    }
+}
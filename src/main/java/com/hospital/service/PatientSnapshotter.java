@@ -0,0 +1,154 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.shard.ShardContext;
+import com.hospital.persistence.shard.Shards;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically snapshots every patient whose operations changed since the last run (see PatientHistory),
+ * so point-in-time queries replay at most one interval of operations.
+ *
+ * A run covers operations completed up to now minus the settle time: updated_at is set when the
+ * operation row is flushed, shortly before its commit, and a row that commits after the run with an
+ * earlier updated_at would be missed by every later snapshot. The first run after a restart continues
+ * from the newest stored snapshot of each shard; on an existing database the first run backfills.
+ *
+ * Settings (system properties):
+ * - hospital.snapshots.interval-minutes: pause between runs, default 60, 0 disables snapshots
+ * - hospital.snapshots.settle-seconds: age of the newest operation a run covers, default 60
+ * - hospital.snapshots.batch-size: patients per transaction, default 100
+ */
+@ApplicationScoped
+public class PatientSnapshotter {
+
+    private static final Logger LOG = Logger.getLogger(PatientSnapshotter.class.getName());
+
+    static final String INTERVAL_MINUTES_PROPERTY = "hospital.snapshots.interval-minutes";
+    static final String SETTLE_SECONDS_PROPERTY = "hospital.snapshots.settle-seconds";
+    static final String BATCH_SIZE_PROPERTY = "hospital.snapshots.batch-size";
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    PatientHistory history;
+
+    private final long intervalMinutes = HospitalProperties.longValue(INTERVAL_MINUTES_PROPERTY, 60);
+    private final Duration settle = Duration.ofSeconds(HospitalProperties.longValue(SETTLE_SECONDS_PROPERTY, 60));
+    private final int batchSize = HospitalProperties.intValue(BATCH_SIZE_PROPERTY, 100);
+
+    private final Stats stats = new Stats();
+    private Instant[] coveredUntil;
+    private ScheduledFuture<?> task;
+
+    void onStart(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        if (intervalMinutes <= 0) {
+            LOG.info("Patient snapshots disabled");
+            return;
+        }
+        task = scheduler.scheduleWithFixedDelay(this::snapshot, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * One pass over all shards. Public so it can be triggered manually.
+     */
+    public synchronized void snapshot() {
+        long runStart = System.nanoTime();
+        try {
+            if (coveredUntil == null) {
+                coveredUntil = new Instant[Shards.count()];
+            }
+            int patients = 0;
+            int written = 0;
+            for (int shard = 0; shard < Shards.count(); shard++) {
+                int current = shard;
+                Instant until = Instant.now().minus(settle);
+                Instant stored = coveredUntil[shard] != null ? coveredUntil[shard]
+                        : ShardContext.call(current, () -> history.latestSnapshot());
+                Instant from = stored == null ? Instant.EPOCH : stored;
+                List<String> changed = ShardContext.call(current, () -> history.patientsChangedBetween(from, until));
+                for (int i = 0; i < changed.size(); i += batchSize) {
+                    List<String> batch = changed.subList(i, Math.min(changed.size(), i + batchSize));
+                    written += ShardContext.call(current, () -> history.snapshot(batch, until));
+                }
+                patients += changed.size();
+                coveredUntil[shard] = until;
+            }
+            stats.runFinished(patients, written, System.nanoTime() - runStart, coveredUntil);
+            if (written > 0) {
+                int total = written;
+                LOG.info(() -> String.format("Wrote %d patient snapshots", total));
+            }
+        } catch (RuntimeException e) {
+            // keep the schedule alive, the next run picks up what this one did not cover
+            LOG.log(Level.WARNING, "Patient snapshot run failed", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> map = stats.toMap();
+        map.put("intervalMinutes", intervalMinutes);
+        map.put("settleSeconds", settle.toSeconds());
+        return map;
+    }
+
+    /**
+     * Counters for GET /admin/snapshots.
+     */
+    static final class Stats {
+        private long runs;
+        private long totalSnapshots;
+        private int lastRunPatients;
+        private Instant lastRunAt;
+        private long lastRunNanos;
+        private List<String> coveredUntil = List.of();
+
+        synchronized void runFinished(int patients, int snapshots, long nanos, Instant[] shardsCoveredUntil) {
+            runs++;
+            totalSnapshots += snapshots;
+            lastRunPatients = patients;
+            lastRunAt = Instant.now();
+            lastRunNanos = nanos;
+            coveredUntil = new ArrayList<>(shardsCoveredUntil.length);
+            for (Instant until : shardsCoveredUntil) {
+                coveredUntil.add(until == null ? null : until.toString());
+            }
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("runs", runs);
+            map.put("totalSnapshots", totalSnapshots);
+            map.put("lastRunPatients", lastRunPatients);
+            map.put("lastRunAt", lastRunAt == null ? null : lastRunAt.toString());
+            map.put("lastRunMillis", lastRunNanos / 1_000_000.0);
+            map.put("coveredUntil", coveredUntil);
+            return map;
+        }
+    }
+}
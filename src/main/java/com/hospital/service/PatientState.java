@@ -0,0 +1,185 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.MedicationOrderStatus;
+import com.hospital.persistence.entity.OperationType;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * State of one patient and its medication orders, folded from completed operations.
+ *
+ * Every operation response carries the full resulting state of what it touched (the patient's
+ * discharge or one order), so applying an operation means overwriting that part: the last
+ * operation wins, and replaying the same operation twice changes nothing.
+ */
+public final class PatientState {
+
+    private final String patientId;
+    private boolean discharged;
+    private Instant dischargedAt;
+    private final Map<String, Order> orders = new TreeMap<>();
+
+    private Instant snapshotAt;
+    private int replayedOperations;
+    private Instant lastChangeAt;
+
+    PatientState(String patientId) {
+        this.patientId = patientId;
+    }
+
+    /**
+     * Rebuilds the state stored in a snapshot that covers operations up to coveredUntil.
+     */
+    static PatientState fromSnapshot(String patientId, String stateJson, Instant coveredUntil) {
+        PatientState state = new PatientState(patientId);
+        JsonObject json = parse(stateJson);
+        state.discharged = json.getBoolean("discharged", false);
+        state.dischargedAt = instant(json, "dischargedAt");
+        state.lastChangeAt = instant(json, "lastChangeAt");
+        for (Map.Entry<String, JsonValue> entry : json.getJsonObject("orders").entrySet()) {
+            JsonObject order = entry.getValue().asJsonObject();
+            state.orders.put(entry.getKey(), new Order(entry.getKey(),
+                    MedicationOrderStatus.valueOf(order.getString("status")),
+                    order.getString("signedBy", null),
+                    instant(order, "signedAt")));
+        }
+        state.snapshotAt = coveredUntil;
+        return state;
+    }
+
+    /**
+     * Applies the stored response of a completed operation that finished at completedAt.
+     */
+    void apply(OperationType type, String responseJson, Instant completedAt) {
+        JsonObject response = parse(responseJson);
+        switch (type) {
+            case DISCHARGE_PATIENT, UNDO_DISCHARGE_PATIENT -> {
+                discharged = response.getBoolean("discharged", false);
+                dischargedAt = instant(response, "dischargedAt");
+            }
+            case SIGN_MEDICATION_ORDER, UNDO_SIGN_MEDICATION_ORDER -> {
+                String orderId = response.getString("orderId");
+                orders.put(orderId, new Order(orderId,
+                        MedicationOrderStatus.valueOf(response.getString("status")),
+                        response.getString("signedBy", null),
+                        instant(response, "signedAt")));
+            }
+        }
+        replayedOperations++;
+        lastChangeAt = completedAt;
+    }
+
+    /**
+     * Compact form stored in patient_snapshots.state_json.
+     */
+    String toJson() {
+        JsonObjectBuilder ordersJson = Json.createObjectBuilder();
+        for (Order order : orders.values()) {
+            JsonObjectBuilder orderJson = Json.createObjectBuilder().add("status", order.status.name());
+            addIfSet(orderJson, "signedBy", order.signedBy);
+            addIfSet(orderJson, "signedAt", order.signedAt);
+            ordersJson.add(order.orderId, orderJson);
+        }
+        JsonObjectBuilder json = Json.createObjectBuilder().add("discharged", discharged);
+        addIfSet(json, "dischargedAt", dischargedAt);
+        addIfSet(json, "lastChangeAt", lastChangeAt);
+        return json.add("orders", ordersJson).build().toString();
+    }
+
+    /**
+     * False if no operation ever touched the patient up to the queried time.
+     */
+    public boolean isKnown() {
+        return lastChangeAt != null;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public boolean isDischarged() {
+        return discharged;
+    }
+
+    public Instant getDischargedAt() {
+        return dischargedAt;
+    }
+
+    public Collection<Order> getOrders() {
+        return orders.values();
+    }
+
+    /**
+     * coveredUntil of the snapshot the state was built from, null if it was replayed from the first operation.
+     */
+    public Instant getSnapshotAt() {
+        return snapshotAt;
+    }
+
+    public int getReplayedOperations() {
+        return replayedOperations;
+    }
+
+    public Instant getLastChangeAt() {
+        return lastChangeAt;
+    }
+
+    private static JsonObject parse(String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+
+    private static Instant instant(JsonObject json, String name) {
+        String value = json.getString(name, null);
+        return value == null ? null : Instant.parse(value);
+    }
+
+    private static void addIfSet(JsonObjectBuilder json, String name, Object value) {
+        if (value != null) {
+            json.add(name, value.toString());
+        }
+    }
+
+    /**
+     * One medication order of the patient.
+     */
+    public static final class Order {
+        private final String orderId;
+        private final MedicationOrderStatus status;
+        private final String signedBy;
+        private final Instant signedAt;
+
+        Order(String orderId, MedicationOrderStatus status, String signedBy, Instant signedAt) {
+            this.orderId = orderId;
+            this.status = status;
+            this.signedBy = signedBy;
+            this.signedAt = signedAt;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public MedicationOrderStatus getStatus() {
+            return status;
+        }
+
+        public String getSignedBy() {
+            return signedBy;
+        }
+
+        public Instant getSignedAt() {
+            return signedAt;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.shard.Shards;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory cache of COMPLETED operations keyed by Idempotency-Key.
+ *
+ * With several shards an Idempotency-Key is unique per shard (the operations table of each shard has
+ * its own unique index), so entries are keyed by the shard of the operation's patient and the key:
+ * a key reused for a patient on another shard is a different operation whether it is cached or not.
+ *
+ * Ward tablets retry a lot during network blips; those retries are answered from here
+ * without running the findByIdempotencyKey query. Entries leave the cache when it is full
+ * (least recently used first) or when they are older than the TTL.
+ *
+ * The database stays the source of truth: a miss always falls back to the operations table.
+ */
+@ApplicationScoped
+public class ReplayCache {
+
+    static final String MAX_ENTRIES_PROPERTY = "hospital.replay-cache.max-entries";
+    static final String TTL_SECONDS_PROPERTY = "hospital.replay-cache.ttl-seconds";
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final int shards;
+
+    // access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ReplayCache() {
+        this(HospitalProperties.intValue(MAX_ENTRIES_PROPERTY, 10_000),
+                TimeUnit.SECONDS.toNanos(HospitalProperties.longValue(TTL_SECONDS_PROPERTY, 600)),
+                System::nanoTime);
+    }
+
+    ReplayCache(int maxEntries, long ttlNanos, LongSupplier nanoClock) {
+        this(maxEntries, ttlNanos, nanoClock, Shards.count());
+    }
+
+    ReplayCache(int maxEntries, long ttlNanos, LongSupplier nanoClock, int shards) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must be >= 0");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+        this.shards = shards;
+    }
+
+    /**
+     * Key an operation is cached (and run single-flight, see OperationService) under: the
+     * Idempotency-Key, prefixed with the shard of the patient in the uri when there are several.
+     */
+    public String scopedKey(String idempotencyKey, String uri) {
+        return shards == 1 ? idempotencyKey : onShard(Shards.shardOfUri(uri, shards), idempotencyKey);
+    }
+
+    private String onShard(int shard, String idempotencyKey) {
+        return shards == 1 ? idempotencyKey : shard + "/" + idempotencyKey;
+    }
+
+    /**
+     * @param uri operation uri of the request, which decides the shard the key belongs to
+     * @return the cached operation, or null if the key is unknown or its entry expired
+     */
+    public CompletedOperation get(String idempotencyKey, String uri) {
+        String key = scopedKey(idempotencyKey, uri);
+        long now = nanoClock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.insertedAt < ttlNanos) {
+                hits.increment();
+                return entry.operation;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(CompletedOperation operation) {
+        if (maxEntries == 0) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        synchronized (entries) {
+            entries.put(scopedKey(operation.getIdempotencyKey(), operation.getUri()), new Entry(operation, now));
+            evictOverflow(now);
+        }
+    }
+
+    public void invalidate(String idempotencyKey, String uri) {
+        remove(scopedKey(idempotencyKey, uri));
+    }
+
+    /**
+     * Drops the entry of a key stored on the given shard, e.g. after retention purged its row there.
+     */
+    public void invalidateOnShard(int shard, String idempotencyKey) {
+        remove(onShard(shard, idempotencyKey));
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(size, maxEntries, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private void evictOverflow(long now) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            boolean expired = now - eldest.insertedAt >= ttlNanos;
+            if (!expired && entries.size() <= maxEntries) {
+                break;
+            }
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry {
+        final CompletedOperation operation;
+        final long insertedAt;
+
+        Entry(CompletedOperation operation, long insertedAt) {
+            this.operation = operation;
+            this.insertedAt = insertedAt;
+        }
+    }
+
+    public static final class Stats {
+        private final int size;
+        private final int maxEntries;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Stats(int size, int maxEntries, long hits, long misses, long evictions) {
+            this.size = size;
+            this.maxEntries = maxEntries;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getSize() { return size; }
+
+        public int getMaxEntries() { return maxEntries; }
+
+        public long getHits() { return hits; }
+
+        public long getMisses() { return misses; }
+
+        public long getEvictions() { return evictions; }
+
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+}
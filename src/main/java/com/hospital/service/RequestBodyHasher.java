@@ -0,0 +1,191 @@
+package com.hospital.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of request bodies without per-request digest lookups or full-body copies.
+ *
+ * Each thread keeps its own MessageDigest and scratch buffer, so hashing a canonical
+ * JSON string encodes it chunk by chunk straight into the digest. Raw bodies can be
+ * hashed while they are being read through {@link #digesting(InputStream)}.
+ *
+ * Results are the 32-byte binary hash; hex is only produced where it is stored.
+ */
+public final class RequestBodyHasher {
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final MessageDigest PROTOTYPE = newSha256();
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private RequestBodyHasher() {
+    }
+
+    public static byte[] hash(byte[] body) {
+        MessageDigest digest = STATE.get().digest;
+        digest.reset();
+        return digest.digest(body);
+    }
+
+    /**
+     * Same result as hashing {@code body.getBytes(UTF_8)}, without materializing that array.
+     * Characters are UTF-8 encoded into a per-thread 8 KB buffer that is flushed into the digest.
+     */
+    public static byte[] hash(CharSequence body) {
+        State state = STATE.get();
+        MessageDigest digest = state.digest;
+        byte[] buf = state.buffer;
+        digest.reset();
+
+        int pos = 0;
+        int length = body.length();
+        int i = 0;
+        while (i < length) {
+            // tight loop for the ASCII runs that make up almost all clinical JSON
+            int asciiEnd = Math.min(length, i + buf.length - pos);
+            char c;
+            while (i < asciiEnd && (c = body.charAt(i)) < 0x80) {
+                buf[pos++] = (byte) c;
+                i++;
+            }
+            if (pos > buf.length - 4) {
+                digest.update(buf, 0, pos);
+                pos = 0;
+            }
+            if (i == asciiEnd) {
+                continue;
+            }
+            c = body.charAt(i);
+            if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < length ? body.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int cp = Character.toCodePoint(c, low);
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                    i++;
+                } else {
+                    // unpaired surrogate, String.getBytes(UTF_8) writes '?'
+                    buf[pos++] = '?';
+                }
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            i++;
+        }
+        digest.update(buf, 0, pos);
+        return digest.digest();
+    }
+
+    /**
+     * Wraps a body stream so every byte read is also fed to a SHA-256 digest.
+     * Call {@link DigestingInputStream#hash()} once the stream has been fully read.
+     */
+    public static DigestingInputStream digesting(InputStream in) {
+        return new DigestingInputStream(in, cloneDigest());
+    }
+
+    private static MessageDigest cloneDigest() {
+        try {
+            return (MessageDigest) PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            return newSha256();
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class State {
+        final MessageDigest digest = cloneDigest();
+        final byte[] buffer = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Pass-through stream that digests what the consumer reads. Not thread-safe,
+     * it belongs to the request that is reading the body.
+     */
+    public static final class DigestingInputStream extends FilterInputStream {
+
+        private final MessageDigest digest;
+        private long bytesRead;
+        private byte[] hash;
+
+        private DigestingInputStream(InputStream in, MessageDigest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                digest.update(b, off, n);
+                bytesRead += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must still be hashed
+            byte[] scratch = new byte[(int) Math.min(n, CHUNK_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+                if (r < 0) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return the hash of all bytes read so far; the digest is finished on the first call
+         */
+        public byte[] hash() {
+            if (hash == null) {
+                hash = digest.digest();
+            }
+            return hash;
+        }
+    }
+}
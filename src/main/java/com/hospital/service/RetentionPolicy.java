@@ -0,0 +1,55 @@
+package com.hospital.service;
+
+import com.hospital.config.HospitalProperties;
+import com.hospital.persistence.entity.OperationType;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * How long operations stay in the idempotency log before the sweeper may delete them.
+ *
+ * A retry with the same Idempotency-Key after this window is treated as a new request,
+ * so the window must be longer than any client's offline retry horizon.
+ *
+ * The operation log is also the audit history that search, export and point-in-time queries
+ * read, so nothing is deleted unless a window is configured. In hours, globally and per type:
+ *     -Dhospital.retention.hours=720
+ *     -Dhospital.retention.hours.SIGN_MEDICATION_ORDER=2160
+ * A value of 0 (the default) keeps that type forever.
+ */
+public final class RetentionPolicy {
+
+    static final String HOURS_PROPERTY = "hospital.retention.hours";
+
+    private final Map<OperationType, Duration> windows = new EnumMap<>(OperationType.class);
+
+    public RetentionPolicy() {
+        long defaultHours = HospitalProperties.longValue(HOURS_PROPERTY, 0);
+        for (OperationType type : OperationType.values()) {
+            long hours = HospitalProperties.longValue(HOURS_PROPERTY + "." + type.name(), defaultHours);
+            if (hours > 0) {
+                windows.put(type, Duration.ofHours(hours));
+            }
+        }
+    }
+
+    RetentionPolicy(Map<OperationType, Duration> windows) {
+        this.windows.putAll(windows);
+    }
+
+    /**
+     * True if no type has a window, so there is nothing to sweep.
+     */
+    public boolean keepsEverything() {
+        return windows.isEmpty();
+    }
+
+    /**
+     * @return the retention window, or null if operations of this type are kept forever
+     */
+    public Duration windowFor(OperationType type) {
+        return windows.get(type);
+    }
+}
@@ -0,0 +1,27 @@
+package com.hospital.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs a piece of work inside a JTA transaction.
+ *
+ * Used where the caller has to decide at runtime how work is grouped into transactions
+ * (e.g. group commit), which an annotation on the caller's own method cannot express.
+ * Runtime exceptions roll the transaction back and are rethrown.
+ */
+@ApplicationScoped
+public class TransactionRunner {
+
+    @Transactional
+    public <T> T required(Supplier<T> work) {
+        return work.get();
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public <T> T requiresNew(Supplier<T> work) {
+        return work.get();
+    }
+}
@@ -0,0 +1,132 @@
+package com.hospital.api.idempotency;
+
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.service.OperationService;
+import com.hospital.service.RequestBodyHasher;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * IdempotencyFilter without a JAX-RS runtime: request context, resource info and OperationService are mocked.
+ */
+class IdempotencyFilterTest {
+
+    private static final String URI_PATH = "/patients/42/orders/o-1/sign";
+
+    IdempotencyFilter filter;
+    ContainerRequestContext context;
+    OperationService operationService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        operationService = mock(OperationService.class);
+        ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        doReturn(Endpoints.class.getDeclaredMethod("sign")).when(resourceInfo).getResourceMethod();
+
+        filter = new IdempotencyFilter();
+        filter.resourceInfo = resourceInfo;
+        filter.operationService = operationService;
+        filter.request = new IdempotentRequest();
+
+        context = mock(ContainerRequestContext.class);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPath()).thenReturn(URI_PATH);
+        when(context.getUriInfo()).thenReturn(uriInfo);
+        when(context.getMethod()).thenReturn("POST");
+        when(context.getHeaderString("Idempotency-Key")).thenReturn("key-1");
+    }
+
+    @Test
+    void filter_withoutKey_answers400() throws Exception {
+        when(context.getHeaderString("Idempotency-Key")).thenReturn(" ");
+
+        filter.filter(context);
+
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(context).abortWith(response.capture());
+        assertEquals(400, response.getValue().getStatus());
+        verifyNoInteractions(operationService);
+    }
+
+    @Test
+    void filter_hashesTheBodyOnceAndHandsTheSameBytesOnToTheResource() throws Exception {
+        byte[] body = "{\"clinicianId\": \"dr.house\"}".getBytes(StandardCharsets.UTF_8);
+        when(context.hasEntity()).thenReturn(true);
+        when(context.getEntityStream()).thenReturn(new ByteArrayInputStream(body));
+
+        filter.filter(context);
+
+        ArgumentCaptor<InputStream> entity = ArgumentCaptor.forClass(InputStream.class);
+        verify(context).setEntityStream(entity.capture());
+        assertArrayEquals(body, entity.getValue().readAllBytes());
+        verify(context, never()).abortWith(any());
+
+        IdempotentRequest request = filter.request;
+        assertEquals(OperationType.SIGN_MEDICATION_ORDER, request.getType());
+        assertEquals("key-1", request.getIdempotencyKey());
+        assertEquals("/v1" + URI_PATH, request.getUri());
+        assertEquals(new String(body, StandardCharsets.UTF_8), request.getRequestJson());
+        verify(operationService).replayFromCache(eq(OperationType.SIGN_MEDICATION_ORDER), eq("key-1"), eq("POST"),
+                eq("/v1" + URI_PATH), aryEq(RequestBodyHasher.hash(body)));
+    }
+
+    @Test
+    void filter_withContentLength_readsExactlyThatBody() throws Exception {
+        byte[] body = "{\"clinicianId\":\"dr.wilson\"}".getBytes(StandardCharsets.UTF_8);
+        when(context.hasEntity()).thenReturn(true);
+        when(context.getLength()).thenReturn(body.length);
+        when(context.getEntityStream()).thenReturn(new ByteArrayInputStream(body));
+
+        filter.filter(context);
+
+        ArgumentCaptor<InputStream> entity = ArgumentCaptor.forClass(InputStream.class);
+        verify(context).setEntityStream(entity.capture());
+        assertArrayEquals(body, entity.getValue().readAllBytes());
+        assertEquals(new String(body, StandardCharsets.UTF_8), filter.request.getRequestJson());
+        verify(operationService).replayFromCache(any(), anyString(), anyString(), anyString(),
+                aryEq(RequestBodyHasher.hash(body)));
+    }
+
+    @Test
+    void filter_whenReplayIsCached_answersWithoutReachingTheResource() throws Exception {
+        Response stored = Response.ok("{\"stored\":true}").build();
+        when(operationService.replayFromCache(any(), anyString(), anyString(), anyString(), any())).thenReturn(stored);
+
+        filter.filter(context);
+
+        verify(context).abortWith(stored);
+        assertNull(filter.request.getType());
+    }
+
+    @Test
+    void filter_withEmptyBody_storesTheEmptyObject() throws Exception {
+        when(context.hasEntity()).thenReturn(true);
+        when(context.getEntityStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        filter.filter(context);
+
+        assertEquals("{}", filter.request.getRequestJson());
+        verify(operationService).replayFromCache(any(), anyString(), anyString(), anyString(),
+                aryEq(RequestBodyHasher.hash("{}")));
+    }
+
+    static class Endpoints {
+        @Idempotent(type = OperationType.SIGN_MEDICATION_ORDER)
+        void sign() {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hospital.persistence;
+
+import com.hospital.persistence.entity.MedicationOrderEntity;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.PatientEntity;
+import com.hospital.persistence.entity.PatientSnapshotEntity;
+import com.hospital.persistence.migration.SchemaMigrations;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Function;
+
+/**
+ * The real mapping on an in-memory H2 migrated with the server's changelog, for tests of the
+ * native and bulk SQL a mocked EntityManager cannot check. Transactions are resource local.
+ */
+public final class H2Persistence implements AutoCloseable {
+
+    private final Connection keepAlive;
+    private final StandardServiceRegistry registry;
+    private final SessionFactory sessionFactory;
+
+    public H2Persistence(String databaseName) throws SQLException {
+        String url = "jdbc:h2:mem:" + databaseName + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "sa");
+        SchemaMigrations.migrate(keepAlive);
+
+        registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.connection.url", url)
+                .applySetting("hibernate.connection.username", "sa")
+                .applySetting("hibernate.connection.password", "sa")
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(OperationEntity.class)
+                .addAnnotatedClass(PatientEntity.class)
+                .addAnnotatedClass(MedicationOrderEntity.class)
+                .addAnnotatedClass(PatientSnapshotEntity.class)
+                .buildMetadata()
+                .buildSessionFactory();
+    }
+
+    /**
+     * Runs the work in its own EntityManager and transaction, and commits.
+     */
+    public <T> T inTransaction(Function<EntityManager, T> work) {
+        try (EntityManager em = sessionFactory.createEntityManager()) {
+            EntityTransaction tx = em.getTransaction();
+            tx.begin();
+            try {
+                T result = work.apply(em);
+                tx.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+    }
+}
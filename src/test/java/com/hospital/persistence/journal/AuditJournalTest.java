@@ -0,0 +1,164 @@
+package com.hospital.persistence.journal;
+
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the memory-mapped audit journal, using real segment files in a temp directory.
+ */
+class AuditJournalTest {
+
+    @TempDir
+    Path dir;
+
+    AuditJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void append_thenRead_returnsFullRecord() {
+        journal = open(1024 * 1024);
+        OperationEntity op = operation("key-1", "{\"done\":true}");
+        op.setAttempts(2);
+        Instant startedAt = op.getCreatedAt().plusMillis(5);
+        Instant finishedAt = startedAt.plusMillis(20);
+
+        long position = journal.append(JournalRecord.operation(op, startedAt, finishedAt));
+        JournalRecord read = journal.read(position);
+
+        assertEquals(JournalRecord.Kind.OPERATION, read.getKind());
+        assertEquals(op.getOperationId(), read.getOperationId());
+        assertEquals("key-1", read.getIdempotencyKey());
+        assertEquals(OperationStatus.COMPLETED, read.getStatus());
+        assertEquals("{\"done\":true}", read.getResponseJson());
+        assertEquals("{}", read.getRequestJson());
+        assertEquals(op.getCreatedAt(), read.getReceivedAt());
+        assertEquals(startedAt, read.getStartedAt());
+        assertEquals(finishedAt, read.getFinishedAt());
+        assertEquals(2, read.getAttempt());
+    }
+
+    @Test
+    void decode_ofARecordWithoutAttempt_asJournalledBeforeAttemptsWereTracked() {
+        OperationEntity op = operation("key-old", "{}");
+        byte[] payload = JournalRecord.operation(op, Instant.now(), Instant.now()).encode();
+
+        // startedAt (8 + 4 bytes) and attempt (4 bytes) are the last fields
+        JournalRecord read = JournalRecord.decode(Arrays.copyOf(payload, payload.length - 16));
+
+        assertEquals("key-old", read.getIdempotencyKey());
+        assertEquals("{}", read.getResponseJson());
+        assertNull(read.getStartedAt());
+        assertEquals(0, read.getAttempt());
+    }
+
+    @Test
+    void reopen_afterSegmentRoll_replaysAllRecordsInOrder() {
+        journal = open(4096);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            OperationEntity op = operation("key-" + i, "{\"i\":" + i + "}");
+            ids.add(op.getOperationId());
+            journal.append(JournalRecord.operation(op, Instant.now(), Instant.now()));
+        }
+        journal.close();
+
+        journal = open(4096);
+        List<UUID> replayed = new ArrayList<>();
+        journal.forEach((position, record) -> replayed.add(record.getOperationId()));
+
+        assertEquals(ids, replayed);
+        assertTrue((int) journal.stats().get("segments") > 1, "small segments must have rolled over");
+    }
+
+    @Test
+    void reopen_withTornTail_stopsAtLastValidRecordAndKeepsAppending() throws Exception {
+        journal = open(1024 * 1024);
+        long first = journal.append(JournalRecord.committed(UUID.randomUUID()));
+        long second = journal.append(JournalRecord.committed(UUID.randomUUID()));
+        journal.close();
+
+        // corrupt one payload byte of the second record, as a crash mid-write would
+        try (FileChannel channel = FileChannel.open(JournalSegment.fileName(dir, 0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), (int) second + JournalSegment.ENTRY_HEADER_SIZE + 3);
+        }
+
+        journal = open(1024 * 1024);
+        List<Long> positions = new ArrayList<>();
+        journal.forEach((position, record) -> positions.add(position));
+        assertEquals(List.of(first), positions);
+
+        long third = journal.append(JournalRecord.aborted(UUID.randomUUID()));
+        assertEquals(second, third, "the torn entry is overwritten");
+    }
+
+    @Test
+    void append_fromConcurrentThreads_sharesFsyncBatches() throws Exception {
+        journal = open(8 * 1024 * 1024);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                OperationEntity op = operation("key-" + i, "{}");
+                futures.add(pool.submit(
+                        () -> journal.append(JournalRecord.operation(op, Instant.now(), Instant.now()))));
+            }
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<String, Object> stats = journal.stats();
+        assertEquals(2_000L, stats.get("records"));
+        assertTrue((long) stats.get("fsyncBatches") <= 2_000L);
+    }
+
+    private AuditJournal open(int segmentSize) {
+        AuditJournal journal = new AuditJournal(true, dir, segmentSize);
+        journal.open();
+        return journal;
+    }
+
+    private static OperationEntity operation(String key, String responseJson) {
+        OperationEntity op = new OperationEntity();
+        op.setOperationId(UUID.randomUUID());
+        op.setIdempotencyKey(key);
+        op.setMethod("POST");
+        op.setUri("/v1/patients/1/discharge");
+        op.setBodyHash("hash");
+        op.setType(OperationType.DISCHARGE_PATIENT);
+        op.setStatus(OperationStatus.COMPLETED);
+        op.setHttpStatus(200);
+        op.setRequestJson("{}");
+        op.setResponseJson(responseJson);
+        op.setCreatedAt(Instant.now());
+        return op;
+    }
+}
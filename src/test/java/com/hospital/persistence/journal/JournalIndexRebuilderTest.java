@@ -0,0 +1,95 @@
+package com.hospital.persistence.journal;
+
+import com.hospital.persistence.H2Persistence;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.entity.PatientSnapshotEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rebuilding index rows from a real journal into a real H2.
+ */
+class JournalIndexRebuilderTest {
+
+    private static final Instant RECEIVED = Instant.parse("2025-12-14T08:00:00Z");
+    private static final Instant FINISHED = RECEIVED.plus(250, ChronoUnit.MILLIS);
+
+    @TempDir
+    Path dir;
+
+    private H2Persistence db;
+    private AuditJournal journal;
+    private final JournalIndexRebuilder rebuilder = new JournalIndexRebuilder();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new H2Persistence("rebuilder");
+        journal = new AuditJournal(true, dir, 1024 * 1024);
+        journal.open();
+        rebuilder.journal = journal;
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        journal.close();
+        db.close();
+    }
+
+    @Test
+    void rebuild_keepsTheCompletionTime_andDropsSnapshotsTakenWithoutTheOperation() {
+        OperationEntity op = new OperationEntity();
+        op.setOperationId(UUID.randomUUID());
+        op.setIdempotencyKey("key-1");
+        op.setMethod("POST");
+        op.setUri("/v1/patients/42/discharge");
+        op.setBodyHash("hash");
+        op.setType(OperationType.DISCHARGE_PATIENT);
+        op.setStatus(OperationStatus.COMPLETED);
+        op.setHttpStatus(200);
+        op.setResponseJson("{\"patientId\":\"42\",\"discharged\":true}");
+        op.setCreatedAt(RECEIVED);
+        long position = journal.append(JournalRecord.operation(op, RECEIVED, FINISHED));
+        snapshot(FINISHED.minusSeconds(60));
+        snapshot(FINISHED.plusSeconds(60));
+
+        int inserted = db.inTransaction(em -> {
+            rebuilder.em = em;
+            return rebuilder.rebuild(Map.of(op.getOperationId(), position));
+        });
+
+        assertEquals(1, inserted);
+        OperationEntity rebuilt = db.inTransaction(em -> em.find(OperationEntity.class, op.getOperationId()));
+        assertEquals(RECEIVED, rebuilt.getCreatedAt());
+        assertEquals(FINISHED, rebuilt.getUpdatedAt(), "history orders by the completion time");
+        assertEquals("42", rebuilt.getPatientId());
+        List<Instant> covered = db.inTransaction(em -> em.createQuery(
+                "SELECT s.coveredUntil FROM PatientSnapshotEntity s", Instant.class).getResultList());
+        assertEquals(List.of(FINISHED.minusSeconds(60)), covered);
+    }
+
+    private void snapshot(Instant coveredUntil) {
+        db.inTransaction(em -> {
+            PatientSnapshotEntity snapshot = new PatientSnapshotEntity();
+            snapshot.setPatientId("42");
+            snapshot.setCoveredUntil(coveredUntil);
+            snapshot.setStateJson("{}");
+            snapshot.setOperations(1);
+            em.persist(snapshot);
+            return null;
+        });
+    }
+}
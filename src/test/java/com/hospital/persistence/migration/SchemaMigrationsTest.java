@@ -0,0 +1,100 @@
+package com.hospital.persistence.migration;
+
+import com.hospital.persistence.entity.MedicationOrderEntity;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.PatientEntity;
+import com.hospital.persistence.entity.PatientSnapshotEntity;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the changelog against an in-memory H2 (same mode as the server) and checks the result
+ * against the JPA mapping, so entity changes without a migration fail here.
+ */
+class SchemaMigrationsTest {
+
+    @Test
+    void migrate_createsSchemaMatchingEntityMapping() throws SQLException {
+        String url = "jdbc:h2:mem:migrations-mapping;MODE=MySQL;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "sa")) {
+            SchemaMigrations.migrate(connection);
+
+            StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                    .applySetting("hibernate.connection.url", url)
+                    .applySetting("hibernate.connection.username", "sa")
+                    .applySetting("hibernate.connection.password", "sa")
+                    .applySetting("hibernate.hbm2ddl.auto", "validate")
+                    .build();
+            try {
+                Metadata metadata = new MetadataSources(registry)
+                        .addAnnotatedClass(OperationEntity.class)
+                        .addAnnotatedClass(PatientEntity.class)
+                        .addAnnotatedClass(MedicationOrderEntity.class)
+                        .addAnnotatedClass(PatientSnapshotEntity.class)
+                        .buildMetadata();
+                assertDoesNotThrow(() -> metadata.buildSessionFactory().close());
+            } finally {
+                StandardServiceRegistryBuilder.destroy(registry);
+            }
+
+            Set<String> indexes = indexNames(connection);
+            assertTrue(indexes.contains("IDX_OPERATIONS_TYPE_CREATED"));
+            assertTrue(indexes.contains("IDX_OPERATIONS_TYPE_STATUS_CREATED"));
+            assertTrue(indexes.contains("IDX_OPERATIONS_STATUS_CREATED"));
+            assertTrue(indexes.contains("IDX_OPERATIONS_CREATED"));
+            assertTrue(indexes.contains("IDX_MEDICATION_ORDER_PATIENT"));
+            assertTrue(indexes.contains("IDX_OPERATIONS_PATIENT_UPDATED"));
+            assertTrue(indexes.contains("IDX_OPERATIONS_STATUS_UPDATED"));
+            assertTrue(indexes.contains("IDX_PATIENT_SNAPSHOTS_PATIENT_COVERED"));
+        }
+    }
+
+    @Test
+    void migrate_isIncrementalAndKeepsData() throws SQLException {
+        String url = "jdbc:h2:mem:migrations-restart;MODE=MySQL;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "sa")) {
+            SchemaMigrations.migrate(connection);
+            int changesets = count(connection, "SELECT COUNT(*) FROM DATABASECHANGELOG");
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO patient (patient_id, discharged, version) VALUES ('p1', false, 0)");
+            }
+
+            // a restart: nothing to apply, nothing lost
+            SchemaMigrations.migrate(connection);
+
+            assertEquals(changesets, count(connection, "SELECT COUNT(*) FROM DATABASECHANGELOG"));
+            assertEquals(1, count(connection, "SELECT COUNT(*) FROM patient"));
+        }
+    }
+
+    private static int count(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(sql)) {
+            rows.next();
+            return rows.getInt(1);
+        }
+    }
+
+    private static Set<String> indexNames(Connection connection) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES")) {
+            while (rows.next()) {
+                names.add(rows.getString(1).toUpperCase());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,106 @@
+package com.hospital.persistence.shard;
+
+import com.hospital.persistence.migration.SchemaMigrations;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Splits a one-shard H2 database into two and checks every row ends up on its patient's shard.
+ */
+class ShardRebalancerTest {
+
+    @TempDir
+    Path data;
+
+    @Test
+    void rebalance_splitMovesRowsToTheirShard_andIsRepeatable() throws SQLException {
+        int patients = 120;
+        try (Connection connection = open(0)) {
+            SchemaMigrations.migrate(connection);
+            connection.setAutoCommit(true);
+            for (int i = 0; i < patients; i++) {
+                insertPatient(connection, "P-" + i);
+            }
+        }
+
+        // small batches so the keyset paging is exercised
+        Map<String, Long> dryRun = new ShardRebalancer(data.toString(), 7, true).rebalance(1, 2);
+        Map<String, Long> moved = new ShardRebalancer(data.toString(), 7, false).rebalance(1, 2);
+        assertEquals(dryRun, moved);
+        assertTrue(moved.get("patient") > 0);
+        assertEquals(moved.get("patient"), moved.get("operations"));
+        assertEquals(moved.get("patient"), moved.get("medication_order"));
+        assertEquals(moved.get("patient"), moved.get("patient_snapshots"));
+
+        int total = 0;
+        for (int shard = 0; shard < 2; shard++) {
+            try (Connection connection = open(shard); Statement statement = connection.createStatement()) {
+                try (ResultSet rows = statement.executeQuery("SELECT patient_id FROM patient")) {
+                    while (rows.next()) {
+                        assertEquals(shard, Shards.shardOf(rows.getString(1), 2));
+                        total++;
+                    }
+                }
+                try (ResultSet rows = statement.executeQuery("SELECT patient_id FROM patient_snapshots")) {
+                    while (rows.next()) {
+                        assertEquals(shard, Shards.shardOf(rows.getString(1), 2));
+                    }
+                }
+                try (ResultSet rows = statement.executeQuery("SELECT uri FROM operations")) {
+                    while (rows.next()) {
+                        assertEquals(shard, Shards.shardOfUri(rows.getString(1), 2));
+                    }
+                }
+            }
+        }
+        assertEquals(patients, total);
+
+        Map<String, Long> again = new ShardRebalancer(data.toString(), 7, false).rebalance(1, 2);
+        assertEquals(Map.of("patient", 0L, "medication_order", 0L, "patient_snapshots", 0L,
+                "operations", 0L), again);
+    }
+
+    private Connection open(int shard) throws SQLException {
+        return DriverManager.getConnection(ShardRebalancer.url(data.toString(), shard), "sa", "sa");
+    }
+
+    private static void insertPatient(Connection connection, String patientId) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO patient (patient_id, discharged, version) VALUES ('"
+                    + patientId + "', TRUE, 0)");
+            statement.executeUpdate("INSERT INTO medication_order (order_id, patient_id, status, version)"
+                    + " VALUES ('O-" + patientId + "', '" + patientId + "', 'SIGNED', 0)");
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO operations (operation_id, idempotency_key, method, uri, body_hash, type, status,"
+                        + " request_json, response_json, http_status, created_at, updated_at)"
+                        + " VALUES (?, ?, 'POST', ?, 'hash', 'DISCHARGE_PATIENT', 'COMPLETED', '{}', ?, 200,"
+                        + " CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)")) {
+            statement.setObject(1, UUID.randomUUID());
+            statement.setString(2, "key-" + patientId);
+            statement.setString(3, "/v1/patients/" + patientId + "/discharge");
+            statement.setString(4, "{\"patientId\":\"" + patientId + "\",\"discharged\":true}");
+            statement.executeUpdate();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO patient_snapshots (snapshot_id, patient_id, covered_until, state_json, operations,"
+                        + " created_at) VALUES (?, ?, CURRENT_TIMESTAMP, ?, 1, CURRENT_TIMESTAMP)")) {
+            statement.setObject(1, UUID.randomUUID());
+            statement.setString(2, patientId);
+            statement.setString(3, "{\"patientId\":\"" + patientId + "\",\"discharged\":true}");
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.hospital.persistence.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the patient to shard mapping.
+ */
+class ShardsTest {
+
+    @Test
+    void shardOf_spreadsPatientsEvenly() {
+        int[] patients = new int[4];
+        for (int i = 0; i < 40_000; i++) {
+            patients[Shards.shardOf("P-" + i, 4)]++;
+        }
+        for (int count : patients) {
+            assertTrue(count > 9_000 && count < 11_000, "uneven spread: " + count);
+        }
+    }
+
+    @Test
+    void shardOf_growingByOneShard_onlyMovesPatientsToTheNewShard() {
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String patientId = "P-" + i;
+            int before = Shards.shardOf(patientId, 2);
+            int after = Shards.shardOf(patientId, 3);
+            if (before != after) {
+                assertEquals(2, after);
+                moved++;
+            }
+        }
+        assertTrue(moved > 9_000 && moved < 11_000, "about a third should move: " + moved);
+    }
+
+    @Test
+    void shardOfUri_usesThePatientInTheUri() {
+        assertEquals(Shards.shardOf("P-17", 4), Shards.shardOfUri("/v1/patients/P-17/discharge", 4));
+        assertEquals(Shards.shardOf("P-17", 4), Shards.shardOfUri("/v1/patients/P-17/orders/O-1/sign", 4));
+        assertEquals(0, Shards.shardOfUri("/v1/other", 4));
+        assertEquals(0, Shards.shardOfUri(null, 4));
+    }
+
+    @Test
+    void onCurrentShard_withOneShard_keepsEveryPatient() {
+        List<String> patients = List.of("P-1", "P-2", "P-3");
+        assertSame(patients, Shards.onCurrentShard(patients));
+    }
+
+    @Test
+    void shardContext_restoresPreviousShard() {
+        assertEquals(0, ShardContext.current());
+        int inner = ShardContext.call(2, () -> ShardContext.call(3, ShardContext::current));
+        assertEquals(3, inner);
+        assertEquals(0, ShardContext.current());
+        assertThrows(IllegalStateException.class, () -> ShardContext.run(1, () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(0, ShardContext.current());
+    }
+}
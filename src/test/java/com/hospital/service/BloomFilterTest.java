@@ -0,0 +1,38 @@
+package com.hospital.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void mightContain_neverMissesAddedKeys() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("key-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("key-" + i), "key-" + i);
+        }
+    }
+
+    @Test
+    void mightContain_falsePositiveRateStaysNearTargetAtExpectedSize() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("known-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("new-" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = falsePositives / 100_000.0;
+        assertTrue(rate < 0.015, "false positive rate " + rate);
+        assertEquals(0.01, filter.estimatedFalsePositiveRate(), 0.005);
+        assertEquals(7, filter.hashFunctions());
+        assertTrue(filter.memoryBytes() < 125_000, "about 9.6 bits per key");
+    }
+}
@@ -0,0 +1,108 @@
+package com.hospital.service;
+
+import com.hospital.persistence.shard.ShardContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GroupCommitter batching and failure isolation.
+ * TransactionRunner is replaced by a counting fake, there is no real transaction.
+ */
+class GroupCommitterTest {
+
+    GroupCommitter committer;
+    AtomicInteger transactions = new AtomicInteger();
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        committer.stop();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void submit_whenOneItemFails_othersCommitAndFailureIsRetriedAlone() throws Exception {
+        committer = start(8, TimeUnit.MILLISECONDS.toNanos(200));
+        AtomicInteger badAttempts = new AtomicInteger();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int n = i;
+            results.add(callers.submit(() -> {
+                return committer.submit(() -> {
+                    if (n == 2) {
+                        badAttempts.incrementAndGet();
+                        throw new IllegalStateException("bad item");
+                    }
+                    return "ok-" + n;
+                });
+            }));
+        }
+
+        assertEquals("ok-0", results.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals("ok-1", results.get(1).get(5, TimeUnit.SECONDS));
+        assertEquals("ok-3", results.get(3).get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> results.get(2).get(5, TimeUnit.SECONDS));
+        assertEquals("bad item", failure.getCause().getMessage());
+
+        // the bad item ran in the shared batch and once more on its own
+        assertEquals(2, badAttempts.get());
+        assertTrue(transactions.get() < 4 + 2, "batching must use fewer transactions than items + retries");
+    }
+
+    @Test
+    void submit_singleItem_runsInItsOwnTransaction() {
+        committer = start(8, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertEquals("alone", committer.submit(() -> "alone"));
+        assertEquals(1, transactions.get());
+    }
+
+    @Test
+    void submit_itemsOfDifferentShards_commitInOneTransactionPerShard() throws Exception {
+        committer = start(8, TimeUnit.MILLISECONDS.toNanos(200));
+        CountDownLatch submitted = new CountDownLatch(4);
+
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int shard = i % 2;
+            results.add(callers.submit(() -> ShardContext.call(shard, () -> {
+                submitted.countDown();
+                return committer.submit(ShardContext::current);
+            })));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i % 2, results.get(i).get(5, TimeUnit.SECONDS), "work runs on the shard it was submitted from");
+        }
+        assertTrue(submitted.await(1, TimeUnit.SECONDS));
+        assertEquals(2, transactions.get());
+    }
+
+    private GroupCommitter start(int maxBatch, long windowNanos) {
+        GroupCommitter committer = new GroupCommitter(true, maxBatch, windowNanos);
+        committer.setTransactionRunner(new TransactionRunner() {
+            @Override
+            public <T> T required(Supplier<T> work) {
+                transactions.incrementAndGet();
+                return work.get();
+            }
+        });
+        committer.start(Executors.defaultThreadFactory());
+        return committer;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationFeedTest {
+
+    @Test
+    void read_returnsEventsAfterThePositionInOrder() {
+        OperationFeed feed = new OperationFeed(8);
+        AtomicInteger wakeups = new AtomicInteger();
+        feed.addListener(wakeups::incrementAndGet);
+
+        UUID operationId = UUID.randomUUID();
+        feed.publish(operationId, OperationType.DISCHARGE_PATIENT, "/v1/patients/42/discharge", 200,
+                "{\"patientId\":\"42\",\"discharged\":true}".getBytes(StandardCharsets.UTF_8));
+        publish(feed, 2);
+
+        List<OperationEvent> events = new ArrayList<>();
+        assertEquals(0, feed.read(0, 10, events));
+        assertEquals(List.of(1L, 2L, 3L), events.stream().map(OperationEvent::getSequence).toList());
+        assertEquals(3, wakeups.get());
+
+        OperationEvent first = events.get(0);
+        assertEquals(operationId, first.getOperationId());
+        assertEquals("42", first.getPatientId());
+        assertTrue(first.getData().startsWith("{\"operationId\":\"" + operationId + "\",\"type\":\"DISCHARGE_PATIENT\","
+                + "\"patientId\":\"42\",\"uri\":\"/v1/patients/42/discharge\",\"httpStatus\":200,"));
+        assertTrue(first.getData().endsWith(",\"response\":{\"patientId\":\"42\",\"discharged\":true}}"));
+
+        events.clear();
+        assertEquals(0, feed.read(2, 10, events));
+        assertEquals(List.of(3L), events.stream().map(OperationEvent::getSequence).toList());
+    }
+
+    @Test
+    void read_behindTheRing_skipsToTheOldestEventStillHeld() {
+        OperationFeed feed = new OperationFeed(4);
+        publish(feed, 10); // 7..10 are held
+
+        List<OperationEvent> events = new ArrayList<>();
+        long missed = feed.read(2, 10, events);
+
+        assertEquals(4, missed);
+        assertEquals(List.of(7L, 8L, 9L, 10L), events.stream().map(OperationEvent::getSequence).toList());
+        assertEquals(7L, feed.stats().get("oldestHeld"));
+    }
+
+    @Test
+    void sequenceOf_onlyAcceptsIdsOfThisFeed() {
+        OperationFeed feed = new OperationFeed(4);
+        publish(feed, 3);
+
+        assertEquals(2, feed.sequenceOf(feed.eventId(2)));
+        assertEquals(-1, feed.sequenceOf(feed.eventId(4))); // not published yet
+        assertEquals(-1, feed.sequenceOf("0-2"));
+        assertEquals(-1, feed.sequenceOf(feed.eventId(2) + "x"));
+        assertEquals(-1, feed.sequenceOf(null));
+    }
+
+    @Test
+    void publish_whenDisabled_keepsNothing() {
+        OperationFeed feed = new OperationFeed(0);
+        publish(feed, 3);
+
+        assertFalse(feed.isEnabled());
+        assertEquals(0, feed.latest());
+    }
+
+    private static void publish(OperationFeed feed, int count) {
+        for (int i = 0; i < count; i++) {
+            feed.publish(UUID.randomUUID(), OperationType.SIGN_MEDICATION_ORDER, "/v1/patients/7/orders/o" + i + "/sign",
+                    200, "{}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
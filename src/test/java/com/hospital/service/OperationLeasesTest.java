@@ -0,0 +1,106 @@
+package com.hospital.service;
+
+import com.hospital.persistence.H2Persistence;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The reaper queries against a real H2: expired leases and pending rows nobody retries.
+ */
+class OperationLeasesTest {
+
+    private H2Persistence db;
+    private final OperationLeases leases = new OperationLeases();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new H2Persistence("leases");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        db.close();
+    }
+
+    @Test
+    void reapExpired_releasesExpiredLeasesWithAttemptsLeft_andFailsTheLastOne() {
+        Instant expired = Instant.now().minusSeconds(5);
+        UUID retryable = insert("retryable", "node-a", expired, 1, Duration.ZERO);
+        UUID exhausted = insert("exhausted", "node-a", expired, 3, Duration.ZERO);
+        UUID live = insert("live", "node-a", Instant.now().plusSeconds(60), 1, Duration.ZERO);
+
+        OperationLeases.Reaped reaped = reap();
+
+        assertEquals(2, reaped.getScanned());
+        assertEquals(1, reaped.getReleased());
+        assertEquals(1, reaped.getFailed());
+        OperationEntity released = find(retryable);
+        assertEquals(OperationStatus.RECEIVED, released.getStatus());
+        assertNull(released.getLeaseOwner());
+        assertEquals(OperationStatus.FAILED, find(exhausted).getStatus());
+        assertEquals(500, find(exhausted).getHttpStatus());
+        assertEquals("node-a", find(live).getLeaseOwner());
+    }
+
+    @Test
+    void reapExpired_failsUnleasedOperationsNobodyRetried_andKeepsRecentOnes() {
+        UUID abandoned = insert("abandoned", null, null, 1, Duration.ofHours(25));
+        UUID recent = insert("recent", null, null, 1, Duration.ofHours(1));
+
+        OperationLeases.Reaped reaped = reap();
+
+        assertEquals(1, reaped.getFailed());
+        OperationEntity failed = find(abandoned);
+        assertEquals(OperationStatus.FAILED, failed.getStatus());
+        assertEquals(500, failed.getHttpStatus());
+        assertEquals("java.lang.IllegalStateException: boom", failed.getLastError(), "keeps the attempt's error");
+        assertEquals(1, failed.getAttempts());
+        assertEquals(OperationStatus.RECEIVED, find(recent).getStatus());
+    }
+
+    private OperationLeases.Reaped reap() {
+        return db.inTransaction(em -> {
+            leases.em = em;
+            return leases.reapExpired(10);
+        });
+    }
+
+    private UUID insert(String key, String leaseOwner, Instant leaseExpiresAt, int attempts, Duration age) {
+        UUID operationId = db.inTransaction(em -> {
+            OperationEntity op = new OperationEntity();
+            op.setIdempotencyKey(key);
+            op.setMethod("POST");
+            op.setUri("/v1/patients/42/discharge");
+            op.setBodyHash("hash");
+            op.setType(OperationType.DISCHARGE_PATIENT);
+            op.setStatus(OperationStatus.RECEIVED);
+            op.setLeaseOwner(leaseOwner);
+            op.setLeaseExpiresAt(leaseExpiresAt);
+            op.setAttempts(attempts);
+            op.setLastError("java.lang.IllegalStateException: boom");
+            em.persist(op);
+            return op.getOperationId();
+        });
+        // updated_at is stamped on every write, so age the row behind the entity's back
+        db.inTransaction(em -> em.createNativeQuery("UPDATE operations SET updated_at = ?1 WHERE operation_id = ?2")
+                .setParameter(1, Instant.now().minus(age))
+                .setParameter(2, operationId)
+                .executeUpdate());
+        return operationId;
+    }
+
+    private OperationEntity find(UUID operationId) {
+        return db.inTransaction(em -> em.find(OperationEntity.class, operationId));
+    }
+}
@@ -0,0 +1,121 @@
+package com.hospital.service;
+
+import com.hospital.persistence.H2Persistence;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retention batches against a real H2: which rows are deleted, and the keyset walk over them.
+ */
+class OperationPurgerTest {
+
+    private static final Instant CUTOFF = Instant.parse("2025-12-14T00:00:00Z");
+
+    private H2Persistence db;
+    private final OperationPurger purger = new OperationPurger();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new H2Persistence("purger");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        db.close();
+    }
+
+    @Test
+    void purgeBatch_deletesOnlyFinishedOperations_andKeepsInFlightOnes() {
+        Instant old = CUTOFF.minusSeconds(3600);
+        insert("completed", OperationStatus.COMPLETED, null, old);
+        insert("failed", OperationStatus.FAILED, null, old);
+        insert("received-leased", OperationStatus.RECEIVED, "node-a", old);
+        insert("processing-leased", OperationStatus.PROCESSING, "node-a", old);
+        insert("received-abandoned", OperationStatus.RECEIVED, null, old);
+
+        OperationPurger.Batch batch = purge(null, 10);
+
+        assertEquals(List.of("completed", "failed"), batch.getPurgedKeys().stream().sorted().toList());
+        assertEquals(List.of("processing-leased", "received-abandoned", "received-leased"), remainingKeys());
+    }
+
+    @Test
+    void purgeBatch_keepsOperationsNewerThanTheCutoff() {
+        insert("old", OperationStatus.COMPLETED, null, CUTOFF.minusSeconds(1));
+        insert("at-cutoff", OperationStatus.COMPLETED, null, CUTOFF);
+        insert("new", OperationStatus.FAILED, null, CUTOFF.plusSeconds(3600));
+
+        OperationPurger.Batch batch = purge(null, 10);
+
+        assertEquals(List.of("old"), batch.getPurgedKeys());
+        assertEquals(List.of("at-cutoff", "new"), remainingKeys());
+    }
+
+    @Test
+    void purgeBatch_continuesStrictlyAfterTheCursor() {
+        Instant old = CUTOFF.minusSeconds(3600);
+        for (int i = 0; i < 4; i++) {
+            insert("op-" + i, OperationStatus.COMPLETED, null, old.plusSeconds(i));
+        }
+        insert("tie-a", OperationStatus.COMPLETED, null, old.plusSeconds(10));
+        insert("tie-b", OperationStatus.COMPLETED, null, old.plusSeconds(10));
+        List<UUID> tieIds = db.inTransaction(em -> em.createQuery(
+                "SELECT o.operationId FROM OperationEntity o WHERE o.idempotencyKey LIKE 'tie-%'"
+                        + " ORDER BY o.operationId", UUID.class).getResultList());
+
+        OperationPurger.Batch first = purge(null, 2);
+        assertEquals(List.of("op-0", "op-1"), first.getPurgedKeys());
+
+        // same created_at as the cursor: only the larger operation id is after it
+        OperationPurger.Batch tie = purge(new OperationCursor(old.plusSeconds(10), tieIds.get(0)), 10);
+        assertEquals(1, tie.getPurgedKeys().size());
+        assertEquals(3, remainingKeys().size());
+
+        OperationPurger.Batch rest = purge(first.getNext(), 10);
+        assertEquals(3, rest.getPurgedKeys().size());
+        assertEquals(List.of("op-2", "op-3"), rest.getPurgedKeys().subList(0, 2));
+        assertTrue(remainingKeys().isEmpty());
+        assertTrue(purge(rest.getNext(), 10).getPurgedKeys().isEmpty());
+    }
+
+    private OperationPurger.Batch purge(OperationCursor after, int batchSize) {
+        return db.inTransaction(em -> {
+            purger.em = em;
+            return purger.purgeBatch(OperationType.DISCHARGE_PATIENT, CUTOFF, after, batchSize);
+        });
+    }
+
+    private void insert(String key, OperationStatus status, String leaseOwner, Instant createdAt) {
+        db.inTransaction(em -> {
+            OperationEntity op = new OperationEntity();
+            op.setIdempotencyKey(key);
+            op.setMethod("POST");
+            op.setUri("/v1/patients/42/discharge");
+            op.setBodyHash("hash");
+            op.setType(OperationType.DISCHARGE_PATIENT);
+            op.setStatus(status);
+            op.setLeaseOwner(leaseOwner);
+            op.setLeaseExpiresAt(leaseOwner == null ? null : Instant.now().plusSeconds(60));
+            op.setCreatedAt(createdAt);
+            em.persist(op);
+            return null;
+        });
+    }
+
+    private List<String> remainingKeys() {
+        return db.inTransaction(em -> em.createQuery(
+                "SELECT o.idempotencyKey FROM OperationEntity o ORDER BY o.idempotencyKey", String.class)
+                .getResultList());
+    }
+}
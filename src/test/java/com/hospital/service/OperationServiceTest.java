@@ -3,15 +3,34 @@ package com.hospital.service;
 import com.hospital.persistence.entity.OperationEntity;
 import com.hospital.persistence.entity.OperationStatus;
 import com.hospital.persistence.entity.OperationType;
+import com.hospital.persistence.journal.AuditJournal;
+import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.PessimisticLockException;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import jakarta.ws.rs.core.Response;
+import org.hibernate.query.NativeQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -28,6 +47,7 @@ class OperationServiceTest {
     OperationService operationService;
     EntityManager em;
     TypedQuery<OperationEntity> query;
+    OperationMetrics metrics;
 
     @BeforeEach
     void setUp() {
@@ -37,6 +57,15 @@ class OperationServiceTest {
         query = mock(TypedQuery.class);
 
         operationService.setEntityManager(em);
+        operationService.setReplayCache(new ReplayCache());
+        operationService.setAuditJournal(new AuditJournal()); // disabled by default
+        operationService.setTransactionRunner(new TransactionRunner()); // no interceptor, plain call
+        operationService.setGroupCommitter(new GroupCommitter()); // disabled by default
+        metrics = new OperationMetrics();
+        operationService.setMetrics(metrics);
+        operationService.setLeases(new OperationLeases());
+        operationService.setKnownKeys(new KnownKeyFilter());
+        operationService.setOperationFeed(new OperationFeed());
 
         when(em.createQuery(anyString(), eq(OperationEntity.class))).thenReturn(query);
         when(query.setParameter(anyString(), any())).thenReturn(query);
@@ -82,9 +111,60 @@ class OperationServiceTest {
         assertEquals(OperationStatus.COMPLETED, saved.getStatus());
         assertEquals(200, saved.getHttpStatus());
 
-        // HTTP response should be 200 and contain the business result
+        // HTTP response should be 200 and contain the business result, encoded once as JSON
         assertEquals(200, response.getStatus());
-        assertEquals(businessResult, response.getEntity());
+        assertArrayEquals(json("\"OK\""), (byte[]) response.getEntity());
+        assertEquals("\"OK\"", saved.getResponseJson());
+    }
+
+    @Test
+    void execute_publishesEachCompletedOperationOnceToTheFeed() {
+        when(query.getSingleResult()).thenThrow(new NoResultException());
+        OperationFeed feed = new OperationFeed(16);
+        operationService.setOperationFeed(feed);
+        String uri = "/v1/patients/42/discharge";
+
+        operationService.execute(OperationType.DISCHARGE_PATIENT, "key-f1", "POST", uri, "{}", () -> "OK");
+        operationService.execute(OperationType.DISCHARGE_PATIENT, "key-f1", "POST", uri, "{}", () -> "OK"); // replay
+        assertThrows(IllegalStateException.class, () -> operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-f2", "POST", uri, "{}", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        List<OperationEvent> events = new ArrayList<>();
+        feed.read(0, 10, events);
+        assertEquals(1, events.size());
+        assertEquals(OperationType.DISCHARGE_PATIENT, events.get(0).getType());
+        assertEquals("42", events.get(0).getPatientId());
+        assertTrue(events.get(0).getData().endsWith(",\"response\":\"OK\"}"));
+    }
+
+    @Test
+    void execute_recordsPhasesByTypeAndOutcome() {
+        when(query.getSingleResult()).thenThrow(new NoResultException());
+        String uri = "/v1/patients/42/discharge";
+
+        operationService.execute(OperationType.DISCHARGE_PATIENT, "key-m1", "POST", uri, "{}", () -> "OK");
+        operationService.execute(OperationType.DISCHARGE_PATIENT, "key-m1", "POST", uri, "{}", () -> "OK");
+        operationService.execute(OperationType.DISCHARGE_PATIENT, "key-m1", "POST", uri, "{\"x\":1}", () -> "OK");
+        assertThrows(IllegalStateException.class, () -> operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-m2", "POST", uri, "{}", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        String scrape = metrics.scrape();
+        String type = "type=\"DISCHARGE_PATIENT\"";
+        assertTrue(scrape.contains("hospital_operation_duration_seconds_count{" + type + ",outcome=\"executed\"} 1"));
+        assertTrue(scrape.contains("hospital_operation_duration_seconds_count{" + type + ",outcome=\"replayed\"} 1"));
+        assertTrue(scrape.contains("hospital_operation_duration_seconds_count{" + type + ",outcome=\"conflict\"} 1"));
+        assertTrue(scrape.contains("hospital_operation_duration_seconds_count{" + type + ",outcome=\"failed\"} 1"));
+        for (String phase : List.of("lookup", "persist", "business", "serialize", "commit")) {
+            assertTrue(scrape.contains("hospital_operation_phase_seconds_count{phase=\"" + phase + "\","
+                    + type + ",outcome=\"executed\"} 1"), phase);
+        }
+        // a replay from the cache never reaches the database phases
+        assertFalse(scrape.contains("phase=\"lookup\"," + type + ",outcome=\"replayed\""));
+        assertEquals(0, metrics.inFlight());
     }
 
     @Test
@@ -125,4 +205,441 @@ class OperationServiceTest {
         );
 
     }
+
+    @Test
+    void execute_whenRetriedAfterCompletion_isAnsweredFromReplayCacheWithoutQuery() {
+        when(query.getResultList()).thenReturn(List.of());
+
+        AtomicInteger businessLogicCalls = new AtomicInteger();
+
+        Response first = operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-789", "POST", "/v1/patients/7/discharge", "{}",
+                () -> {
+                    businessLogicCalls.incrementAndGet();
+                    return "OK";
+                });
+        Response retry = operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-789", "POST", "/v1/patients/7/discharge", "{}",
+                () -> {
+                    businessLogicCalls.incrementAndGet();
+                    return "OK";
+                });
+
+        assertEquals(1, businessLogicCalls.get(), "Retry must not run business logic again");
+        assertEquals(200, first.getStatus());
+        assertEquals(200, retry.getStatus());
+        // replay is byte-identical to the first response
+        assertArrayEquals((byte[]) first.getEntity(), (byte[]) retry.getEntity());
+
+        // only the first call needed the idempotency lookup
+        verify(query, times(1)).getResultList();
+    }
+
+    @Test
+    void execute_whenCachedKeyReusedWithDifferentRequest_returnsConflict() {
+        when(query.getResultList()).thenReturn(List.of());
+
+        operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-790", "POST", "/v1/patients/8/discharge", "{}",
+                () -> "OK");
+        Response conflict = operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-790", "POST", "/v1/patients/9/discharge", "{}",
+                () -> "OK");
+
+        assertEquals(409, conflict.getStatus());
+    }
+
+    @Test
+    void execute_whenConcurrentDuplicateArrives_waitsForLeaderAndReplaysItsResult() throws Exception {
+        when(query.getResultList()).thenReturn(List.of());
+
+        AtomicInteger businessLogicCalls = new AtomicInteger();
+        CountDownLatch leaderRunning = new CountDownLatch(1);
+        CountDownLatch releaseLeader = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<Response> leader = pool.submit(() -> operationService.execute(
+                    OperationType.DISCHARGE_PATIENT, "key-900", "POST", "/v1/patients/5/discharge", "{}",
+                    () -> {
+                        businessLogicCalls.incrementAndGet();
+                        leaderRunning.countDown();
+                        await(releaseLeader);
+                        return "OK";
+                    }));
+            assertTrue(leaderRunning.await(5, TimeUnit.SECONDS));
+
+            Future<Response> duplicate = pool.submit(() -> operationService.execute(
+                    OperationType.DISCHARGE_PATIENT, "key-900", "POST", "/v1/patients/5/discharge", "{}",
+                    () -> {
+                        businessLogicCalls.incrementAndGet();
+                        return "SHOULD_NOT_BE_CALLED";
+                    }));
+
+            // a duplicate with a different body is rejected without waiting for the leader
+            Response mismatch = operationService.execute(
+                    OperationType.DISCHARGE_PATIENT, "key-900", "POST", "/v1/patients/6/discharge", "{}",
+                    () -> "SHOULD_NOT_BE_CALLED");
+            assertEquals(409, mismatch.getStatus());
+
+            releaseLeader.countDown();
+
+            assertEquals(200, leader.get(5, TimeUnit.SECONDS).getStatus());
+            Response replayed = duplicate.get(5, TimeUnit.SECONDS);
+            assertEquals(200, replayed.getStatus());
+            assertArrayEquals(json("\"OK\""), (byte[]) replayed.getEntity());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, businessLogicCalls.get(), "Only the leader may run business logic");
+        verify(em, times(1)).persist(any(OperationEntity.class));
+    }
+
+    @Test
+    void executeBatch_looksUpKeysOnceAndReportsEachOutcome() {
+        String uri = "/v1/patients/42/discharge";
+        when(query.getResultList()).thenReturn(List.of(
+                completed("key-a", uri, HexFormat.of().formatHex(RequestBodyHasher.hash("{}"))),
+                completed("key-c", uri, "other-hash")));
+
+        AtomicInteger businessLogicCalls = new AtomicInteger();
+        AtomicInteger prepareCalls = new AtomicInteger();
+        List<BatchOperation<String>> operations = List.of(
+                discharge("key-a", uri, businessLogicCalls),
+                discharge("key-b", uri, businessLogicCalls),
+                discharge("key-c", uri, businessLogicCalls),
+                discharge("key-b", uri, businessLogicCalls));
+
+        Response response = operationService.executeBatch(operations, prepareCalls::incrementAndGet);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"results\":["
+                + "{\"idempotencyKey\":\"key-a\",\"outcome\":\"REPLAYED\",\"httpStatus\":200,\"response\":{\"stored\":true}},"
+                + "{\"idempotencyKey\":\"key-b\",\"outcome\":\"EXECUTED\",\"httpStatus\":200,\"response\":\"OK\"},"
+                + "{\"idempotencyKey\":\"key-c\",\"outcome\":\"CONFLICT\",\"httpStatus\":409,"
+                + "\"response\":{\"error\":\"Idempotency key reused with different request\"}},"
+                + "{\"idempotencyKey\":\"key-b\",\"outcome\":\"REPLAYED\",\"httpStatus\":200,\"response\":\"OK\"}"
+                + "]}", new String((byte[]) response.getEntity(), StandardCharsets.UTF_8));
+
+        // one lookup, one insert, one flush, and the duplicate key ran only once
+        verify(query, times(1)).getResultList();
+        verify(em, times(1)).persist(any(OperationEntity.class));
+        verify(em, times(1)).flush();
+        assertEquals(1, businessLogicCalls.get());
+        assertEquals(1, prepareCalls.get());
+    }
+
+    @Test
+    void executeBatch_whenOneItemFails_retriesItemsSeparatelySoOnlyThatItemFails() {
+        String uri = "/v1/patients/42/discharge";
+        when(query.getResultList()).thenReturn(List.of());
+
+        List<BatchOperation<String>> operations = List.of(
+                new BatchOperation<>(OperationType.DISCHARGE_PATIENT, "key-ok", "POST", uri, "{}", () -> "OK"),
+                new BatchOperation<>(OperationType.DISCHARGE_PATIENT, "key-bad", "POST", uri, "{}", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        Response response = operationService.executeBatch(operations, null);
+
+        String body = new String((byte[]) response.getEntity(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("{\"idempotencyKey\":\"key-ok\",\"outcome\":\"EXECUTED\",\"httpStatus\":200"), body);
+        assertTrue(body.contains("{\"idempotencyKey\":\"key-bad\",\"outcome\":\"FAILED\",\"httpStatus\":500"), body);
+        assertNotNull(operationService.replayCache.get("key-ok", uri), "the retried item is cached like a single call");
+    }
+
+    @Test
+    void executeAsync_acceptsWith202AndCompletesOperationInBackground() throws Exception {
+        String uri = "/v1/patients/42/discharge";
+        when(query.getResultList()).thenReturn(List.of());
+        ArgumentCaptor<OperationEntity> opCaptor = ArgumentCaptor.forClass(OperationEntity.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, OperationEntity.class).setOperationId(UUID.randomUUID());
+            return null;
+        }).when(em).persist(opCaptor.capture());
+        when(em.find(eq(OperationEntity.class), any(), eq(LockModeType.PESSIMISTIC_WRITE)))
+                .thenAnswer(invocation -> opCaptor.getValue());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AsyncOperationExecutor asyncExecutor = new AsyncOperationExecutor(10);
+        asyncExecutor.start(executor);
+        operationService.setAsyncExecutor(asyncExecutor);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Response response = operationService.executeAsync(
+                OperationType.DISCHARGE_PATIENT, "key-async", "POST", uri, "{}",
+                () -> {
+                    await(release);
+                    return "OK";
+                });
+
+        OperationEntity op = opCaptor.getValue();
+        assertEquals(202, response.getStatus());
+        assertEquals("operations/" + op.getOperationId(), response.getLocation().toString());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(OperationStatus.COMPLETED, op.getStatus());
+        assertEquals("\"OK\"", op.getResponseJson());
+        assertArrayEquals(json("\"OK\""), operationService.replayCache.get("key-async", uri).getResponseBody());
+        assertEquals(0, asyncExecutor.stats().get("pending"));
+    }
+
+    @Test
+    void execute_whenBusinessLogicFails_recordsFailedAttemptWithoutLease() {
+        String uri = "/v1/patients/42/discharge";
+        when(query.getResultList()).thenReturn(List.of());
+        CountingTransactionRunner transactions = new CountingTransactionRunner();
+        operationService.setTransactionRunner(transactions);
+        ArgumentCaptor<OperationEntity> opCaptor = ArgumentCaptor.forClass(OperationEntity.class);
+
+        assertThrows(IllegalStateException.class, () -> operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-fail", "POST", uri, "{}", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        assertEquals(1, transactions.requiresNew.get(), "the failure is recorded in its own transaction");
+        verify(em, times(2)).persist(opCaptor.capture());
+        OperationEntity recorded = opCaptor.getAllValues().get(1);
+        assertEquals(OperationStatus.RECEIVED, recorded.getStatus());
+        assertEquals(1, recorded.getAttempts());
+        assertNull(recorded.getLeaseOwner(), "the next retry may take it over right away");
+        assertEquals("java.lang.IllegalStateException: boom", recorded.getLastError());
+    }
+
+    @Test
+    void execute_whenTheLastAllowedAttemptFails_recordsTheOperationAsFailed() {
+        String uri = "/v1/patients/42/discharge";
+        OperationEntity retried = pending("key-exhausted", uri, null, null);
+        retried.setStatus(OperationStatus.RECEIVED);
+        retried.setAttempts(2);
+        // the row as recordFailure reads it again, after the attempt's transaction rolled back
+        OperationEntity rolledBack = pending("key-exhausted", uri, null, null);
+        rolledBack.setStatus(OperationStatus.RECEIVED);
+        rolledBack.setAttempts(2);
+        when(query.getResultList()).thenReturn(List.of(retried), List.of(rolledBack));
+
+        assertThrows(IllegalStateException.class, () -> operationService.execute(
+                OperationType.DISCHARGE_PATIENT, "key-exhausted", "POST", uri, "{}", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        assertEquals(3, rolledBack.getAttempts());
+        assertEquals(OperationStatus.FAILED, rolledBack.getStatus(), "max-attempts is 3");
+        assertEquals(500, rolledBack.getHttpStatus());
+        assertNull(rolledBack.getLeaseOwner());
+        assertEquals("java.lang.IllegalStateException: boom", rolledBack.getLastError());
+    }
+
+    @Test
+    void execute_whenEarlierAttemptWasAbandoned_takesItOverAndRunsOnce() {
+        String uri = "/v1/patients/42/discharge";
+        OperationEntity abandoned = pending("key-abandoned", uri, "other-node", Instant.now().minusSeconds(5));
+        when(query.getResultList()).thenReturn(List.of(abandoned));
+        AtomicInteger calls = new AtomicInteger();
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-abandoned", "POST", uri,
+                "{}", () -> calls.incrementAndGet());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(1, calls.get());
+        verify(em).refresh(abandoned, LockModeType.PESSIMISTIC_WRITE);
+        verify(em, never()).persist(any(OperationEntity.class));
+        assertEquals(OperationStatus.COMPLETED, abandoned.getStatus());
+        assertEquals(2, abandoned.getAttempts());
+        assertNull(abandoned.getLeaseOwner());
+        assertNull(abandoned.getLeaseExpiresAt());
+    }
+
+    @Test
+    void execute_whenAnotherNodeHoldsTheLease_answersInProgressWithoutRunning() {
+        String uri = "/v1/patients/42/discharge";
+        OperationEntity leased = pending("key-leased", uri, "other-node", Instant.now().plusSeconds(30));
+        when(query.getResultList()).thenReturn(List.of(leased));
+        AtomicInteger calls = new AtomicInteger();
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-leased", "POST", uri,
+                "{}", () -> calls.incrementAndGet());
+
+        assertEquals(409, response.getStatus());
+        assertTrue(((String) response.getEntity()).contains("still in progress"));
+        assertEquals(0, calls.get());
+        assertEquals("other-node", leased.getLeaseOwner());
+        assertEquals(1, leased.getAttempts());
+    }
+
+    @Test
+    void execute_whenKeyFilterNeverSawTheKey_skipsTheLookup() {
+        KnownKeyFilter knownKeys = new KnownKeyFilter();
+        knownKeys.loadKeys(List.of("key-old"));
+        operationService.setKnownKeys(knownKeys);
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-new", "POST",
+                "/v1/patients/42/discharge", "{}", () -> "OK");
+
+        assertEquals(200, response.getStatus());
+        verify(em, never()).createQuery(anyString(), eq(OperationEntity.class));
+        verify(em).persist(any(OperationEntity.class));
+        assertEquals(1L, knownKeys.stats().get("skippedLookups"));
+    }
+
+    @Test
+    void execute_whenAnotherNodeInsertedAnUnknownKey_retriesWithLookupAndReplays() {
+        String uri = "/v1/patients/42/discharge";
+        KnownKeyFilter knownKeys = new KnownKeyFilter();
+        knownKeys.loadKeys(List.of());
+        operationService.setKnownKeys(knownKeys);
+        doThrow(new EntityExistsException("duplicate key")).when(em).flush();
+        when(query.getResultList()).thenReturn(List.of(
+                completed("key-elsewhere", uri, HexFormat.of().formatHex(RequestBodyHasher.hash("{}")))));
+        AtomicInteger calls = new AtomicInteger();
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-elsewhere", "POST", uri,
+                "{}", () -> calls.incrementAndGet());
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(json("{\"stored\":true}"), (byte[]) response.getEntity());
+        assertEquals(0, calls.get());
+        assertEquals(1L, knownKeys.stats().get("missedKeys"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void execute_inInsertFirstMode_answersFromTheRowReturnedByTheMerge() {
+        operationService.setInsertFirst(true);
+        String bodyHash = HexFormat.of().formatHex(RequestBodyHasher.hash("{}"));
+        NativeQuery<Object[]> merge = mock(NativeQuery.class, RETURNS_SELF);
+        Query nativeQuery = mock(Query.class);
+        when(em.createNativeQuery(anyString())).thenReturn(nativeQuery);
+        when(nativeQuery.unwrap(NativeQuery.class)).thenReturn(merge);
+        doReturn(List.<Object[]>of(new Object[]{UUID.randomUUID(), "POST", "/v1/patients/42/discharge", bodyHash,
+                "COMPLETED", 200, "{\"stored\":true}", null, null, null, 1})).when(merge).getResultList();
+        AtomicInteger calls = new AtomicInteger();
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-merged", "POST",
+                "/v1/patients/42/discharge", "{}", () -> calls.incrementAndGet());
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(json("{\"stored\":true}"), (byte[]) response.getEntity());
+        assertEquals(0, calls.get());
+        verify(em, never()).createQuery(anyString(), eq(OperationEntity.class));
+        verify(em, never()).persist(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void execute_inInsertFirstMode_whenTheMergeTimesOutOnAConcurrentInsert_runsItAgain() {
+        operationService.setInsertFirst(true);
+        String bodyHash = HexFormat.of().formatHex(RequestBodyHasher.hash("{}"));
+        NativeQuery<Object[]> merge = mock(NativeQuery.class, RETURNS_SELF);
+        Query nativeQuery = mock(Query.class);
+        when(em.createNativeQuery(anyString())).thenReturn(nativeQuery);
+        when(nativeQuery.unwrap(NativeQuery.class)).thenReturn(merge);
+        doThrow(lockTimeout()).doReturn(List.<Object[]>of(new Object[]{UUID.randomUUID(), "POST",
+                "/v1/patients/42/discharge", bodyHash, "COMPLETED", 200, "{\"stored\":true}", null, null, null, 1}))
+                .when(merge).getResultList();
+        AtomicInteger calls = new AtomicInteger();
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-raced", "POST",
+                "/v1/patients/42/discharge", "{}", () -> calls.incrementAndGet());
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(json("{\"stored\":true}"), (byte[]) response.getEntity());
+        assertEquals(0, calls.get());
+        verify(merge, times(2)).getResultList();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void execute_inInsertFirstMode_whenTheConcurrentInsertStillHoldsTheKey_answersInProgress() {
+        operationService.setInsertFirst(true);
+        NativeQuery<Object[]> merge = mock(NativeQuery.class, RETURNS_SELF);
+        Query nativeQuery = mock(Query.class);
+        when(em.createNativeQuery(anyString())).thenReturn(nativeQuery);
+        when(nativeQuery.unwrap(NativeQuery.class)).thenReturn(merge);
+        doThrow(lockTimeout()).when(merge).getResultList();
+        AtomicInteger calls = new AtomicInteger();
+
+        Response response = operationService.execute(OperationType.DISCHARGE_PATIENT, "key-held", "POST",
+                "/v1/patients/42/discharge", "{}", () -> calls.incrementAndGet());
+
+        assertEquals(409, response.getStatus());
+        assertEquals(0, calls.get());
+        verify(merge, times(2)).getResultList();
+    }
+
+    @Test
+    void prefersAsync_recognizesRespondAsyncAmongOtherPreferences() {
+        assertTrue(OperationService.prefersAsync("respond-async"));
+        assertTrue(OperationService.prefersAsync("return=minimal, respond-async; wait=10"));
+        assertFalse(OperationService.prefersAsync("return=representation"));
+        assertFalse(OperationService.prefersAsync(null));
+    }
+
+    private static BatchOperation<String> discharge(String key, String uri, AtomicInteger calls) {
+        return new BatchOperation<>(OperationType.DISCHARGE_PATIENT, key, "POST", uri, "{}", () -> {
+            calls.incrementAndGet();
+            return "OK";
+        });
+    }
+
+    private static OperationEntity completed(String key, String uri, String bodyHash) {
+        OperationEntity op = new OperationEntity();
+        op.setIdempotencyKey(key);
+        op.setMethod("POST");
+        op.setUri(uri);
+        op.setBodyHash(bodyHash);
+        op.setHttpStatus(200);
+        op.setResponseJson("{\"stored\":true}");
+        op.setType(OperationType.DISCHARGE_PATIENT);
+        op.setStatus(OperationStatus.COMPLETED);
+        return op;
+    }
+
+    private static OperationEntity pending(String key, String uri, String leaseOwner, Instant leaseExpiresAt) {
+        OperationEntity op = new OperationEntity();
+        op.setIdempotencyKey(key);
+        op.setMethod("POST");
+        op.setUri(uri);
+        op.setBodyHash(HexFormat.of().formatHex(RequestBodyHasher.hash("{}")));
+        op.setType(OperationType.DISCHARGE_PATIENT);
+        op.setStatus(OperationStatus.PROCESSING);
+        op.setLeaseOwner(leaseOwner);
+        op.setLeaseExpiresAt(leaseExpiresAt);
+        op.setAttempts(1);
+        return op;
+    }
+
+    /**
+     * Plain calls like TransactionRunner, counting the new transactions.
+     */
+    private static final class CountingTransactionRunner extends TransactionRunner {
+        final AtomicInteger requiresNew = new AtomicInteger();
+
+        @Override
+        public <T> T requiresNew(Supplier<T> work) {
+            requiresNew.incrementAndGet();
+            return super.requiresNew(work);
+        }
+    }
+
+    /** What Hibernate throws when H2 gives up waiting for the lock on a key another transaction inserts. */
+    private static PessimisticLockException lockTimeout() {
+        return new PessimisticLockException(new SQLException("Timeout trying to lock table", "HYT00", 50200));
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
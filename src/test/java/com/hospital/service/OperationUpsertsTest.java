@@ -0,0 +1,173 @@
+package com.hospital.service;
+
+import com.hospital.persistence.H2Persistence;
+import com.hospital.persistence.entity.OperationEntity;
+import com.hospital.persistence.entity.OperationStatus;
+import com.hospital.persistence.entity.OperationType;
+import jakarta.persistence.PersistenceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The insert-first MERGE and completion UPDATE against a real H2, which checks the SQL itself.
+ */
+class OperationUpsertsTest {
+
+    private H2Persistence db;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new H2Persistence("upserts");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        db.close();
+    }
+
+    @Test
+    void claim_insertsANewKey_andCompleteWritesTheOutcome() {
+        OperationEntity op = newOperation("key-1", "{}");
+
+        OperationEntity claimed = db.inTransaction(em -> OperationUpserts.claim(em, op));
+        assertSame(op, claimed);
+
+        OperationEntity stored = db.inTransaction(em -> em.find(OperationEntity.class, op.getOperationId()));
+        assertEquals("key-1", stored.getIdempotencyKey());
+        assertEquals("42", stored.getPatientId());
+        assertEquals(OperationStatus.RECEIVED, stored.getStatus());
+        assertEquals("node-a", stored.getLeaseOwner());
+        assertEquals(1, stored.getAttempts());
+
+        op.setStatus(OperationStatus.COMPLETED);
+        op.setHttpStatus(200);
+        op.setResponseJson("{\"discharged\":true}");
+        db.inTransaction(em -> {
+            OperationUpserts.complete(em, op);
+            return null;
+        });
+
+        OperationEntity completed = db.inTransaction(em -> em.find(OperationEntity.class, op.getOperationId()));
+        assertEquals(OperationStatus.COMPLETED, completed.getStatus());
+        assertEquals(200, completed.getHttpStatus());
+        assertEquals("{\"discharged\":true}", completed.getResponseJson());
+        assertNull(completed.getLeaseOwner());
+        assertNull(completed.getLeaseExpiresAt());
+    }
+
+    @Test
+    void claim_ofATakenKey_returnsTheStoredRowWithoutInserting() {
+        OperationEntity first = newOperation("key-2", "{}");
+        db.inTransaction(em -> OperationUpserts.claim(em, first));
+
+        OperationEntity second = newOperation("key-2", "{\"other\":true}");
+        second.setBodyHash("other-hash");
+        OperationEntity stored = db.inTransaction(em -> OperationUpserts.claim(em, second));
+
+        assertNotSame(second, stored);
+        assertEquals(first.getOperationId(), stored.getOperationId());
+        assertEquals("hash", stored.getBodyHash());
+        assertEquals(OperationStatus.RECEIVED, stored.getStatus());
+        long rows = db.inTransaction(em -> em.createQuery(
+                "SELECT COUNT(o) FROM OperationEntity o", Long.class).getSingleResult());
+        assertEquals(1, rows);
+    }
+
+    @Test
+    void claim_ofAKeyAnotherTransactionIsInserting_waitsForIt_andOnceAgainSeesItsCommittedRow() throws Exception {
+        CountDownLatch inserted = new CountDownLatch(1);
+        OperationEntity first = newOperation("key-3", "{}");
+        CompletableFuture<Void> firstClaim = CompletableFuture.runAsync(() -> db.inTransaction(em -> {
+            OperationUpserts.claim(em, first);
+            inserted.countDown();
+            pause(200); // well within the lock timeout
+            return null;
+        }));
+        inserted.await();
+
+        OperationEntity second = newOperation("key-3", "{}");
+        OperationEntity stored;
+        try {
+            stored = db.inTransaction(em -> OperationUpserts.claim(em, second));
+        } catch (RuntimeException e) {
+            // the waiting MERGE may lose the race on the unique key once the first one commits
+            assertTrue(OperationUpserts.isConcurrentClaim(e), e::toString);
+            stored = db.inTransaction(em -> OperationUpserts.claim(em, second));
+        }
+
+        firstClaim.get(5, TimeUnit.SECONDS);
+        assertNotSame(second, stored);
+        assertEquals(first.getOperationId(), stored.getOperationId());
+    }
+
+    @Test
+    void claim_ofAKeyHeldPastTheLockTimeout_failsAsAConcurrentClaim() throws Exception {
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> firstClaim = CompletableFuture.runAsync(() -> db.inTransaction(em -> {
+            OperationUpserts.claim(em, newOperation("key-4", "{}"));
+            inserted.countDown();
+            await(release);
+            return null;
+        }));
+        inserted.await();
+
+        try {
+            RuntimeException e = assertThrows(RuntimeException.class,
+                    () -> db.inTransaction(em -> OperationUpserts.claim(em, newOperation("key-4", "{}"))));
+            assertTrue(OperationUpserts.isConcurrentClaim(e), e::toString);
+        } finally {
+            release.countDown();
+        }
+        firstClaim.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void isConcurrentClaim_isFalseForOtherFailures() {
+        assertFalse(OperationUpserts.isConcurrentClaim(
+                new PersistenceException(new SQLException("Syntax error", "42000", 42000))));
+        assertFalse(OperationUpserts.isConcurrentClaim(new IllegalStateException()));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static OperationEntity newOperation(String key, String requestJson) {
+        OperationEntity op = new OperationEntity();
+        op.setIdempotencyKey(key);
+        op.setMethod("POST");
+        op.setUri("/v1/patients/42/discharge");
+        op.setBodyHash("hash");
+        op.setType(OperationType.DISCHARGE_PATIENT);
+        op.setStatus(OperationStatus.RECEIVED);
+        op.setRequestJson(requestJson);
+        op.setLeaseOwner("node-a");
+        op.setLeaseExpiresAt(Instant.now().plusSeconds(60));
+        op.setAttempts(1);
+        return op;
+    }
+}
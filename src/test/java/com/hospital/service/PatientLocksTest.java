@@ -0,0 +1,183 @@
+package com.hospital.service;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.ws.rs.ServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientLocksTest {
+
+    @Test
+    void sameTransactionRelocksFreelyButOthersWaitUntilItCompletes() throws Exception {
+        FakeTransactions transactions = new FakeTransactions();
+        PatientLocks locks = new PatientLocks(16, TimeUnit.SECONDS.toNanos(5));
+        locks.setTransactionRegistry(transactions);
+
+        transactions.begin();
+        locks.lockForTransaction("42");
+        locks.lockForTransaction(List.of("42", "42")); // already held by this transaction
+
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> {
+            transactions.begin();
+            long start = System.nanoTime();
+            locks.lockForTransaction("42");
+            long waited = System.nanoTime() - start;
+            transactions.commit();
+            return waited;
+        });
+
+        Thread.sleep(100);
+        assertFalse(second.isDone(), "second transaction must queue behind the first");
+        transactions.commit();
+
+        assertTrue(second.get(5, TimeUnit.SECONDS) >= TimeUnit.MILLISECONDS.toNanos(90));
+        Map<String, Object> stats = locks.stats();
+        assertEquals(2L, stats.get("acquisitions")); // the re-locks do not count
+        assertEquals(1L, stats.get("contended"));
+        assertEquals(0, stats.get("locked"));
+    }
+
+    @Test
+    void waitingLongerThanTheLimitFailsWith503() throws Exception {
+        FakeTransactions transactions = new FakeTransactions();
+        PatientLocks locks = new PatientLocks(16, TimeUnit.MILLISECONDS.toNanos(50));
+        locks.setTransactionRegistry(transactions);
+
+        transactions.begin();
+        locks.lockForTransaction("42");
+
+        CompletableFuture<Throwable> second = CompletableFuture.supplyAsync(() -> {
+            transactions.begin();
+            try {
+                locks.lockForTransaction("42");
+                return null;
+            } catch (RuntimeException e) {
+                return e;
+            } finally {
+                transactions.commit();
+            }
+        });
+
+        assertInstanceOf(ServiceUnavailableException.class, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, locks.stats().get("timeouts"));
+        transactions.commit();
+    }
+
+    @Test
+    void crossingPatientSetsDoNotDeadlock_theOutOfOrderLockFailsAtOnce() throws Exception {
+        FakeTransactions transactions = new FakeTransactions();
+        PatientLocks locks = new PatientLocks(16, TimeUnit.SECONDS.toNanos(5));
+        locks.setTransactionRegistry(transactions);
+        String low = "P-1";
+        String high = "P-2";
+        if (locks.stripeOf(low) > locks.stripeOf(high)) {
+            low = "P-2";
+            high = "P-1";
+        }
+        assertNotEquals(locks.stripeOf(low), locks.stripeOf(high));
+        String lowPatient = low;
+        String highPatient = high;
+
+        // a group commit transaction locks its items one by one, here high first
+        transactions.begin();
+        locks.lockForTransaction(highPatient);
+
+        // a bulk transaction takes low and then waits for high
+        CompletableFuture<Void> bulk = CompletableFuture.runAsync(() -> {
+            transactions.begin();
+            locks.lockForTransaction(List.of(highPatient, lowPatient));
+            transactions.commit();
+        });
+        while (!locks.stats().get("locked").equals(2)) {
+            Thread.sleep(5);
+        }
+
+        long start = System.nanoTime();
+        assertThrows(ServiceUnavailableException.class, () -> locks.lockForTransaction(lowPatient));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "must not wait for the lower stripe");
+        assertEquals(1L, locks.stats().get("orderConflicts"));
+        transactions.commit(); // rolled back, the bulk transaction goes on
+
+        bulk.get(5, TimeUnit.SECONDS);
+        transactions.begin();
+        locks.lockForTransaction(lowPatient); // the retry on its own
+        transactions.commit();
+        assertEquals(0L, locks.stats().get("timeouts"));
+        assertEquals(0, locks.stats().get("locked"));
+    }
+
+    @Test
+    void lockingOutsideATransactionIsRejected() {
+        PatientLocks locks = new PatientLocks(16, 0);
+        locks.setTransactionRegistry(new FakeTransactions());
+
+        assertThrows(IllegalStateException.class, () -> locks.lockForTransaction("42"));
+    }
+
+    /**
+     * Minimal registry: one transaction per thread, completed by commit().
+     */
+    static class FakeTransactions implements TransactionSynchronizationRegistry {
+
+        private final ThreadLocal<Tx> current = new ThreadLocal<>();
+
+        static class Tx {
+            final Map<Object, Object> resources = new HashMap<>();
+            final List<Synchronization> synchronizations = new ArrayList<>();
+        }
+
+        void begin() {
+            current.set(new Tx());
+        }
+
+        void commit() {
+            Tx tx = current.get();
+            current.remove();
+            tx.synchronizations.forEach(s -> s.afterCompletion(Status.STATUS_COMMITTED));
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return current.get();
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            current.get().resources.put(key, value);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return current.get().resources.get(key);
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            current.get().synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return current.get() == null ? Status.STATUS_NO_TRANSACTION : Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
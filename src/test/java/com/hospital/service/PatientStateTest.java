@@ -0,0 +1,67 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.MedicationOrderStatus;
+import com.hospital.persistence.entity.OperationType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Folding operation responses into a patient's state, and the snapshot form of that state.
+ */
+class PatientStateTest {
+
+    private static final Instant T1 = Instant.parse("2025-12-14T01:00:00Z");
+    private static final Instant T2 = Instant.parse("2025-12-14T02:00:00Z");
+    private static final Instant T3 = Instant.parse("2025-12-14T03:00:00Z");
+
+    @Test
+    void apply_lastOperationOnEachPartWins() {
+        PatientState state = new PatientState("p1");
+        assertFalse(state.isKnown());
+
+        state.apply(OperationType.DISCHARGE_PATIENT,
+                "{\"discharged\":true,\"dischargedAt\":\"2025-12-14T01:00:00Z\",\"patientId\":\"p1\"}", T1);
+        state.apply(OperationType.SIGN_MEDICATION_ORDER, "{\"orderId\":\"o1\",\"patientId\":\"p1\","
+                + "\"signedAt\":\"2025-12-14T02:00:00Z\",\"signedBy\":\"dr.house\",\"status\":\"SIGNED\"}", T2);
+        state.apply(OperationType.UNDO_DISCHARGE_PATIENT, "{\"discharged\":false,\"patientId\":\"p1\"}", T3);
+
+        assertTrue(state.isKnown());
+        assertFalse(state.isDischarged());
+        assertNull(state.getDischargedAt());
+        PatientState.Order order = List.copyOf(state.getOrders()).get(0);
+        assertEquals("o1", order.getOrderId());
+        assertEquals(MedicationOrderStatus.SIGNED, order.getStatus());
+        assertEquals("dr.house", order.getSignedBy());
+        assertEquals(T2, order.getSignedAt());
+        assertEquals(3, state.getReplayedOperations());
+        assertEquals(T3, state.getLastChangeAt());
+    }
+
+    @Test
+    void fromSnapshot_restoresWhatToJsonStored() {
+        PatientState state = new PatientState("p1");
+        state.apply(OperationType.DISCHARGE_PATIENT,
+                "{\"discharged\":true,\"dischargedAt\":\"2025-12-14T01:00:00Z\",\"patientId\":\"p1\"}", T1);
+        state.apply(OperationType.SIGN_MEDICATION_ORDER, "{\"orderId\":\"o1\",\"patientId\":\"p1\","
+                + "\"signedAt\":\"2025-12-14T02:00:00Z\",\"signedBy\":\"dr.house\",\"status\":\"SIGNED\"}", T2);
+        state.apply(OperationType.UNDO_SIGN_MEDICATION_ORDER,
+                "{\"orderId\":\"o2\",\"patientId\":\"p1\",\"status\":\"DRAFT\"}", T2);
+
+        PatientState restored = PatientState.fromSnapshot("p1", state.toJson(), T3);
+
+        assertTrue(restored.isDischarged());
+        assertEquals(T1, restored.getDischargedAt());
+        assertEquals(T2, restored.getLastChangeAt());
+        assertEquals(T3, restored.getSnapshotAt());
+        assertEquals(0, restored.getReplayedOperations());
+        assertEquals(state.toJson(), restored.toJson());
+        List<PatientState.Order> orders = List.copyOf(restored.getOrders());
+        assertEquals(2, orders.size());
+        assertEquals(MedicationOrderStatus.DRAFT, orders.get(1).getStatus());
+        assertNull(orders.get(1).getSignedBy());
+    }
+}
@@ -0,0 +1,87 @@
+package com.hospital.service;
+
+import com.hospital.persistence.shard.Shards;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReplayCache eviction and counters.
+ * A fake clock is used so TTL expiry does not depend on sleeping.
+ */
+class ReplayCacheTest {
+
+    private static final String URI = "/v1/patients/1/discharge";
+
+    AtomicLong clock = new AtomicLong();
+
+    @Test
+    void get_afterPut_returnsEntryAndCountsHit() {
+        ReplayCache cache = new ReplayCache(10, 1_000, clock::get);
+        cache.put(op("k1"));
+
+        assertNotNull(cache.get("k1", URI));
+        assertNull(cache.get("k2", URI));
+
+        ReplayCache.Stats stats = cache.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRatio());
+    }
+
+    @Test
+    void put_whenFull_evictsLeastRecentlyUsed() {
+        ReplayCache cache = new ReplayCache(2, 1_000, clock::get);
+        cache.put(op("k1"));
+        cache.put(op("k2"));
+        cache.get("k1", URI); // k2 is now the least recently used
+        cache.put(op("k3"));
+
+        assertNotNull(cache.get("k1", URI));
+        assertNull(cache.get("k2", URI));
+        assertNotNull(cache.get("k3", URI));
+        assertEquals(1, cache.stats().getEvictions());
+    }
+
+    @Test
+    void get_afterTtl_returnsNullAndCountsEviction() {
+        ReplayCache cache = new ReplayCache(10, 1_000, clock::get);
+        cache.put(op("k1"));
+
+        clock.addAndGet(1_000);
+
+        assertNull(cache.get("k1", URI));
+        assertEquals(1, cache.stats().getEvictions());
+        assertEquals(0, cache.stats().getSize());
+    }
+
+    @Test
+    void withSeveralShards_aKeyIsScopedToTheShardOfItsPatient() {
+        ReplayCache cache = new ReplayCache(10, 1_000, clock::get, 2);
+        String patient = "1";
+        String sameShard = null;
+        String otherShard = null;
+        for (int i = 2; sameShard == null || otherShard == null; i++) {
+            String candidate = Integer.toString(i);
+            if (Shards.shardOf(candidate, 2) == Shards.shardOf(patient, 2)) {
+                sameShard = sameShard == null ? candidate : sameShard;
+            } else {
+                otherShard = otherShard == null ? candidate : otherShard;
+            }
+        }
+        cache.put(op("k1"));
+
+        assertNotNull(cache.get("k1", URI));
+        assertNotNull(cache.get("k1", "/v1/patients/" + sameShard + "/discharge"), "replayed as 409 like the stored row");
+        assertNull(cache.get("k1", "/v1/patients/" + otherShard + "/discharge"), "another shard's key");
+
+        cache.invalidateOnShard(Shards.shardOf(patient, 2), "k1");
+        assertNull(cache.get("k1", URI));
+    }
+
+    private static CompletedOperation op(String key) {
+        return new CompletedOperation(key, "POST", URI, "hash", 200, new byte[0]);
+    }
+}
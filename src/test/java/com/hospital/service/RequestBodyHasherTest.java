@@ -0,0 +1,64 @@
+package com.hospital.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RequestBodyHasher must produce exactly the digest of the UTF-8 bytes,
+ * including multi-byte characters that straddle its internal chunk boundary.
+ */
+class RequestBodyHasherTest {
+
+    @Test
+    void hash_ofString_matchesDigestOfUtf8Bytes() throws Exception {
+        StringBuilder body = new StringBuilder("{\"note\":\"");
+        while (body.length() < 50_000) {
+            body.append("Ärztin notes 💉 dose; ");
+        }
+        body.append("\"}");
+
+        assertArrayEquals(reference(body.toString().getBytes(StandardCharsets.UTF_8)),
+                RequestBodyHasher.hash(body));
+    }
+
+    @Test
+    void hash_ofEmptyAndUnpairedSurrogate_matchesStringGetBytes() throws Exception {
+        assertArrayEquals(reference(new byte[0]), RequestBodyHasher.hash(""));
+
+        String broken = "a\uD800b";
+        assertArrayEquals(reference(broken.getBytes(StandardCharsets.UTF_8)), RequestBodyHasher.hash(broken));
+    }
+
+    @Test
+    void digesting_hashesBytesAsTheyAreRead() throws Exception {
+        byte[] body = new byte[100_000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+
+        RequestBodyHasher.DigestingInputStream in = RequestBodyHasher.digesting(new ByteArrayInputStream(body));
+        drain(in);
+
+        assertEquals(body.length, in.getBytesRead());
+        assertArrayEquals(reference(body), in.hash());
+        assertArrayEquals(reference(body), RequestBodyHasher.hash(body));
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) >= 0) {
+            // consume
+        }
+    }
+
+    private static byte[] reference(byte[] bytes) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(bytes);
+    }
+}
@@ -0,0 +1,60 @@
+package com.hospital.service;
+
+import com.hospital.persistence.entity.OperationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetentionPolicyTest {
+
+    private static final String SIGN_HOURS = RetentionPolicy.HOURS_PROPERTY + "." + OperationType.SIGN_MEDICATION_ORDER;
+
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty(RetentionPolicy.HOURS_PROPERTY);
+        System.clearProperty(SIGN_HOURS);
+    }
+
+    @Test
+    void byDefault_everyTypeIsKeptForever() {
+        RetentionPolicy policy = new RetentionPolicy();
+
+        assertTrue(policy.keepsEverything());
+        for (OperationType type : OperationType.values()) {
+            assertNull(policy.windowFor(type));
+        }
+    }
+
+    @Test
+    void globalWindow_appliesToEveryType_andPerTypeValuesOverrideIt() {
+        System.setProperty(RetentionPolicy.HOURS_PROPERTY, "720");
+        System.setProperty(SIGN_HOURS, "2160");
+
+        RetentionPolicy policy = new RetentionPolicy();
+
+        assertFalse(policy.keepsEverything());
+        assertEquals(Duration.ofHours(720), policy.windowFor(OperationType.DISCHARGE_PATIENT));
+        assertEquals(Duration.ofHours(2160), policy.windowFor(OperationType.SIGN_MEDICATION_ORDER));
+    }
+
+    @Test
+    void perTypeZero_keepsThatTypeForever() {
+        System.setProperty(RetentionPolicy.HOURS_PROPERTY, " 24 ");
+        System.setProperty(SIGN_HOURS, "0");
+
+        RetentionPolicy policy = new RetentionPolicy();
+
+        assertEquals(Duration.ofHours(24), policy.windowFor(OperationType.UNDO_DISCHARGE_PATIENT));
+        assertNull(policy.windowFor(OperationType.SIGN_MEDICATION_ORDER));
+    }
+
+    @Test
+    void invalidHours_failsAtStartup() {
+        System.setProperty(RetentionPolicy.HOURS_PROPERTY, "30d");
+
+        assertThrows(IllegalStateException.class, RetentionPolicy::new);
+    }
+}